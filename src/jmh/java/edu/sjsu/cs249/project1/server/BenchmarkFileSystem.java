@@ -0,0 +1,36 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Prepares the file system of a benchmark run, like FileServer does on startup: creates the filesystem directory in the
+ * working directory and recovers the write-ahead log.
+ */
+final class BenchmarkFileSystem {
+    private static boolean isOpen;
+
+    /**
+     * Static helper class, hide constructor by making it private.
+     */
+    private BenchmarkFileSystem() {
+
+    }
+
+    /**
+     * Prepares the file system, unless an earlier trial in the same JVM already did.
+     *
+     * @throws IOException
+     *             If the directory could not be created.
+     * @throws FileException
+     *             If the write-ahead log could not be recovered.
+     */
+    static synchronized void open() throws IOException, FileException {
+        if (!isOpen) {
+            Files.createDirectories(Paths.get("filesystem"));
+            WriteAheadLog.getInstance().recover();
+            isOpen = true;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
+
+/**
+ * Benchmarks the lease bookkeeping of the ClientCacheManager. <br/>
+ * registerHotFile and registerSpreadFiles grant leases from many threads at once, on a single file and on many files.
+ * invalidationFanOut invalidates a file leased by every registered client and waits until the InvalidationDispatcher
+ * delivered the invalidation to each of them, i.e. it measures the whole fan-out rather than just handing it off. The
+ * clients are stub callbacks, which only count the invalidations. <br/>
+ * Note: the leases are granted once and outlive the benchmark, since invalidating a file keeps its leases.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfileserver.cache.leaseMillis=3600000")
+@State(Scope.Benchmark)
+public class ClientCacheManagerBenchmark {
+    private static final int SPREAD_FILE_COUNT = 1024;
+    private static final String HOT_FILE_NAME = "jmh-hot-file";
+    private static final String FAN_OUT_FILE_NAME = "jmh-fan-out-file";
+
+    /**
+     * Number of registered clients, i.e. the fan-out of an invalidation.
+     */
+    @Param({ "1", "16", "256" })
+    public int clientCount;
+
+    private String[] clientIds;
+    private String[] spreadFileNames;
+    private final LongAdder invalidationCount = new LongAdder();
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    /**
+     * Counts down the deliveries which the running invalidationFanOut() still waits for.
+     */
+    private volatile CountDownLatch pendingDeliveries = new CountDownLatch(0);
+
+    /**
+     * A client which only counts the invalidations it receives.
+     */
+    private class StubCallback implements ClientCallback {
+        private final String id;
+
+        private StubCallback(final String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void invalidateCache(final String file) {
+            ClientCacheManagerBenchmark.this.invalidationCount.increment();
+            ClientCacheManagerBenchmark.this.pendingDeliveries.countDown();
+        }
+
+        @Override
+        public void invalidateCaches(final Collection<String> fileNames) {
+            ClientCacheManagerBenchmark.this.invalidationCount.add(fileNames.size());
+            ClientCacheManagerBenchmark.this.pendingDeliveries.countDown();
+        }
+
+        @Override
+        public String getId() {
+            return this.id;
+        }
+    }
+
+    /**
+     * The client on whose behalf one thread grants leases.
+     */
+    @State(Scope.Thread)
+    public static class ThreadClient {
+        private String clientId;
+
+        @Setup(Level.Trial)
+        public void setUp(final ClientCacheManagerBenchmark benchmark) {
+            this.clientId = benchmark.clientIds[benchmark.nextThread.getAndIncrement() % benchmark.clientCount];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws CacheException {
+        this.clientIds = new String[this.clientCount];
+        for (int i = 0; i < this.clientCount; i++) {
+            this.clientIds[i] = "jmh-client-" + System.nanoTime() + "-" + i;
+            ClientCacheManager.getInstance().registerClient(this.clientIds[i],
+                    new Client(this.clientIds[i], new StubCallback(this.clientIds[i])));
+            ClientCacheManager.getInstance().registerCachedFile(this.clientIds[i], FAN_OUT_FILE_NAME);
+        }
+        this.spreadFileNames = new String[SPREAD_FILE_COUNT];
+        for (int i = 0; i < SPREAD_FILE_COUNT; i++) {
+            this.spreadFileNames[i] = "jmh-spread-file-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws CacheException {
+        for (final String clientId : this.clientIds) {
+            ClientCacheManager.getInstance().unregisterClient(clientId);
+        }
+        System.out.println("Invalidations delivered: " + this.invalidationCount.sum());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void registerHotFile(final ThreadClient client) throws CacheException {
+        ClientCacheManager.getInstance().registerCachedFile(client.clientId, HOT_FILE_NAME);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void registerSpreadFiles(final ThreadClient client) throws CacheException {
+        ClientCacheManager.getInstance().registerCachedFile(client.clientId,
+                this.spreadFileNames[ThreadLocalRandom.current().nextInt(SPREAD_FILE_COUNT)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void invalidationFanOut() throws InterruptedException {
+        final CountDownLatch deliveries = new CountDownLatch(this.clientCount);
+        this.pendingDeliveries = deliveries;
+        ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(FAN_OUT_FILE_NAME);
+        deliveries.await();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks concurrent reads and modifications of a single hot File. <br/>
+ * The readModify group runs three readers against one writer, so that it shows how much the readers suffer from the
+ * locking of File while the contents keep changing. The read group runs readers only, as a baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class FileBenchmark {
+    @Param({ "1024", "65536" })
+    public int fileSize;
+
+    private File file;
+    private byte[][] contents;
+
+    /**
+     * The position of the writer in the contents it cycles through.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, FileException {
+        BenchmarkFileSystem.open();
+        this.contents = new byte[2][this.fileSize];
+        Arrays.fill(this.contents[1], (byte) 1);
+        this.file = new File("jmh-hot-file-" + System.nanoTime(), this.contents[0]);
+        this.file.awaitDurable();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws FileException {
+        this.file.delete();
+    }
+
+    @Benchmark
+    @Group("read")
+    @GroupThreads(4)
+    public byte[] readOnly() throws FileException {
+        return this.file.read();
+    }
+
+    @Benchmark
+    @Group("readModify")
+    @GroupThreads(3)
+    public byte[] read() throws FileException {
+        return this.file.read();
+    }
+
+    @Benchmark
+    @Group("readModify")
+    @GroupThreads(1)
+    public boolean modify(final Writer writer) throws FileException {
+        writer.next ^= 1;
+        return this.file.modify(this.contents[writer.next]);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks create/rename/delete churn across many names of the FileSystem. <br/>
+ * Every thread cycles through its own set of names, so operations never fail, and only contend on the locks which the
+ * names happen to share and on the write-ahead log. Each operation includes waiting for its log record to be durable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class FileSystemBenchmark {
+    private static final byte[] DATA = new byte[256];
+
+    /**
+     * Number of names each thread cycles through.
+     */
+    @Param({ "1000" })
+    public int nameCount;
+
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    /**
+     * The names used by one thread.
+     */
+    @State(Scope.Thread)
+    public static class Names {
+        private String prefix;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(final FileSystemBenchmark benchmark) {
+            this.prefix = "jmh-churn-" + System.nanoTime() + "-" + benchmark.nextThread.incrementAndGet() + "-";
+        }
+
+        private String nextName(final int nameCount) {
+            this.next = (this.next + 1) % nameCount;
+            return this.prefix + this.next;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, FileException {
+        BenchmarkFileSystem.open();
+    }
+
+    /**
+     * Creates a file, renames it and deletes it again.
+     */
+    @Benchmark
+    public void createRenameDelete(final Names names) throws FileException {
+        final FileSystem fileSystem = FileSystem.getInstance();
+        final String fileName = names.nextName(this.nameCount);
+        final String newName = fileName + ".renamed";
+        fileSystem.createFile(fileName, DATA);
+        fileSystem.renameFile(fileName, newName);
+        fileSystem.deleteFile(newName);
+    }
+
+    /**
+     * Creates a file and deletes it again, without renaming it.
+     */
+    @Benchmark
+    public void createDelete(final Names names) throws FileException {
+        final FileSystem fileSystem = FileSystem.getInstance();
+        final String fileName = names.nextName(this.nameCount);
+        fileSystem.createFile(fileName, DATA);
+        fileSystem.deleteFile(fileName);
+    }
+}
\ No newline at end of file
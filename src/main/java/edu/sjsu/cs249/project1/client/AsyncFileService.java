@@ -0,0 +1,294 @@
+package edu.sjsu.cs249.project1.client;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import edu.sjsu.cs249.project1.remote.FileEdit;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.remote.ListPage;
+
+/**
+ * An asynchronous facade over FileServerService for a Client, e.g. for batch tools which open thousands of files. <br/>
+ * Every operation returns a CompletableFuture immediately, and the remote call runs on a background thread, so many
+ * calls can be in flight at once. A future fails with the RemoteException thrown by its call. <br/>
+ * The local cache of the Client is consulted before a remote call is scheduled: files which are cached and valid are
+ * returned without contacting the server, and edits of cached files are sent as patches, like in ClientApplication.
+ * <br/>
+ * The number of remote calls in flight is bounded; when the bound is reached, scheduling another call blocks until one
+ * of them completes. The following system properties can be used to tune the facade: <br/>
+ * client.async.maxInFlight - Maximum number of remote calls in flight at once (default 32).
+ */
+public class AsyncFileService {
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("client.async.maxInFlight", 32);
+
+    private final FileServerService serverService;
+    private final Client client;
+    private final Semaphore inFlightPermits = new Semaphore(MAX_IN_FLIGHT);
+    private final ExecutorService executor;
+
+    /**
+     * A blocking remote call.
+     *
+     * @param <T>
+     *            The type of the result.
+     */
+    private interface RemoteCall<T> {
+        T call() throws RemoteException;
+    }
+
+    /**
+     * Instantiates a new AsyncFileService.
+     *
+     * @param serverService
+     *            The server to call.
+     * @param client
+     *            The client whose cache is consulted and filled, and which is passed to the server.
+     */
+    public AsyncFileService(final FileServerService serverService, final Client client) {
+        this.serverService = serverService;
+        this.client = client;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "async-file-service-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Opens a file, see ClientApplication "open".
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The future contents of the file, completed at once if the file is cached and valid.
+     */
+    public CompletableFuture<byte[]> openFile(final String fileName) {
+        final File cachedFile = this.client.getCachedFile(fileName);
+        if (cachedFile != null) {
+            return CompletableFuture.completedFuture(cachedFile.getData());
+        }
+        return this.submit(new RemoteCall<byte[]>() {
+            @Override
+            public byte[] call() throws RemoteException {
+                return AsyncFileService.this.client.fetchFile(AsyncFileService.this.serverService, fileName);
+            }
+        });
+    }
+
+    /**
+     * Creates a file on the server and caches it locally once it was created.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @return The future which completes when the file was created.
+     */
+    public CompletableFuture<Void> createFile(final String fileName, final byte[] data) {
+        return this.submit(new RemoteCall<Void>() {
+            @Override
+            public Void call() throws RemoteException {
+                final long requestStart = System.nanoTime();
+                AsyncFileService.this.serverService.createFile(AsyncFileService.this.client, fileName, data);
+                AsyncFileService.this.client.cacheFile(fileName, data, requestStart);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replaces the contents of a file. If the file is cached, only the changed region is sent as a patch, see
+     * ClientApplication "modify".
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param newData
+     *            The new contents of the file.
+     * @return The future which completes when the file was changed, completed at once if the cached file already has
+     *         the new contents.
+     */
+    public CompletableFuture<Void> editFile(final String fileName, final byte[] newData) {
+        final File cachedFile = this.client.getCachedFile(fileName);
+        if ((cachedFile != null) && (cachedFile.getData() != null)) {
+            final FileEdit edit = FileEdit.between(cachedFile.getData(), newData);
+            if (edit == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final String baseVersion = cachedFile.getVersion();
+            return this.submit(new RemoteCall<Void>() {
+                @Override
+                public Void call() throws RemoteException {
+                    if (!AsyncFileService.this.serverService.patchFile(fileName, baseVersion,
+                            Collections.singletonList(edit))) {
+                        AsyncFileService.this.serverService.editFile(fileName, newData);
+                    }
+                    return null;
+                }
+            });
+        }
+        return this.submit(new RemoteCall<Void>() {
+            @Override
+            public Void call() throws RemoteException {
+                AsyncFileService.this.serverService.editFile(fileName, newData);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Removes a file from the server.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The future which completes when the file was removed.
+     */
+    public CompletableFuture<Void> removeFile(final String fileName) {
+        return this.submit(new RemoteCall<Void>() {
+            @Override
+            public Void call() throws RemoteException {
+                AsyncFileService.this.serverService.removeFile(fileName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Renames a file on the server.
+     *
+     * @param fileName
+     *            The current name of the file.
+     * @param newFileName
+     *            The new name of the file.
+     * @return The future which completes when the file was renamed.
+     */
+    public CompletableFuture<Void> renameFile(final String fileName, final String newFileName) {
+        return this.submit(new RemoteCall<Void>() {
+            @Override
+            public Void call() throws RemoteException {
+                AsyncFileService.this.serverService.renameFile(fileName, newFileName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Lists the files on the server whose names start with the given prefix. The pages of the listing are fetched one
+     * after the other, each as its own remote call.
+     *
+     * @param prefix
+     *            The prefix of the names to list, or an empty string to list all files.
+     * @return The future names of the files, in order.
+     */
+    public CompletableFuture<List<String>> listFiles(final String prefix) {
+        return this.listFiles(prefix, null, new ArrayList<String>());
+    }
+
+    /**
+     * Fetches the page of the listing after the given cursor, and then the remaining pages.
+     *
+     * @param prefix
+     *            The prefix of the names to list.
+     * @param cursor
+     *            The cursor of the page, or null for the first page.
+     * @param fileNames
+     *            The names listed so far, to which the names of this page are added.
+     * @return The future names of all files.
+     */
+    private CompletableFuture<List<String>> listFiles(final String prefix, final String cursor,
+            final List<String> fileNames) {
+        return this.submit(new RemoteCall<ListPage>() {
+            @Override
+            public ListPage call() throws RemoteException {
+                return AsyncFileService.this.serverService.listFiles(prefix, cursor, Client.LIST_PAGE_SIZE);
+            }
+        }).thenCompose(new Function<ListPage, CompletableFuture<List<String>>>() {
+            @Override
+            public CompletableFuture<List<String>> apply(final ListPage page) {
+                fileNames.addAll(page.getFileNames());
+                if (page.getNextCursor() == null) {
+                    return CompletableFuture.completedFuture(fileNames);
+                }
+                return AsyncFileService.this.listFiles(prefix, page.getNextCursor(), fileNames);
+            }
+        });
+    }
+
+    /**
+     * Schedules a remote call, after waiting for a free slot if the maximum number of calls is in flight.
+     *
+     * @param call
+     *            The remote call.
+     * @return The future result of the call, failed with a RejectedExecutionException if the call can no longer be
+     *         scheduled, see shutdown().
+     */
+    private <T> CompletableFuture<T> submit(final RemoteCall<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            this.inFlightPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    /**
+                     * Note: the slot is released before the future completes, since dependent stages run in this
+                     * thread and may schedule further calls themselves, e.g. the next page of a listing. Errors fail
+                     * the future as well, so that no caller waits for it forever.
+                     */
+                    T value = null;
+                    Throwable failure = null;
+                    try {
+                        value = call.call();
+                    } catch (final Throwable e) {
+                        failure = e;
+                    } finally {
+                        AsyncFileService.this.inFlightPermits.release();
+                    }
+                    if (failure != null) {
+                        result.completeExceptionally(failure);
+                    } else {
+                        result.complete(value);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.inFlightPermits.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of remote calls which are in flight.
+     *
+     * @return The number of calls in flight.
+     */
+    public int getInFlightCount() {
+        return MAX_IN_FLIGHT - this.inFlightPermits.availablePermits();
+    }
+
+    /**
+     * Stops the background threads once the calls in flight completed. The futures of calls scheduled afterwards fail
+     * with a RejectedExecutionException.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
\ No newline at end of file
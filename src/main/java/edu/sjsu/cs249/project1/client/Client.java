@@ -1,24 +1,48 @@
 package edu.sjsu.cs249.project1.client;
 
-import java.util.HashMap;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import edu.sjsu.cs249.project1.remote.BatchResult;
 import edu.sjsu.cs249.project1.remote.ClientCallback;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.remote.ListPage;
+import edu.sjsu.cs249.project1.remote.OpenResult;
 
 /**
  * This class represents all the operations that a client can perform.
  */
 public class Client implements ClientCallback {
+    /**
+     * Number of names requested per page when listing the files on the server.
+     */
+    public static final int LIST_PAGE_SIZE = 1000;
+
     private final String clientId;
 
     /**
      * Files cached by the client are stored here.
      */
-    private final Map<String, File> fileMap = new HashMap<>();
+    private final ClientCache cache;
+
+    /**
+     * Duration of the cache lease granted by the server. Cached files are not served once their lease has expired.
+     */
+    private long leaseDurationMillis;
 
     public Client(final String clientId) {
+        this(clientId, new ClientCache());
+    }
+
+    public Client(final String clientId, final ClientCache cache) {
         this.clientId = clientId;
+        this.cache = cache;
     }
 
     /**
@@ -29,17 +53,28 @@ public class Client implements ClientCallback {
      */
     @Override
     public void invalidateCache(final String fileName) {
-        final File cachedFile = this.fileMap.get(fileName);
-        if ((cachedFile != null) && cachedFile.isValid()) {
-            /**
-             * Mark cached file as invalid. <br/>
-             * Note: we could have also just removed it from the cache.
-             */
-            cachedFile.setValid(false);
+        /**
+         * Note: the stale copy is kept, marked as invalid, so that openFileIfChanged() can revalidate it instead of
+         * downloading the file again. It still counts against the byte budget of the cache until it is evicted.
+         */
+        if (this.cache.invalidate(fileName)) {
             System.out.println("Cached version of \"" + fileName + "\" was invalidated by the server.");
         }
     }
 
+    /**
+     * Invalidate local client cache for all the filenames provided.
+     *
+     * @param fileNames
+     *            The names of the files to invalidate.
+     */
+    @Override
+    public void invalidateCaches(final Collection<String> fileNames) {
+        for (final String fileName : fileNames) {
+            this.invalidateCache(fileName);
+        }
+    }
+
     /**
      * Returns the ID of this client.
      *
@@ -50,6 +85,16 @@ public class Client implements ClientCallback {
         return this.clientId;
     }
 
+    /**
+     * Sets the duration of the cache lease granted by the server.
+     *
+     * @param leaseDurationMillis
+     *            The lease duration in milliseconds, as returned by FileServerService.getCacheLeaseDuration().
+     */
+    public void setLeaseDuration(final long leaseDurationMillis) {
+        this.leaseDurationMillis = leaseDurationMillis;
+    }
+
     /**
      * Lists all the files residing on the server, or an informational message when no files are found. <br/>
      * Assumption: no authentication is required for any clients to operate on the files.
@@ -90,37 +135,224 @@ public class Client implements ClientCallback {
      *
      * @param fileName
      *            The name of the file.
-     * @return If the local cache contains the file, and if the cached file is valid, then the cached file is returned.
-     *         Otherwise, null is returned.
+     * @return If the local cache contains the complete file, and if the cached file is valid and its lease is still
+     *         live, then the cached file is returned. Otherwise, null is returned.
      */
     public File getCachedFile(final String fileName) {
-        final File file = this.fileMap.get(fileName);
-        if ((file != null) && file.isValid()) {
-            return file;
+        return this.cache.getFile(fileName);
+    }
+
+    /**
+     * Caches a file in the local client cache. <br/>
+     * If the cache already contains a file with fileName, then the existing file will be replaced. Caching may evict
+     * the least recently used files. <br/>
+     * Note: the lease is measured from the moment the request was sent rather than from the moment the reply arrived,
+     * so that the client never trusts its copy for longer than the server tracks it.
+     *
+     * @param fileName
+     * @param data
+     * @param requestStartNanos
+     *            The System.nanoTime() at which the request which returned data was sent to the server.
+     */
+    public void cacheFile(final String fileName, final byte[] data, final long requestStartNanos) {
+        this.cacheFile(fileName, data, null, requestStartNanos);
+    }
+
+    /**
+     * Caches a file in the local client cache together with the version reported by the server.
+     *
+     * @param fileName
+     * @param data
+     * @param version
+     *            The version of data, or null if it is not known.
+     * @param requestStartNanos
+     *            The System.nanoTime() at which the request which returned data was sent to the server.
+     */
+    public void cacheFile(final String fileName, final byte[] data, final String version,
+            final long requestStartNanos) {
+        if (this.cache.putFile(fileName, data, version, this.getLeaseExpiry(requestStartNanos))) {
+            System.out.println("Cached \"" + fileName + "\".");
         } else {
-            return null;
+            System.out.println("\"" + fileName + "\" is too big to be cached.");
         }
     }
 
     /**
-     * Caches a file in the local client cache. <br/>
-     * If the cache already contains a file with fileName, then the existing file will be updated with data and marked
-     * as valid. <br/>
-     * If the cache does not contain a file with fileName, then a new File object will be created and stored in the
-     * cache using the provided fileName and data.
+     * Lists the files residing on the server whose names start with the given prefix, or an informational message when
+     * no files are found. <br/>
+     * The names are fetched one page at a time and printed as each page arrives, so that a large listing neither has to
+     * be held in memory nor sent in a single reply.
+     *
+     * @param serverService
+     *            The server to list the files of.
+     * @param prefix
+     *            The prefix of the names to list, or an empty string to list all files.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    public void printFileNames(final FileServerService serverService, final String prefix) throws RemoteException {
+        boolean isEmpty = true;
+        String cursor = null;
+        do {
+            final ListPage page = serverService.listFiles(prefix, cursor, LIST_PAGE_SIZE);
+            for (final String fileName : page.getFileNames()) {
+                System.out.println(fileName);
+                isEmpty = false;
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        if (isEmpty) {
+            System.out.println("There are no files on server to list.");
+        }
+    }
+
+    /**
+     * Fetches a file which can not be served from the local cache from the server, and caches it. <br/>
+     * If the cache still holds a stale copy of the file, e.g. after an invalidation, only its version is sent. The copy
+     * is reused if the server reports that it was not modified, so the contents are only downloaded if they changed.
      *
+     * @param serverService
+     *            The server to fetch the file from.
      * @param fileName
+     *            The name of the file.
+     * @return The current contents of the file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    public byte[] fetchFile(final FileServerService serverService, final String fileName) throws RemoteException {
+        long requestStart = System.nanoTime();
+        OpenResult result = serverService.openFileIfChanged(this, fileName, this.cache.getStaleVersion(fileName));
+        if (!result.isModified()) {
+            final byte[] data = this.cache.renew(fileName, result.getVersion(), this.getLeaseExpiry(requestStart));
+            if (data != null) {
+                System.out.println("Cached version of \"" + fileName + "\" is still current.");
+                return data;
+            }
+            /**
+             * The stale copy was evicted while the request was in flight, so download the contents after all.
+             */
+            requestStart = System.nanoTime();
+            result = serverService.openFileIfChanged(this, fileName, null);
+        }
+        this.cacheFile(fileName, result.getData(), result.getVersion(), requestStart);
+        return result.getData();
+    }
+
+    /**
+     * Returns the contents of several files, e.g. a working set of small files. Files which are cached and valid are
+     * served from the local cache; all others are fetched from the server in a single call, and cached. <br/>
+     * Files which could not be fetched, e.g. because they do not exist, are reported and left out of the result.
+     *
+     * @param serverService
+     *            The server to fetch the files from.
+     * @param fileNames
+     *            The names of the files.
+     * @return Structure: file name -> current contents, in the order of fileNames.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    public Map<String, byte[]> fetchFiles(final FileServerService serverService, final List<String> fileNames)
+            throws RemoteException {
+        final Map<String, byte[]> contents = new LinkedHashMap<>();
+        final List<String> missingNames = new ArrayList<>();
+        for (final String fileName : fileNames) {
+            final File cachedFile = this.getCachedFile(fileName);
+            contents.put(fileName, cachedFile != null ? cachedFile.getData() : null);
+            if (cachedFile == null) {
+                missingNames.add(fileName);
+            }
+        }
+        if (!missingNames.isEmpty()) {
+            final long requestStart = System.nanoTime();
+            final BatchResult<OpenResult> result = serverService.openFiles(this, missingNames);
+            for (final Map.Entry<String, OpenResult> file : result.getValues().entrySet()) {
+                this.cacheFile(file.getKey(), file.getValue().getData(), file.getValue().getVersion(), requestStart);
+                contents.put(file.getKey(), file.getValue().getData());
+            }
+            for (final Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                System.out.println("Could not open \"" + failure.getKey() + "\": " + failure.getValue());
+                contents.remove(failure.getKey());
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Checks the local file cache for a range of the provided fileName.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param length
+     *            The number of bytes in the range.
+     * @return The requested bytes if the cached file is valid, its lease is still live and the range has been fetched
+     *         before. Otherwise, null is returned.
+     */
+    public byte[] getCachedRange(final String fileName, final long offset, final int length) {
+        return this.cache.getRange(fileName, offset, length);
+    }
+
+    /**
+     * Caches a range of a file in the local client cache. <br/>
+     * If the cached file is still valid, the range is added to the ranges fetched before. Otherwise, the stale contents
+     * are discarded and the range becomes the only cached part of the file.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param offset
+     *            The position of the first byte of the range.
      * @param data
+     *            The contents of the range.
+     * @param requestStartNanos
+     *            The System.nanoTime() at which the request which returned data was sent to the server.
      */
-    public void cacheFile(final String fileName, final byte[] data) {
-        final File file = this.fileMap.get(fileName);
-        if (file != null) {
-            file.setData(data);
-            file.setValid(true);
-            System.out.println("Updated cached contents of \"" + fileName + "\".");
+    public void cacheRange(final String fileName, final long offset, final byte[] data, final long requestStartNanos) {
+        if (this.cache.putRange(fileName, offset, data, this.getLeaseExpiry(requestStartNanos))) {
+            System.out.println("Cached " + data.length + " bytes of \"" + fileName + "\" at offset " + offset + ".");
         } else {
-            this.fileMap.put(fileName, new File(data));
-            System.out.println("Cached \"" + fileName + "\".");
+            System.out.println("\"" + fileName + "\" is too big to be cached.");
         }
     }
+
+    /**
+     * Revalidates the files in the local disk cache which may not be served without asking the server first, e.g. the
+     * files rehydrated after a restart. Only the versions are sent to the server; files which are still current get a
+     * new lease, all others are dropped and will be downloaded again when they are opened.
+     *
+     * @param serverService
+     *            The server to revalidate the files with.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    public void revalidateCache(final FileServerService serverService) throws RemoteException {
+        final Map<String, String> staleVersions = this.cache.getStaleVersions();
+        if (!staleVersions.isEmpty()) {
+            final long requestStart = System.nanoTime();
+            final Set<String> currentNames = serverService.revalidateFiles(this, staleVersions);
+            this.cache.applyRevalidation(staleVersions.keySet(), currentNames, this.getLeaseExpiry(requestStart));
+            System.out.println("Revalidated cached files: " + currentNames.size() + " of " + staleVersions.size()
+                    + " are current.");
+        }
+    }
+
+    /**
+     * Returns the local cache of this client, e.g. to inspect its statistics.
+     *
+     * @return The local cache.
+     */
+    public ClientCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Computes when the lease on a file fetched by the given request expires.
+     *
+     * @param requestStartNanos
+     *            The System.nanoTime() at which the request was sent to the server.
+     * @return The lease expiry in System.nanoTime() units.
+     */
+    private long getLeaseExpiry(final long requestStartNanos) {
+        return requestStartNanos + TimeUnit.MILLISECONDS.toNanos(this.leaseDurationMillis);
+    }
 }
\ No newline at end of file
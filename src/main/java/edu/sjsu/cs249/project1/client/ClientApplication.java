@@ -1,28 +1,48 @@
 package edu.sjsu.cs249.project1.client;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Scanner;
 
+import edu.sjsu.cs249.project1.remote.BatchResult;
+import edu.sjsu.cs249.project1.remote.FileEdit;
 import edu.sjsu.cs249.project1.remote.FileServerService;
 import edu.sjsu.cs249.project1.server.CacheException;
 import edu.sjsu.cs249.project1.server.FileException;
 
 /**
  * Entry point into the Client application. ClientApplication handles user input and interaction with the Client and
- * registering/interacting with the remote FileServer.
+ * registering/interacting with the remote FileServer. <br/>
+ * The following system properties can be used to select the transport: <br/>
+ * client.transport - "rmi" to connect through Java RMI, or "nio" to connect over the binary protocol of the server's
+ * nio transport (default rmi). <br/>
+ * client.nio.port - Port of the server's nio transport (default 5100).
  */
 public class ClientApplication {
-    public static final String HELP = "Available commands:\n" + "ls - Lists the available files\n"
+    private static final String TRANSPORT = System.getProperty("client.transport", "rmi");
+    private static final int NIO_PORT = Integer.getInteger("client.nio.port", 5100);
+
+    public static final String HELP = "Available commands:\n"
+            + "ls [prefix] - Lists the available files, or only those whose name starts with prefix\n"
             + "create <filename> <contents> - create a file with the given name \n"
             + "open <filename> - Open a file. The file can be modified. Press return to save and exit\n"
+            + "open <filename> <filename> ... - Open several files at once\n"
+            + "read <filename> <offset> <length> - Read part of a file\n"
             + "modify <filename> <new data> - edit a file with new contents and update local cache\n"
-            + "rm <filename> - Delete a file\n" + "rename <filename> <new filename> - Rename a file\n"
-            + "help - displays this message\n" + "exit - Exits the client\n";
+            + "append <filename> <data> - append data to the end of a file\n"
+            + "rm <filename> ... - Delete one or more files\n" + "rename <filename> <new filename> - Rename a file\n"
+            + "download <filename> <local path> - Stream a file from the server into a local file\n"
+            + "upload <local path> <filename> - Stream a local file to the server, creating or replacing the file\n"
+            + "cache - Prints statistics of the local cache\n" + "help - displays this message\n"
+            + "exit - Exits the client\n";
 
     public static void main(final String[] args) {
         /**
@@ -46,13 +66,21 @@ public class ClientApplication {
             System.out.println("Server port: " + port);
 
             /**
-             * Setup Client and connect to Server via RMI.
+             * Setup Client and connect to Server via RMI, or via the nio transport, which exports the Client over its
+             * own connection.
              */
             final Client client1 = new Client("client-" + (System.currentTimeMillis() / 1000L));
-            UnicastRemoteObject.exportObject(client1, port);
-            final FileServerService serverService = (FileServerService) Naming
-                    .lookup("rmi://" + host + ":5099/fileService");
+            final FileServerService serverService;
+            if ("nio".equals(TRANSPORT)) {
+                serverService = NioTransport.connect(host, NIO_PORT);
+            } else {
+                UnicastRemoteObject.exportObject(client1, port);
+                serverService = (FileServerService) Naming.lookup("rmi://" + host + ":5099/fileService");
+            }
             serverService.register(client1);
+            client1.setLeaseDuration(serverService.getCacheLeaseDuration());
+            client1.revalidateCache(serverService);
+            final FileTransfer fileTransfer = new FileTransfer(serverService);
             System.out.println("+ Client Started +");
 
             /**
@@ -77,12 +105,20 @@ public class ClientApplication {
                     break;
                 }
 
+                case "cache": {
+                    /**
+                     * Print the size and hit, miss and eviction counts of the local cache.
+                     */
+                    System.out.println(client1.getCache());
+                    break;
+                }
+
                 case "ls": {
                     try {
                         /**
-                         * Print the names of all files currently being hosted on the server.
+                         * Print the names of the files currently being hosted on the server, page by page.
                          */
-                        client1.printFileNames(serverService.listFiles());
+                        client1.printFileNames(serverService, inputs.length > 1 ? inputs[1] : "");
                     } catch (final RemoteException e) {
                         printRelevantExceptionInfo(e);
                     }
@@ -94,6 +130,22 @@ public class ClientApplication {
                         System.out.println("Error. No file name given.");
                         break;
                     }
+                    if (inputs.length > 2) {
+                        /**
+                         * Several files are opened with a single request for all files which are not cached.
+                         */
+                        try {
+                            final Map<String, byte[]> contents = client1.fetchFiles(serverService,
+                                    Arrays.asList(inputs).subList(1, inputs.length));
+                            for (final Map.Entry<String, byte[]> file : contents.entrySet()) {
+                                System.out.println("Opened: " + file.getKey());
+                                client1.printFile(file.getValue());
+                            }
+                        } catch (final RemoteException e) {
+                            printRelevantExceptionInfo(e);
+                        }
+                        break;
+                    }
                     final String fileName = inputs[1];
                     System.out.println("Opening: " + fileName);
                     /**
@@ -103,22 +155,55 @@ public class ClientApplication {
                     final File cachedFile = client1.getCachedFile(fileName);
                     if (cachedFile != null) {
                         /**
-                         * If the file is already cached and is still considered valid, print the cached copy of the
-                         * file.
+                         * If the file is already cached and is still considered valid (not invalidated and within its
+                         * lease), print the cached copy of the file.
                          */
                         client1.printFile(cachedFile.getData());
                     } else {
                         /**
-                         * Else the cache does not contain the file. In this case, we need to interact with the server.
-                         * <br/>
-                         * 1. Pull the file from the server. <br/>
+                         * Else the cache does not contain a usable copy. In this case, we need to interact with the
+                         * server. <br/>
+                         * 1. Pull the file from the server, unless a stale cached copy turns out to be current. <br/>
                          * 2. Cache the file locally for future reuse. <br/>
                          * 3. Print the result received from the server.
                          */
                         try {
-                            final byte[] serverFileContents = serverService.openFile(client1, fileName);
-                            client1.cacheFile(fileName, serverFileContents);
-                            client1.printFile(serverFileContents);
+                            client1.printFile(client1.fetchFile(serverService, fileName));
+                        } catch (final RemoteException e) {
+                            printRelevantExceptionInfo(e);
+                        }
+                    }
+                    break;
+                }
+
+                case "read": {
+                    if (inputs.length < 4) {
+                        System.out.println("Error. A file name, offset and length are required.");
+                        break;
+                    }
+                    final String fileName = inputs[1];
+                    final long offset;
+                    final int length;
+                    try {
+                        offset = Long.parseLong(inputs[2]);
+                        length = Integer.parseInt(inputs[3]);
+                    } catch (final NumberFormatException e) {
+                        System.out.println("Error. Offset and length must be numbers.");
+                        break;
+                    }
+                    /**
+                     * Serve the range from the local cache if it was fetched before, else pull only that range from
+                     * the server and cache it.
+                     */
+                    final byte[] cachedRange = client1.getCachedRange(fileName, offset, length);
+                    if (cachedRange != null) {
+                        client1.printFile(cachedRange);
+                    } else {
+                        try {
+                            final long requestStart = System.nanoTime();
+                            final byte[] range = serverService.readFileRange(client1, fileName, offset, length);
+                            client1.cacheRange(fileName, offset, range, requestStart);
+                            client1.printFile(range);
                         } catch (final RemoteException e) {
                             printRelevantExceptionInfo(e);
                         }
@@ -137,9 +222,19 @@ public class ClientApplication {
                          * Send remove request to the server. <br/>
                          * Note 1: it is possible to remove files on the server which are not cached locally. <br/>
                          * Note 2: if this client currently has the specified file cached, then it will be invalidated
-                         * by the server.
+                         * by the server. <br/>
+                         * Note 3: several files are removed with a single request.
                          */
-                        serverService.removeFile(fileName);
+                        if (inputs.length > 2) {
+                            final BatchResult<Void> result = serverService
+                                    .removeFiles(Arrays.asList(inputs).subList(1, inputs.length));
+                            for (final Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                                System.out.println("Could not remove \"" + failure.getKey() + "\": "
+                                        + failure.getValue());
+                            }
+                        } else {
+                            serverService.removeFile(fileName);
+                        }
                     } catch (final RemoteException e) {
                         printRelevantExceptionInfo(e);
                     }
@@ -163,8 +258,9 @@ public class ClientApplication {
                          * Send create request to the server. <br/>
                          * If server request completes without exception, then cache the created file locally.
                          */
+                        final long requestStart = System.nanoTime();
                         serverService.createFile(client1, fileName, contents);
-                        client1.cacheFile(fileName, contents);
+                        client1.cacheFile(fileName, contents, requestStart);
                     } catch (final RemoteException e) {
                         printRelevantExceptionInfo(e);
                     }
@@ -189,9 +285,47 @@ public class ClientApplication {
                          * Send edit request to the server. <br/>
                          * Note 1: it is possible to edit files on the server which are not cached locally. <br/>
                          * Note 2: if this client currently has the specified file cached, then it will be invalidated
-                         * by the server.
+                         * by the server. <br/>
+                         * Note 3: if the file is cached, only the changed region is sent as a patch. Should another
+                         * client have changed the file in the meantime, the patch is rejected and the complete
+                         * contents are sent instead.
                          */
-                        serverService.editFile(fileName, newContents);
+                        final File cachedFile = client1.getCachedFile(fileName);
+                        if ((cachedFile != null) && (cachedFile.getData() != null)) {
+                            final FileEdit edit = FileEdit.between(cachedFile.getData(), newContents);
+                            if ((edit != null) && !serverService.patchFile(fileName, cachedFile.getVersion(),
+                                    Collections.singletonList(edit))) {
+                                serverService.editFile(fileName, newContents);
+                            }
+                        } else {
+                            serverService.editFile(fileName, newContents);
+                        }
+                    } catch (final RemoteException e) {
+                        printRelevantExceptionInfo(e);
+                    }
+                    break;
+                }
+
+                case "append": {
+                    if (inputs.length < 2) {
+                        System.out.println("Error. No file name given.");
+                        break;
+                    }
+                    final String fileName = inputs[1];
+                    if (inputs.length < 3) {
+                        System.out.println("Error. No data given.");
+                        break;
+                    }
+                    final String data = input.substring(input.indexOf(inputs[2]));
+                    System.out.println("Appending to: " + fileName);
+                    try {
+                        /**
+                         * Send only the appended bytes to the server. <br/>
+                         * Note: if this client currently has the specified file cached, then it will be invalidated by
+                         * the server.
+                         */
+                        serverService.patchFile(fileName,
+                                Collections.singletonList(FileEdit.append(data.getBytes(Charset.forName("UTF-8")))));
                     } catch (final RemoteException e) {
                         printRelevantExceptionInfo(e);
                     }
@@ -224,6 +358,60 @@ public class ClientApplication {
                     break;
                 }
 
+                case "download": {
+                    if (inputs.length < 2) {
+                        System.out.println("Error. No file name given.");
+                        break;
+                    }
+                    final String fileName = inputs[1];
+                    if (inputs.length < 3) {
+                        System.out.println("Error. No local path given.");
+                        break;
+                    }
+                    try {
+                        /**
+                         * Pull the file in chunks and write them straight to disk. <br/>
+                         * Note: downloads bypass the local cache, which is meant for files small enough to hold in
+                         * memory.
+                         */
+                        final long size = fileTransfer.download(fileName, Paths.get(inputs[2]));
+                        System.out.println("Downloaded " + size + " bytes of \"" + fileName + "\" to \"" + inputs[2]
+                                + "\".");
+                    } catch (final RemoteException e) {
+                        printRelevantExceptionInfo(e);
+                    } catch (final IOException e) {
+                        System.err.println("\nCould not write \"" + inputs[2] + "\" - " + e.getMessage());
+                    }
+                    break;
+                }
+
+                case "upload": {
+                    if (inputs.length < 2) {
+                        System.out.println("Error. No local path given.");
+                        break;
+                    }
+                    if (inputs.length < 3) {
+                        System.out.println("Error. No file name given.");
+                        break;
+                    }
+                    final String fileName = inputs[2];
+                    try {
+                        /**
+                         * Push the file in chunks. <br/>
+                         * Note: if this client currently has the specified file cached, then it will be invalidated by
+                         * the server once the upload is committed.
+                         */
+                        final long size = fileTransfer.upload(Paths.get(inputs[1]), fileName);
+                        System.out.println("Uploaded " + size + " bytes from \"" + inputs[1] + "\" to \"" + fileName
+                                + "\".");
+                    } catch (final RemoteException e) {
+                        printRelevantExceptionInfo(e);
+                    } catch (final IOException e) {
+                        System.err.println("\nCould not read \"" + inputs[1] + "\" - " + e.getMessage());
+                    }
+                    break;
+                }
+
                 case "": {
                     /**
                      * No input was entered. Print informational message.
@@ -250,7 +438,7 @@ public class ClientApplication {
                 }
                 }
             }
-        } catch (RemoteException | MalformedURLException | NotBoundException e) {
+        } catch (IOException | NotBoundException e) {
             e.printStackTrace();
             System.out.println("Critical exception occurred - forcing program termination.");
         } finally {
@@ -0,0 +1,680 @@
+package edu.sjsu.cs249.project1.client;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.sjsu.cs249.project1.remote.ContentVersion;
+
+/**
+ * The local file cache of a client, bounded by both the total number of cached bytes and the number of cached files.
+ * <br/>
+ * When either bound is exceeded, the least recently used files are evicted. Complete files which were invalidated or
+ * whose lease expired are no longer served, but are kept until they are evicted, so that they can be revalidated with
+ * the server by their version instead of being downloaded again. Partially cached files are removed right away. <br/>
+ * Optionally, complete files are also written through to a local directory. Files evicted from memory are then served
+ * from disk with memory-mapped reads, and the directory is rehydrated when the client restarts. Files on disk whose lease
+ * has expired, or which were invalidated, are kept together with their version (see ContentVersion), so that they can be
+ * revalidated with the server instead of being downloaded again. <br/>
+ * Note: all methods are synchronized, since the server invalidates files from RMI threads while the client application
+ * reads and fills the cache.
+ */
+public class ClientCache {
+    /**
+     * Default limits, which can be overridden with the client.cache.maxBytes and client.cache.maxEntries system
+     * properties.
+     */
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("client.cache.maxBytes", 64L * 1024 * 1024);
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("client.cache.maxEntries", 1024);
+
+    /**
+     * The directory to write cached files through to, set with the client.cache.dir system property. The disk cache is
+     * disabled when it is not set. Its size can be limited with the client.cache.maxDiskBytes system property.
+     */
+    public static final String DEFAULT_DIRECTORY = System.getProperty("client.cache.dir");
+    public static final long DEFAULT_MAX_DISK_BYTES = Long.getLong("client.cache.maxDiskBytes", 1024L * 1024 * 1024);
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String VERSION_SUFFIX = ".version";
+
+    private final long maxBytes;
+    private final int maxEntries;
+    private final Path directory;
+    private final long maxDiskBytes;
+
+    /**
+     * Structure: file name -> cached file, in access order (least recently used first).
+     */
+    private final LinkedHashMap<String, File> fileMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Structure: file name -> file written to disk, in access order (least recently used first).
+     */
+    private final LinkedHashMap<String, SpilledFile> spilledFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+    private long spilledBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * A complete file which has been written to disk.
+     */
+    private static class SpilledFile {
+        private final Path dataPath;
+        private final Path versionPath;
+        private final String version;
+        private final long size;
+        private long leaseExpiry;
+
+        private SpilledFile(final Path dataPath, final Path versionPath, final String version, final long size,
+                final long leaseExpiry) {
+            this.dataPath = dataPath;
+            this.versionPath = versionPath;
+            this.version = version;
+            this.size = size;
+            this.leaseExpiry = leaseExpiry;
+        }
+
+        private boolean hasLiveLease() {
+            return (this.leaseExpiry - System.nanoTime()) > 0;
+        }
+    }
+
+    public ClientCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRIES, DEFAULT_DIRECTORY != null ? Paths.get(DEFAULT_DIRECTORY) : null,
+                DEFAULT_MAX_DISK_BYTES);
+    }
+
+    public ClientCache(final long maxBytes, final int maxEntries) {
+        this(maxBytes, maxEntries, null, 0);
+    }
+
+    /**
+     * Instantiates a new ClientCache which writes complete files through to the given directory. Files left in the
+     * directory by an earlier session are rehydrated, but are not served before they have been revalidated.
+     *
+     * @param maxBytes
+     *            The maximum number of bytes held in memory.
+     * @param maxEntries
+     *            The maximum number of files held in memory.
+     * @param directory
+     *            The directory to write files to, or null to disable the disk cache.
+     * @param maxDiskBytes
+     *            The maximum number of bytes held on disk.
+     */
+    public ClientCache(final long maxBytes, final int maxEntries, final Path directory, final long maxDiskBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            this.rehydrate();
+        }
+    }
+
+    /**
+     * Returns the cached file with the given name, if its complete contents are cached, it is valid and its lease is
+     * still live.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The cached file, or null on a cache miss.
+     */
+    public synchronized File getFile(final String fileName) {
+        File file = this.getLiveFile(fileName);
+        if ((file == null) || (file.getData() == null)) {
+            /**
+             * Fall back to the disk cache, and bring the file back into memory.
+             */
+            file = null;
+            final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+            if ((spilledFile != null) && spilledFile.hasLiveLease()) {
+                file = this.loadSpilled(fileName, spilledFile);
+            }
+        }
+        if (file != null) {
+            this.hitCount++;
+        } else {
+            this.missCount++;
+        }
+        return file;
+    }
+
+    /**
+     * Returns a range of the cached file with the given name, if the file is valid, its lease is still live and the
+     * range has been fetched before.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param length
+     *            The number of bytes in the range.
+     * @return The requested bytes, or null on a cache miss.
+     */
+    public synchronized byte[] getRange(final String fileName, final long offset, final int length) {
+        final File file = this.getLiveFile(fileName);
+        byte[] range = file != null ? file.getRange(offset, length) : null;
+        if (range == null) {
+            final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+            if ((spilledFile != null) && spilledFile.hasLiveLease()) {
+                range = this.readSpilled(fileName, spilledFile, offset, length);
+            }
+        }
+        if (range != null) {
+            this.hitCount++;
+        } else {
+            this.missCount++;
+        }
+        return range;
+    }
+
+    /**
+     * Caches the complete contents of a file, replacing anything cached for it before.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the lease on the file expires.
+     * @return True if the file was cached, or false if it is too big to ever fit in the cache.
+     */
+    public synchronized boolean putFile(final String fileName, final byte[] data, final long leaseExpiry) {
+        return this.putFile(fileName, data, null, leaseExpiry);
+    }
+
+    /**
+     * Caches the complete contents of a file together with their version, replacing anything cached for it before.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @param version
+     *            The version of data as reported by the server, or null to compute it when it is needed.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the lease on the file expires.
+     * @return True if the file was cached, or false if it is too big to ever fit in the cache.
+     */
+    public synchronized boolean putFile(final String fileName, final byte[] data, final String version,
+            final long leaseExpiry) {
+        this.spill(fileName, data, version, leaseExpiry);
+        return this.putInMemory(fileName, data, version, leaseExpiry) != null;
+    }
+
+    /**
+     * Caches the complete contents of a file in memory, replacing anything cached for it before.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @param version
+     *            The version of data, or null if it is not known yet.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the lease on the file expires.
+     * @return The cached file, or null if it is too big to ever fit in memory.
+     */
+    private File putInMemory(final String fileName, final byte[] data, final String version, final long leaseExpiry) {
+        this.remove(fileName);
+        if (data.length > this.maxBytes) {
+            return null;
+        }
+        final File file = new File(data, version, leaseExpiry);
+        this.fileMap.put(fileName, file);
+        this.totalBytes += file.getSize();
+        this.evict();
+        return file;
+    }
+
+    /**
+     * Caches a range of a file. If the cached file is still valid and within its lease, the range is added to the ranges
+     * fetched before. Otherwise, the stale contents are discarded and the range becomes the only cached part of the
+     * file.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param data
+     *            The contents of the range.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the lease on the file expires.
+     * @return True if the range was cached, or false if it is too big to ever fit in the cache.
+     */
+    public synchronized boolean putRange(final String fileName, final long offset, final byte[] data,
+            final long leaseExpiry) {
+        File file = this.getLiveFile(fileName);
+        if (file == null) {
+            this.remove(fileName);
+            if (data.length > this.maxBytes) {
+                return false;
+            }
+            file = new File(null, null, leaseExpiry);
+            this.fileMap.put(fileName, file);
+        } else {
+            file.setLeaseExpiry(leaseExpiry);
+        }
+        final long sizeBefore = file.getSize();
+        file.addRange(offset, data);
+        this.totalBytes += file.getSize() - sizeBefore;
+        if (file.getSize() > this.maxBytes) {
+            this.remove(fileName);
+            return false;
+        }
+        this.evict();
+        return true;
+    }
+
+    /**
+     * Invalidates the cached file with the given name. The complete contents are kept for a later revalidation, but a
+     * partially cached file is removed right away.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return True if a valid cached file was invalidated, or false if the file was not cached.
+     */
+    public synchronized boolean invalidate(final String fileName) {
+        boolean wasValid = false;
+        final File file = this.fileMap.get(fileName);
+        if (file != null) {
+            wasValid = file.isValid();
+            file.setValid(false);
+            if (file.getData() == null) {
+                this.remove(fileName);
+            }
+        }
+        final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+        if (spilledFile != null) {
+            /**
+             * Keep the copy on disk, but end its lease so it is only served again after a revalidation.
+             */
+            wasValid |= spilledFile.hasLiveLease();
+            spilledFile.leaseExpiry = System.nanoTime();
+        }
+        return wasValid;
+    }
+
+    /**
+     * Returns the version of the stale copy of a file, i.e. a complete copy which was invalidated or whose lease
+     * expired, in memory or on disk.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The version of the stale copy, or null if there is none.
+     */
+    public synchronized String getStaleVersion(final String fileName) {
+        final File file = this.fileMap.get(fileName);
+        if ((file != null) && (file.getData() != null) && (!file.isValid() || !file.hasLiveLease())) {
+            return file.getVersion();
+        }
+        final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+        if ((spilledFile != null) && !spilledFile.hasLiveLease()) {
+            return spilledFile.version;
+        }
+        return null;
+    }
+
+    /**
+     * Renews the stale copy of a file after the server reported that the given version is still current.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param version
+     *            The current version of the file.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the new lease expires.
+     * @return The contents of the renewed copy, or null if no copy with the given version is cached (any more).
+     */
+    public synchronized byte[] renew(final String fileName, final String version, final long leaseExpiry) {
+        final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+        final boolean isSpilledCurrent = (spilledFile != null) && spilledFile.version.equals(version);
+        if (isSpilledCurrent) {
+            spilledFile.leaseExpiry = leaseExpiry;
+        }
+        File file = this.fileMap.get(fileName);
+        if ((file != null) && (file.getData() != null) && version.equals(file.getVersion())) {
+            file.setValid(true);
+            file.setLeaseExpiry(leaseExpiry);
+        } else if (isSpilledCurrent) {
+            file = this.loadSpilled(fileName, spilledFile);
+        } else {
+            file = null;
+        }
+        return file != null ? file.getData() : null;
+    }
+
+    /**
+     * Returns the versions of all files on disk which may not be served until they have been revalidated, either because
+     * they were rehydrated from an earlier session, or because they were invalidated or their lease expired.
+     *
+     * @return Structure: file name -> version of the copy on disk.
+     */
+    public synchronized Map<String, String> getStaleVersions() {
+        final Map<String, String> staleVersions = new HashMap<>();
+        for (final Map.Entry<String, SpilledFile> spilledFile : this.spilledFiles.entrySet()) {
+            if (!spilledFile.getValue().hasLiveLease()) {
+                staleVersions.put(spilledFile.getKey(), spilledFile.getValue().version);
+            }
+        }
+        return staleVersions;
+    }
+
+    /**
+     * Applies the outcome of a revalidation with the server. Files which are still current get a new lease, all other
+     * revalidated files are removed from disk.
+     *
+     * @param revalidatedNames
+     *            The names of the files which were sent to the server.
+     * @param currentNames
+     *            The names of the files which the server reported to be current.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the new leases expire.
+     */
+    public synchronized void applyRevalidation(final Collection<String> revalidatedNames,
+            final Set<String> currentNames, final long leaseExpiry) {
+        for (final String fileName : revalidatedNames) {
+            final SpilledFile spilledFile = this.spilledFiles.get(fileName);
+            if (spilledFile != null) {
+                if (currentNames.contains(fileName)) {
+                    spilledFile.leaseExpiry = leaseExpiry;
+                } else {
+                    this.removeSpilled(fileName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached file with the given name if it is valid and within its lease. Otherwise the stale entry is
+     * removed.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The cached file, or null.
+     */
+    private File getLiveFile(final String fileName) {
+        final File file = this.fileMap.get(fileName);
+        if ((file != null) && (!file.isValid() || !file.hasLiveLease())) {
+            /**
+             * Keep complete copies for a later revalidation, drop partial ones.
+             */
+            if (file.getData() == null) {
+                this.remove(fileName);
+            }
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Removes the file with the given name from the cache.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The removed file, or null if it was not cached.
+     */
+    private File remove(final String fileName) {
+        final File file = this.fileMap.remove(fileName);
+        if (file != null) {
+            this.totalBytes -= file.getSize();
+        }
+        return file;
+    }
+
+    /**
+     * Evicts the least recently used files until the cache is within both of its bounds again.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, File>> iterator = this.fileMap.entrySet().iterator();
+        while (((this.totalBytes > this.maxBytes) || (this.fileMap.size() > this.maxEntries)) && iterator.hasNext()) {
+            final File file = iterator.next().getValue();
+            iterator.remove();
+            this.totalBytes -= file.getSize();
+            this.evictionCount++;
+        }
+    }
+
+    /**
+     * Writes a complete file to the disk cache, if it is enabled. The data is written before the version, so that a
+     * crash never leaves a version next to incomplete data.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @param version
+     *            The version of data, or null to compute it here.
+     * @param leaseExpiry
+     *            The moment (in System.nanoTime() units) at which the lease on the file expires.
+     */
+    private void spill(final String fileName, final byte[] data, final String version, final long leaseExpiry) {
+        if ((this.directory == null) || (data.length > this.maxDiskBytes)) {
+            return;
+        }
+        this.removeSpilled(fileName);
+        final String encodedName = this.encode(fileName);
+        final Path dataPath = this.directory.resolve(encodedName + DATA_SUFFIX);
+        final Path versionPath = this.directory.resolve(encodedName + VERSION_SUFFIX);
+        final String spilledVersion = version != null ? version : ContentVersion.of(data);
+        try {
+            final Path tempPath = Files.createTempFile(this.directory, "spill-", ".tmp");
+            Files.write(tempPath, data);
+            Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(versionPath, spilledVersion.getBytes(StandardCharsets.UTF_8));
+            this.spilledFiles.put(fileName,
+                    new SpilledFile(dataPath, versionPath, spilledVersion, data.length, leaseExpiry));
+            this.spilledBytes += data.length;
+            this.evictSpilled();
+        } catch (final IOException e) {
+            System.err.println("Could not write \"" + fileName + "\" to the disk cache - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Brings a complete file from the disk cache back into memory.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param spilledFile
+     *            The file on disk.
+     * @return The cached file, or null if it could not be read or is too big to fit in memory.
+     */
+    private File loadSpilled(final String fileName, final SpilledFile spilledFile) {
+        final byte[] data = this.readSpilled(fileName, spilledFile, 0, (int) spilledFile.size);
+        return data != null ? this.putInMemory(fileName, data, spilledFile.version, spilledFile.leaseExpiry) : null;
+    }
+
+    /**
+     * Reads a range of a file from the disk cache through a memory mapping of just that range.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param spilledFile
+     *            The file on disk.
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param length
+     *            The number of bytes in the range.
+     * @return The bytes read, cut short at the end of the file, or null if the file could not be read.
+     */
+    private byte[] readSpilled(final String fileName, final SpilledFile spilledFile, final long offset,
+            final int length) {
+        final long from = Math.min(offset, spilledFile.size);
+        final int count = (int) Math.min(length, spilledFile.size - from);
+        try (FileChannel channel = FileChannel.open(spilledFile.dataPath, StandardOpenOption.READ)) {
+            final ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, from, count);
+            final byte[] bytes = new byte[count];
+            mapping.get(bytes);
+            return bytes;
+        } catch (final IOException e) {
+            System.err.println("Could not read \"" + fileName + "\" from the disk cache - " + e.getMessage());
+            this.removeSpilled(fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a file from the disk cache.
+     *
+     * @param fileName
+     *            The name of the file.
+     */
+    private void removeSpilled(final String fileName) {
+        final SpilledFile spilledFile = this.spilledFiles.remove(fileName);
+        if (spilledFile != null) {
+            this.spilledBytes -= spilledFile.size;
+            this.deleteSpilled(spilledFile);
+        }
+    }
+
+    /**
+     * Deletes the files backing an entry of the disk cache. The version is deleted first, which marks the data as
+     * incomplete should the client crash in between.
+     *
+     * @param spilledFile
+     *            The file on disk.
+     */
+    private void deleteSpilled(final SpilledFile spilledFile) {
+        try {
+            Files.deleteIfExists(spilledFile.versionPath);
+            Files.deleteIfExists(spilledFile.dataPath);
+        } catch (final IOException e) {
+            System.err.println("Could not delete \"" + spilledFile.dataPath + "\" - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts the least recently used files from disk until the disk cache is within its bound again.
+     */
+    private void evictSpilled() {
+        final Iterator<SpilledFile> iterator = this.spilledFiles.values().iterator();
+        while ((this.spilledBytes > this.maxDiskBytes) && iterator.hasNext()) {
+            final SpilledFile spilledFile = iterator.next();
+            iterator.remove();
+            this.spilledBytes -= spilledFile.size;
+            this.deleteSpilled(spilledFile);
+        }
+    }
+
+    /**
+     * Loads the index of the disk cache from the files left in the directory by an earlier session. <br/>
+     * Note: rehydrated files start out without a lease. Leftovers of interrupted writes are deleted.
+     */
+    private void rehydrate() {
+        try {
+            Files.createDirectories(this.directory);
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory)) {
+                final long now = System.nanoTime();
+                for (final Path path : paths) {
+                    final String pathName = path.getFileName().toString();
+                    if (pathName.endsWith(VERSION_SUFFIX)) {
+                        final String encodedName = pathName.substring(0, pathName.length() - VERSION_SUFFIX.length());
+                        final Path dataPath = this.directory.resolve(encodedName + DATA_SUFFIX);
+                        if (Files.exists(dataPath)) {
+                            final String version = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                            final long size = Files.size(dataPath);
+                            this.spilledFiles.put(this.decode(encodedName),
+                                    new SpilledFile(dataPath, path, version, size, now));
+                            this.spilledBytes += size;
+                        } else {
+                            Files.delete(path);
+                        }
+                    } else if (!pathName.endsWith(DATA_SUFFIX)
+                            || !Files.exists(this.directory.resolve(pathName.substring(0,
+                                    pathName.length() - DATA_SUFFIX.length()) + VERSION_SUFFIX))) {
+                        Files.delete(path);
+                    }
+                }
+            }
+            this.evictSpilled();
+            System.out.println("Rehydrated " + this.spilledFiles.size() + " files from the disk cache.");
+        } catch (final IOException e) {
+            System.err.println("Could not load the disk cache from \"" + this.directory + "\" - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes a file name so that it can safely be used as the name of a file on disk.
+     *
+     * @param fileName
+     *            The name of the file on the server.
+     * @return The encoded name.
+     */
+    private String encode(final String fileName) {
+        try {
+            return URLEncoder.encode(fileName, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a name produced by encode().
+     *
+     * @param encodedName
+     *            The encoded name.
+     * @return The name of the file on the server.
+     */
+    private String decode(final String encodedName) {
+        try {
+            return URLDecoder.decode(encodedName, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return this.fileMap.size();
+    }
+
+    /**
+     * Returns a one line summary of the cache statistics.
+     *
+     * @return The cache statistics.
+     */
+    @Override
+    public synchronized String toString() {
+        final long lookups = this.hitCount + this.missCount;
+        return this.fileMap.size() + "/" + this.maxEntries + " files, " + this.totalBytes + "/" + this.maxBytes
+                + " bytes, " + this.hitCount + " hits, " + this.missCount + " misses ("
+                + (lookups > 0 ? ((100 * this.hitCount) / lookups) : 0) + "% hit ratio), " + this.evictionCount
+                + " evictions" + (this.directory != null ? ", " + this.spilledFiles.size() + " files and "
+                        + this.spilledBytes + "/" + this.maxDiskBytes + " bytes on disk" : "");
+    }
+}
\ No newline at end of file
@@ -1,16 +1,43 @@
 package edu.sjsu.cs249.project1.client;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import edu.sjsu.cs249.project1.remote.ContentVersion;
+
 /**
  * Represents a File on the Client side. <br/>
- * Note: Synchronization is not needed here, since a client file is only used by one entity (the client itself).
+ * A cached file either holds the complete contents, or only the ranges which have been fetched so far. <br/>
+ * Note: Synchronization is not needed here, since a client file is only accessed through ClientCache, which is
+ * synchronized.
  */
 public class File {
     private byte[] data;
+
+    /**
+     * The version (see ContentVersion) of data, or null if it has not been computed yet.
+     */
+    private String version;
     private boolean isValid;
 
-    public File(final byte[] data) {
+    /**
+     * Structure: offset -> bytes starting at that offset. Only used while the complete contents are not known. <br/>
+     * Note: ranges never overlap or touch, since adjacent ranges are merged when they are added.
+     */
+    private final NavigableMap<Long, byte[]> ranges = new TreeMap<>();
+
+    /**
+     * The moment (in System.nanoTime() units) after which the server no longer promises to invalidate this copy.
+     */
+    private long leaseExpiry;
+
+    public File(final byte[] data, final String version, final long leaseExpiry) {
         this.data = data;
+        this.version = version;
         this.isValid = true;
+        this.leaseExpiry = leaseExpiry;
     }
 
     public byte[] getData() {
@@ -19,6 +46,92 @@ public class File {
 
     public void setData(final byte[] data) {
         this.data = data;
+        this.version = null;
+        this.ranges.clear();
+    }
+
+    /**
+     * Returns the version of the complete contents, computing it if the server did not send it along.
+     *
+     * @return The version, or null if the complete contents are not known.
+     */
+    public String getVersion() {
+        if ((this.version == null) && (this.data != null)) {
+            this.version = ContentVersion.of(this.data);
+        }
+        return this.version;
+    }
+
+    /**
+     * Returns the number of bytes held by this cached file.
+     *
+     * @return The size of the complete contents, or the total size of the fetched ranges.
+     */
+    public long getSize() {
+        if (this.data != null) {
+            return this.data.length;
+        }
+        long size = 0;
+        for (final byte[] range : this.ranges.values()) {
+            size += range.length;
+        }
+        return size;
+    }
+
+    /**
+     * Adds a fetched range of the contents. Ranges overlapping or touching existing ones are merged, with the new bytes
+     * taking precedence.
+     *
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param bytes
+     *            The contents of the range.
+     */
+    public void addRange(final long offset, final byte[] bytes) {
+        if ((this.data != null) || (bytes.length == 0)) {
+            return;
+        }
+        long mergedStart = offset;
+        long mergedEnd = offset + bytes.length;
+        final Map.Entry<Long, byte[]> lower = this.ranges.floorEntry(offset);
+        if ((lower != null) && ((lower.getKey() + lower.getValue().length) >= offset)) {
+            mergedStart = lower.getKey();
+        }
+        final NavigableMap<Long, byte[]> overlapping = this.ranges.subMap(mergedStart, true, mergedEnd, true);
+        for (final Map.Entry<Long, byte[]> range : overlapping.entrySet()) {
+            mergedEnd = Math.max(mergedEnd, range.getKey() + range.getValue().length);
+        }
+        final byte[] merged = new byte[(int) (mergedEnd - mergedStart)];
+        for (final Map.Entry<Long, byte[]> range : overlapping.entrySet()) {
+            System.arraycopy(range.getValue(), 0, merged, (int) (range.getKey() - mergedStart),
+                    range.getValue().length);
+        }
+        System.arraycopy(bytes, 0, merged, (int) (offset - mergedStart), bytes.length);
+        overlapping.clear();
+        this.ranges.put(mergedStart, merged);
+    }
+
+    /**
+     * Returns a range of the contents, if it is available locally.
+     *
+     * @param offset
+     *            The position of the first byte of the range.
+     * @param length
+     *            The number of bytes in the range.
+     * @return The requested bytes, or null if they have not all been fetched. If the complete contents are known, a
+     *         range extending past the end of the file is cut short, just like on the server.
+     */
+    public byte[] getRange(final long offset, final int length) {
+        if (this.data != null) {
+            final int from = (int) Math.min(offset, this.data.length);
+            return Arrays.copyOfRange(this.data, from, from + Math.min(length, this.data.length - from));
+        }
+        final Map.Entry<Long, byte[]> range = this.ranges.floorEntry(offset);
+        if ((range != null) && ((range.getKey() + range.getValue().length) >= (offset + length))) {
+            final int from = (int) (offset - range.getKey());
+            return Arrays.copyOfRange(range.getValue(), from, from + length);
+        }
+        return null;
     }
 
     public boolean isValid() {
@@ -28,4 +141,21 @@ public class File {
     public void setValid(final boolean isValid) {
         this.isValid = isValid;
     }
+
+    public long getLeaseExpiry() {
+        return this.leaseExpiry;
+    }
+
+    public void setLeaseExpiry(final long leaseExpiry) {
+        this.leaseExpiry = leaseExpiry;
+    }
+
+    /**
+     * Determines if the cache lease on this file is still live.
+     *
+     * @return True if the lease has not expired yet, or false otherwise.
+     */
+    public boolean hasLiveLease() {
+        return (this.leaseExpiry - System.nanoTime()) > 0;
+    }
 }
\ No newline at end of file
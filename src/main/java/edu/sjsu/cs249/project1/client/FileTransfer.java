@@ -0,0 +1,113 @@
+package edu.sjsu.cs249.project1.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+
+import edu.sjsu.cs249.project1.remote.FileHandle;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+
+/**
+ * Streams files between the server and the local disk in fixed-size chunks. <br/>
+ * Only one chunk is held in memory at a time, so the memory used by a transfer does not depend on the size of the file.
+ */
+public class FileTransfer {
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final FileServerService serverService;
+
+    public FileTransfer(final FileServerService serverService) {
+        this.serverService = serverService;
+    }
+
+    /**
+     * Downloads a file from the server into a local file.
+     *
+     * @param fileName
+     *            The name of the file on the server.
+     * @param target
+     *            The local file to write. It is created or truncated.
+     * @return The number of bytes downloaded.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     * @throws IOException
+     *             If the local file could not be written.
+     */
+    public long download(final String fileName, final Path target) throws RemoteException, IOException {
+        final FileHandle handle = this.serverService.openReadHandle(fileName);
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            long offset = 0;
+            while (offset < handle.getSize()) {
+                final byte[] chunk = this.serverService.readChunk(handle.getId(), offset, CHUNK_SIZE);
+                if (chunk.length == 0) {
+                    break;
+                }
+                outputStream.write(chunk);
+                offset += chunk.length;
+            }
+            return offset;
+        } finally {
+            this.serverService.closeReadHandle(handle.getId());
+        }
+    }
+
+    /**
+     * Uploads a local file to the server. The file on the server is created, or replaced if it already exists, only
+     * once all chunks have arrived.
+     *
+     * @param source
+     *            The local file to read.
+     * @param fileName
+     *            The name of the file on the server.
+     * @return The number of bytes uploaded.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     * @throws IOException
+     *             If the local file could not be read.
+     */
+    public long upload(final Path source, final String fileName) throws RemoteException, IOException {
+        final long uploadId = this.serverService.beginUpload(fileName);
+        boolean isCommitted = false;
+        try (InputStream inputStream = Files.newInputStream(source)) {
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            long offset = 0;
+            int length;
+            while ((length = this.readFully(inputStream, buffer)) > 0) {
+                this.serverService.uploadChunk(uploadId, offset,
+                        length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                offset += length;
+            }
+            this.serverService.commitUpload(uploadId);
+            isCommitted = true;
+            return offset;
+        } finally {
+            if (!isCommitted) {
+                this.serverService.abortUpload(uploadId);
+            }
+        }
+    }
+
+    /**
+     * Reads from the stream until the buffer is full or the stream ends.
+     *
+     * @param inputStream
+     *            The stream to read.
+     * @param buffer
+     *            The buffer to fill.
+     * @return The number of bytes read, 0 at the end of the stream.
+     * @throws IOException
+     *             If the stream could not be read.
+     */
+    private int readFully(final InputStream inputStream, final byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while ((length < buffer.length) && ((read = inputStream.read(buffer, length, buffer.length - length)) > 0)) {
+            length += read;
+        }
+        return length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package edu.sjsu.cs249.project1.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.remote.MessageConnection;
+
+/**
+ * Connects to a server over the binary MessageConnection protocol instead of RMI. <br/>
+ * The returned FileServerService can be used exactly like the one looked up through RMI. The Client does not need to
+ * be exported: it is exported over the same connection when it is first passed to the server, e.g. by register(), and
+ * callbacks of the server arrive over that connection. <br/>
+ * The following system properties can be used to configure the connection: <br/>
+ * client.nio.maxFrameBytes - Largest message accepted from the server, e.g. the contents of an opened file (default
+ * 64 MiB).
+ */
+public class NioTransport {
+    private static final int MAX_FRAME_BYTES = Integer.getInteger("client.nio.maxFrameBytes",
+            MessageConnection.DEFAULT_MAX_FRAME_BYTES);
+
+    /**
+     * Static helper class, hide constructor by making it private.
+     */
+    private NioTransport() {
+
+    }
+
+    /**
+     * Connects to the server.
+     *
+     * @param host
+     *            The host of the server.
+     * @param port
+     *            The port the server listens on (fileserver.nio.port).
+     * @return The service of the server.
+     * @throws IOException
+     *             If the server could not be reached.
+     */
+    public static FileServerService connect(final String host, final int port) throws IOException {
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final ExecutorService callbacks = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "client-callback");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final MessageConnection connection = new MessageConnection(channel, ClientCallback.class, null,
+                FileServerService.class, callbacks);
+        connection.setMaxFrameSize(MAX_FRAME_BYTES);
+        connection.start();
+        return (FileServerService) connection.getRemoteProxy();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,477 @@
+package edu.sjsu.cs249.project1.loadgen;
+
+import java.io.IOException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.sjsu.cs249.project1.client.Client;
+import edu.sjsu.cs249.project1.client.NioTransport;
+import edu.sjsu.cs249.project1.remote.BatchResult;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.server.LatencyHistogram;
+
+/**
+ * Headless load generator, which drives a running ServerApplication with many concurrent clients and reports
+ * throughput, latency percentiles and invalidation delivery lag. <br/>
+ * Every simulated client registers its own callback with the server, like ClientApplication, and runs a closed loop of
+ * operations on a shared set of files. Reads always go to the server, so that the server is measured rather than the
+ * local cache, but they still grant the client a lease, so every change sends invalidations to the clients which read
+ * the file recently. The lag of an invalidation is measured from the start of the earliest change of the file which
+ * the client has not seen yet, neither by an invalidation nor by a read, to the arrival of the invalidation at the
+ * client. <br/>
+ * The following system properties configure the workload: <br/>
+ * loadgen.host - Host of the server (default localhost). <br/>
+ * loadgen.transport - "rmi" or "nio", see ClientApplication (default rmi). <br/>
+ * loadgen.nio.port - Port of the server's nio transport (default 5100). <br/>
+ * loadgen.clients - Number of concurrent clients (default 16). <br/>
+ * loadgen.files - Number of files in the working set (default 1000). <br/>
+ * loadgen.fileSizes - Size of the files in bytes: a single size, e.g. "1024", or a range, e.g. "512-65536", from which
+ * sizes are drawn log-uniformly, i.e. small files are as common per power of two as large ones (default 1024). <br/>
+ * loadgen.mix - Relative weights of the operations (default "read=80,write=15,rename=3,delete=2"). A rename moves the
+ * file away and back, of which only the move away is measured. A delete removes the file and creates it again, which
+ * is measured as a create. <br/>
+ * loadgen.zipfExponent - Skew of the file popularity, 0 for uniform (default 0.99). <br/>
+ * loadgen.warmupSeconds - Time to run before measuring (default 5). <br/>
+ * loadgen.durationSeconds - Time to measure (default 30).
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("loadgen.host", "localhost");
+    private static final String TRANSPORT = System.getProperty("loadgen.transport", "rmi");
+    private static final int NIO_PORT = Integer.getInteger("loadgen.nio.port", 5100);
+    private static final int CLIENTS = Integer.getInteger("loadgen.clients", 16);
+    private static final int FILES = Integer.getInteger("loadgen.files", 1000);
+    private static final String FILE_SIZES = System.getProperty("loadgen.fileSizes", "1024");
+    private static final String MIX = System.getProperty("loadgen.mix", "read=80,write=15,rename=3,delete=2");
+    private static final double ZIPF_EXPONENT = Double.parseDouble(System.getProperty("loadgen.zipfExponent", "0.99"));
+    private static final long WARMUP_SECONDS = Long.getLong("loadgen.warmupSeconds", 5L);
+    private static final long DURATION_SECONDS = Long.getLong("loadgen.durationSeconds", 30L);
+
+    private static final String FILE_PREFIX = "loadgen-";
+    private static final int CREATE_BATCH_SIZE = 100;
+
+    /**
+     * The operations of the workload. Note: CREATE only restores the file of a DELETE, it can not be part of the mix.
+     */
+    private enum Operation {
+        READ, WRITE, RENAME, DELETE, CREATE
+    }
+
+    /**
+     * A remote call of the workload.
+     */
+    private interface Call {
+        void run() throws RemoteException;
+    }
+
+    private final String[] fileNames = new String[FILES];
+    private final ZipfianGenerator keys = new ZipfianGenerator(FILES, ZIPF_EXPONENT);
+    private final Operation[] operations;
+    private final double[] cumulativeWeights;
+    private final int minFileSize;
+    private final int maxFileSize;
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LatencyHistogram invalidationLag = new LatencyHistogram();
+    private final List<LoadClient> clients = new ArrayList<>();
+
+    private volatile boolean isRunning = true;
+    private volatile boolean isMeasuring;
+
+    /**
+     * A client which measures the lag of the invalidations it receives.
+     */
+    private class LoadClient extends Client {
+        /**
+         * Structure: file name -> System.nanoTime() at which the earliest change started which this client has not
+         * seen yet.
+         */
+        private final Map<String, Long> changeStarts = new ConcurrentHashMap<>();
+
+        private LoadClient(final String clientId) {
+            super(clientId);
+        }
+
+        @Override
+        public void invalidateCache(final String fileName) {
+            LoadGenerator.this.recordInvalidation(this, fileName);
+            super.invalidateCache(fileName);
+        }
+
+        @Override
+        public void invalidateCaches(final Collection<String> fileNames) {
+            for (final String fileName : fileNames) {
+                LoadGenerator.this.recordInvalidation(this, fileName);
+            }
+            super.invalidateCaches(fileNames);
+        }
+    }
+
+    /**
+     * Instantiates a new LoadGenerator from the system properties.
+     */
+    public LoadGenerator() {
+        for (int i = 0; i < FILES; i++) {
+            this.fileNames[i] = FILE_PREFIX + i;
+        }
+        final Map<Operation, Double> weights = new LinkedHashMap<>();
+        for (final String weight : MIX.split(",")) {
+            final String[] parts = weight.trim().split("=");
+            final Operation operation = Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            if (operation == Operation.CREATE) {
+                throw new IllegalArgumentException("Creates are only measured as part of deletes.");
+            }
+            weights.put(operation, Double.parseDouble(parts[1]));
+        }
+        this.operations = weights.keySet().toArray(new Operation[weights.size()]);
+        this.cumulativeWeights = new double[this.operations.length];
+        double sum = 0;
+        for (int i = 0; i < this.operations.length; i++) {
+            sum += weights.get(this.operations[i]);
+            this.cumulativeWeights[i] = sum;
+        }
+        final String[] sizes = FILE_SIZES.split("-");
+        this.minFileSize = Integer.parseInt(sizes[0].trim());
+        this.maxFileSize = Integer.parseInt(sizes[sizes.length - 1].trim());
+        for (final Operation operation : Operation.values()) {
+            this.latencies.put(operation, new LatencyHistogram());
+            this.errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(final String[] args) {
+        try {
+            new LoadGenerator().run();
+        } catch (final IOException | NotBoundException | InterruptedException e) {
+            e.printStackTrace();
+            System.out.println("Critical exception occurred - forcing program termination.");
+        } finally {
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Connects the clients, creates the working set, runs the workload and prints the report.
+     *
+     * @throws IOException
+     *             If the server could not be reached.
+     * @throws NotBoundException
+     *             If the server is not bound in the RMI registry.
+     * @throws InterruptedException
+     *             If interrupted while waiting for the workload.
+     */
+    public void run() throws IOException, NotBoundException, InterruptedException {
+        System.out.println("Connecting " + CLIENTS + " clients to " + HOST + " over " + TRANSPORT + "...");
+        final String runId = Long.toString(System.currentTimeMillis() / 1000L);
+        final List<FileServerService> services = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            final LoadClient client = new LoadClient("loadgen-" + runId + "-" + i);
+            final FileServerService service = this.connect(client);
+            service.register(client);
+            client.setLeaseDuration(service.getCacheLeaseDuration());
+            this.clients.add(client);
+            services.add(service);
+        }
+
+        System.out.println("Creating " + FILES + " files of " + FILE_SIZES + " bytes...");
+        this.createWorkingSet(this.clients.get(0), services.get(0));
+
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            final LoadClient client = this.clients.get(i);
+            final FileServerService service = services.get(i);
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    LoadGenerator.this.runClient(client, service);
+                }
+            }, "loadgen-client-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        System.out.println("Warming up for " + WARMUP_SECONDS + " s...");
+        TimeUnit.SECONDS.sleep(WARMUP_SECONDS);
+        System.out.println("Measuring for " + DURATION_SECONDS + " s...");
+        this.isMeasuring = true;
+        final long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(DURATION_SECONDS);
+        this.isMeasuring = false;
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        this.isRunning = false;
+        for (final Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        this.printReport(elapsedSeconds);
+
+        for (int i = 0; i < CLIENTS; i++) {
+            try {
+                services.get(i).unregister(this.clients.get(i));
+            } catch (final RemoteException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Connects a client to the server with the configured transport.
+     *
+     * @param client
+     *            The client, which is exported to receive callbacks.
+     * @return The service of the server.
+     * @throws IOException
+     *             If the server could not be reached.
+     * @throws NotBoundException
+     *             If the server is not bound in the RMI registry.
+     */
+    private FileServerService connect(final Client client) throws IOException, NotBoundException {
+        if ("nio".equals(TRANSPORT)) {
+            return NioTransport.connect(HOST, NIO_PORT);
+        }
+        UnicastRemoteObject.exportObject(client, 0);
+        return (FileServerService) Naming.lookup("rmi://" + HOST + ":5099/fileService");
+    }
+
+    /**
+     * Creates the files of the working set in batches. Files which already exist, e.g. from an earlier run, are
+     * overwritten so that they have the configured sizes.
+     *
+     * @param client
+     *            The client creating the files.
+     * @param service
+     *            The service of the server.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    private void createWorkingSet(final Client client, final FileServerService service) throws RemoteException {
+        for (int first = 0; first < FILES; first += CREATE_BATCH_SIZE) {
+            final Map<String, byte[]> files = new LinkedHashMap<>();
+            for (int i = first; i < Math.min(first + CREATE_BATCH_SIZE, FILES); i++) {
+                files.put(this.fileNames[i], this.nextContents(ThreadLocalRandom.current()));
+            }
+            final BatchResult<Void> result = service.createFiles(client, files);
+            for (final String fileName : result.getFailures().keySet()) {
+                service.editFile(fileName, files.get(fileName));
+            }
+        }
+    }
+
+    /**
+     * Runs operations for one client until the workload ends.
+     *
+     * @param client
+     *            The client.
+     * @param service
+     *            The service of the server, as seen by this client.
+     */
+    private void runClient(final LoadClient client, final FileServerService service) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (this.isRunning) {
+            final Operation operation = this.nextOperation(random);
+            final String fileName = this.fileNames[this.keys.next(random)];
+            final boolean isMeasured = this.isMeasuring;
+            try {
+                switch (operation) {
+                    case READ:
+                        /**
+                         * Note: the read returns the current contents, so the client no longer waits for the
+                         * invalidations of earlier changes.
+                         */
+                        client.changeStarts.remove(fileName);
+                        this.timed(operation, isMeasured, new Call() {
+                            @Override
+                            public void run() throws RemoteException {
+                                service.openFile(client, fileName);
+                            }
+                        });
+                        break;
+                    case WRITE: {
+                        final byte[] contents = this.nextContents(random);
+                        this.recordChangeStart(fileName);
+                        this.timed(operation, isMeasured, new Call() {
+                            @Override
+                            public void run() throws RemoteException {
+                                service.editFile(fileName, contents);
+                            }
+                        });
+                        break;
+                    }
+                    case RENAME: {
+                        final String movedName = fileName + ".moved-" + client.getId();
+                        this.recordChangeStart(fileName);
+                        this.timed(operation, isMeasured, new Call() {
+                            @Override
+                            public void run() throws RemoteException {
+                                service.renameFile(fileName, movedName);
+                            }
+                        });
+                        /**
+                         * Note: moving the file back only restores the working set, so it is not measured.
+                         */
+                        service.renameFile(movedName, fileName);
+                        break;
+                    }
+                    case DELETE: {
+                        final byte[] contents = this.nextContents(random);
+                        this.recordChangeStart(fileName);
+                        this.timed(operation, isMeasured, new Call() {
+                            @Override
+                            public void run() throws RemoteException {
+                                service.removeFile(fileName);
+                            }
+                        });
+                        this.timed(Operation.CREATE, isMeasured, new Call() {
+                            @Override
+                            public void run() throws RemoteException {
+                                service.createFile(client, fileName, contents);
+                            }
+                        });
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            } catch (final RemoteException e) {
+                /**
+                 * Expected when clients race on the same file, e.g. a read of a file which is being renamed. Failures
+                 * of measured calls are counted by timed().
+                 */
+            }
+        }
+    }
+
+    /**
+     * Runs a call and records its latency, or counts its failure.
+     *
+     * @param operation
+     *            The operation the call belongs to.
+     * @param isMeasured
+     *            True if the call started while measuring.
+     * @param call
+     *            The call.
+     * @throws RemoteException
+     *             If the call failed.
+     */
+    private void timed(final Operation operation, final boolean isMeasured, final Call call) throws RemoteException {
+        final long start = System.nanoTime();
+        try {
+            call.run();
+        } catch (final RemoteException e) {
+            if (isMeasured) {
+                this.errors.get(operation).increment();
+            }
+            throw e;
+        }
+        if (isMeasured) {
+            this.latencies.get(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records that a change of a file starts, for every client which has not seen an earlier change of the file yet.
+     *
+     * @param fileName
+     *            The name of the changed file.
+     */
+    private void recordChangeStart(final String fileName) {
+        final Long changeStart = System.nanoTime();
+        for (final LoadClient client : this.clients) {
+            client.changeStarts.putIfAbsent(fileName, changeStart);
+        }
+    }
+
+    /**
+     * Records the lag of an invalidation which arrived at a client. The invalidation covers all changes of the file
+     * which the client has not seen yet, so the lag is measured from the earliest of them.
+     *
+     * @param client
+     *            The client.
+     * @param fileName
+     *            The name of the invalidated file.
+     */
+    private void recordInvalidation(final LoadClient client, final String fileName) {
+        final Long changeStart = client.changeStarts.remove(fileName);
+        if ((changeStart != null) && this.isMeasuring) {
+            this.invalidationLag.record(System.nanoTime() - changeStart);
+        }
+    }
+
+    /**
+     * Draws the next operation according to the mix.
+     *
+     * @param random
+     *            The source of randomness.
+     * @return The operation.
+     */
+    private Operation nextOperation(final ThreadLocalRandom random) {
+        final double draw = random.nextDouble(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        for (int i = 0; i < this.operations.length; i++) {
+            if (draw < this.cumulativeWeights[i]) {
+                return this.operations[i];
+            }
+        }
+        return this.operations[this.operations.length - 1];
+    }
+
+    /**
+     * Creates the contents of a file, with a size drawn log-uniformly from the configured range.
+     *
+     * @param random
+     *            The source of randomness.
+     * @return The contents.
+     */
+    private byte[] nextContents(final ThreadLocalRandom random) {
+        final int size = this.minFileSize >= this.maxFileSize ? this.minFileSize
+                : (int) Math.round(Math.exp(random.nextDouble(Math.log(Math.max(1, this.minFileSize)),
+                        Math.log(this.maxFileSize))));
+        final byte[] contents = new byte[size];
+        random.nextBytes(contents);
+        return contents;
+    }
+
+    /**
+     * Prints the throughput and latency percentiles of every operation, and the invalidation delivery lag.
+     *
+     * @param elapsedSeconds
+     *            The duration of the measurement.
+     */
+    private void printReport(final double elapsedSeconds) {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-14s %10s %8s %10s %9s %9s %9s %9s %9s", "operation", "calls",
+                "errors", "calls/s", "mean ms", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        long totalCalls = 0;
+        for (final Operation operation : Operation.values()) {
+            final LatencyHistogram histogram = this.latencies.get(operation);
+            totalCalls += histogram.getCount();
+            this.printRow(operation.name().toLowerCase(Locale.ROOT), histogram, this.errors.get(operation).sum(),
+                    elapsedSeconds);
+        }
+        this.printRow("invalidation", this.invalidationLag, 0, elapsedSeconds);
+        System.out.println(String.format(Locale.ROOT, "Total: %d calls in %.1f s, %.0f calls/s.", totalCalls,
+                elapsedSeconds, totalCalls / elapsedSeconds));
+    }
+
+    private void printRow(final String name, final LatencyHistogram histogram, final long errorCount,
+            final double elapsedSeconds) {
+        System.out.println(String.format(Locale.ROOT, "%-14s %10d %8d %10.0f %9.3f %9.3f %9.3f %9.3f %9.3f", name,
+                histogram.getCount(), errorCount, histogram.getCount() / elapsedSeconds,
+                histogram.getMeanNanos() / 1e6, histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxNanos() / 1e6));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package edu.sjsu.cs249.project1.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws keys 0..n-1 with Zipfian popularity: key k is drawn with a probability proportional to 1 / (k + 1)^exponent. An
+ * exponent of 0 draws all keys equally often; around 1, a few keys receive most of the draws, like the hot files of a
+ * real working set. <br/>
+ * Note: the cumulative distribution is computed once, so each draw is a binary search. Thread safe.
+ */
+public class ZipfianGenerator {
+    private final double[] cumulativeProbabilities;
+
+    /**
+     * Instantiates a new ZipfianGenerator.
+     *
+     * @param keyCount
+     *            The number of keys, at least 1.
+     * @param exponent
+     *            The skew of the popularity, 0 for uniform.
+     */
+    public ZipfianGenerator(final int keyCount, final double exponent) {
+        this.cumulativeProbabilities = new double[keyCount];
+        double sum = 0;
+        for (int k = 0; k < keyCount; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            this.cumulativeProbabilities[k] = sum;
+        }
+        for (int k = 0; k < keyCount; k++) {
+            this.cumulativeProbabilities[k] /= sum;
+        }
+    }
+
+    /**
+     * Draws a key.
+     *
+     * @param random
+     *            The source of randomness, e.g. ThreadLocalRandom.current().
+     * @return The key, between 0 and keyCount - 1.
+     */
+    public int next(final Random random) {
+        final int index = Arrays.binarySearch(this.cumulativeProbabilities, random.nextDouble());
+        final int key = index >= 0 ? index : -index - 1;
+        return Math.min(key, this.cumulativeProbabilities.length - 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The per-file results of a batch operation, e.g. FileServerService.openFiles(). <br/>
+ * A batch does not fail as a whole when single files fail: every file either succeeded, with a value, or failed, with
+ * the message of the exception it caused. Files are kept in the order in which they were processed.
+ *
+ * @param <T>
+ *            The type of the value of a succeeded file, Void if there is none.
+ */
+public class BatchResult<T> implements Serializable {
+    private static final long serialVersionUID = -2748853460617395802L;
+
+    /**
+     * Structure: file name -> value, for the files which succeeded.
+     */
+    private final LinkedHashMap<String, T> values = new LinkedHashMap<>();
+
+    /**
+     * Structure: file name -> error message, for the files which failed.
+     */
+    private final LinkedHashMap<String, String> failures = new LinkedHashMap<>();
+
+    /**
+     * Records a file which succeeded.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param value
+     *            The value, or null if there is none.
+     */
+    public void addValue(final String fileName, final T value) {
+        this.values.put(fileName, value);
+    }
+
+    /**
+     * Records a file which failed.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param message
+     *            The message of the exception.
+     */
+    public void addFailure(final String fileName, final String message) {
+        this.failures.put(fileName, message);
+    }
+
+    /**
+     * Returns the files which succeeded.
+     *
+     * @return Structure: file name -> value.
+     */
+    public Map<String, T> getValues() {
+        return this.values;
+    }
+
+    /**
+     * Returns the files which failed.
+     *
+     * @return Structure: file name -> error message.
+     */
+    public Map<String, String> getFailures() {
+        return this.failures;
+    }
+
+    public boolean isSucceeded(final String fileName) {
+        return this.values.containsKey(fileName);
+    }
+
+    public T getValue(final String fileName) {
+        return this.values.get(fileName);
+    }
+
+    public String getFailure(final String fileName) {
+        return this.failures.get(fileName);
+    }
+}
\ No newline at end of file
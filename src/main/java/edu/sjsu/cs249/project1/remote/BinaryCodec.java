@@ -0,0 +1,374 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes the values passed through a MessageConnection in a compact binary form. <br/>
+ * Each value starts with a tag byte naming its type. The types used by FileServerService and ClientCallback are written
+ * field by field. Exceptions fall back to Java serialization, which is only accepted when reading the error of a call
+ * (see readError()), and then only for classes of exceptions. Remote objects are not copied but passed by reference,
+ * see MessageConnection. <br/>
+ * Note: every length read from the input is checked against the bytes left in the frame before anything is allocated,
+ * so a malformed frame can not make the reader allocate more than the frame itself.
+ */
+final class BinaryCodec {
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte STRING = 4;
+    private static final byte BYTES = 5;
+    private static final byte LIST = 6;
+    private static final byte SET = 7;
+    private static final byte MAP = 8;
+    private static final byte FILE_EDIT = 9;
+    private static final byte OPEN_RESULT = 10;
+    private static final byte FILE_HANDLE = 11;
+    private static final byte LIST_PAGE = 12;
+    private static final byte REMOTE = 13;
+    private static final byte SERIALIZED = 14;
+    private static final byte BATCH_RESULT = 15;
+
+    /**
+     * Static helper class, hide constructor by making it private.
+     */
+    private BinaryCodec() {
+
+    }
+
+    /**
+     * Writes the header of a byte array whose contents are written separately, e.g. straight from a file.
+     *
+     * @param out
+     *            The output to write to.
+     * @param length
+     *            The number of bytes which will follow.
+     * @throws IOException
+     *             If the output could not be written.
+     */
+    static void writeBytesHeader(final DataOutput out, final int length) throws IOException {
+        out.writeByte(BYTES);
+        out.writeInt(length);
+    }
+
+    /**
+     * Writes a value.
+     *
+     * @param out
+     *            The output to write to.
+     * @param value
+     *            The value, may be null.
+     * @param connection
+     *            The connection the value is sent over, which exports remote objects.
+     * @throws IOException
+     *             If the output could not be written, or the value can not be encoded.
+     */
+    static void write(final DataOutput out, final Object value, final MessageConnection connection)
+            throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof byte[]) {
+            final byte[] data = (byte[]) value;
+            writeBytesHeader(out, data.length);
+            out.write(data);
+        } else if ((value instanceof List) || (value instanceof Set)) {
+            final Collection<?> collection = (Collection<?>) value;
+            out.writeByte(value instanceof List ? LIST : SET);
+            out.writeInt(collection.size());
+            for (final Object element : collection) {
+                write(out, element, connection);
+            }
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), connection);
+                write(out, entry.getValue(), connection);
+            }
+        } else if (value instanceof FileEdit) {
+            final FileEdit edit = (FileEdit) value;
+            out.writeByte(FILE_EDIT);
+            out.writeLong(edit.getOffset());
+            out.writeInt(edit.getLength());
+            write(out, edit.getData(), connection);
+        } else if (value instanceof OpenResult) {
+            final OpenResult result = (OpenResult) value;
+            out.writeByte(OPEN_RESULT);
+            out.writeBoolean(result.isModified());
+            write(out, result.getData(), connection);
+            write(out, result.getVersion(), connection);
+        } else if (value instanceof FileHandle) {
+            final FileHandle handle = (FileHandle) value;
+            out.writeByte(FILE_HANDLE);
+            out.writeLong(handle.getId());
+            out.writeLong(handle.getSize());
+        } else if (value instanceof ListPage) {
+            final ListPage page = (ListPage) value;
+            out.writeByte(LIST_PAGE);
+            write(out, page.getFileNames(), connection);
+            write(out, page.getNextCursor(), connection);
+        } else if (value instanceof BatchResult) {
+            final BatchResult<?> result = (BatchResult<?>) value;
+            out.writeByte(BATCH_RESULT);
+            out.writeInt(result.getValues().size());
+            for (final Map.Entry<String, ?> entry : result.getValues().entrySet()) {
+                writeString(out, entry.getKey());
+                write(out, entry.getValue(), connection);
+            }
+            out.writeInt(result.getFailures().size());
+            for (final Map.Entry<String, String> entry : result.getFailures().entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        } else if (value instanceof Remote) {
+            out.writeByte(REMOTE);
+            connection.exportLocal((Remote) value);
+        } else {
+            out.writeByte(SERIALIZED);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            }
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Reads a value written by write(), which may not be a serialized object.
+     *
+     * @param in
+     *            The frame to read from.
+     * @param connection
+     *            The connection the value was received from, which resolves remote objects.
+     * @return The value, may be null.
+     * @throws IOException
+     *             If the input could not be read, or holds an unknown, malformed or serialized value.
+     */
+    static Object read(final DataInputStream in, final MessageConnection connection) throws IOException {
+        return read(in, connection, false);
+    }
+
+    /**
+     * Reads the exception thrown by a call, as written by write(). Only exceptions may be read through Java
+     * serialization, see ThrowableInputStream.
+     *
+     * @param in
+     *            The frame to read from.
+     * @param connection
+     *            The connection the value was received from.
+     * @return The exception.
+     * @throws IOException
+     *             If the input could not be read, or does not hold an exception.
+     */
+    static Throwable readError(final DataInputStream in, final MessageConnection connection) throws IOException {
+        final Object value = read(in, connection, true);
+        if (!(value instanceof Throwable)) {
+            throw new IOException("The error of a call must be an exception.");
+        }
+        return (Throwable) value;
+    }
+
+    /**
+     * Reads a value written by write().
+     *
+     * @param in
+     *            The frame to read from.
+     * @param connection
+     *            The connection the value was received from, which resolves remote objects.
+     * @param isSerializedAllowed
+     *            True if the value may be a serialized exception. Values nested in it never may.
+     * @return The value, may be null.
+     * @throws IOException
+     *             If the input could not be read, or holds an unknown or malformed value.
+     */
+    private static Object read(final DataInputStream in, final MessageConnection connection,
+            final boolean isSerializedAllowed) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return in.readBoolean();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case STRING:
+                return readString(in);
+            case BYTES: {
+                final byte[] data = new byte[readLength(in)];
+                in.readFully(data);
+                return data;
+            }
+            case LIST:
+            case SET: {
+                final int size = readLength(in);
+                final Collection<Object> collection = tag == LIST ? new ArrayList<>(size) : new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    collection.add(read(in, connection));
+                }
+                return collection;
+            }
+            case MAP: {
+                final int size = readLength(in);
+                final Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in, connection), read(in, connection));
+                }
+                return map;
+            }
+            case FILE_EDIT: {
+                final long offset = in.readLong();
+                final int length = in.readInt();
+                return new FileEdit(offset, length, (byte[]) read(in, connection));
+            }
+            case OPEN_RESULT: {
+                final boolean isModified = in.readBoolean();
+                final byte[] data = (byte[]) read(in, connection);
+                final String version = (String) read(in, connection);
+                return isModified ? OpenResult.modified(data, version) : OpenResult.notModified(version);
+            }
+            case FILE_HANDLE:
+                return new FileHandle(in.readLong(), in.readLong());
+            case LIST_PAGE: {
+                @SuppressWarnings("unchecked")
+                final List<String> fileNames = (List<String>) read(in, connection);
+                return new ListPage(fileNames, (String) read(in, connection));
+            }
+            case BATCH_RESULT: {
+                final BatchResult<Object> result = new BatchResult<>();
+                final int valueCount = readLength(in);
+                for (int i = 0; i < valueCount; i++) {
+                    result.addValue(readString(in), read(in, connection));
+                }
+                final int failureCount = readLength(in);
+                for (int i = 0; i < failureCount; i++) {
+                    result.addFailure(readString(in), readString(in));
+                }
+                return result;
+            }
+            case REMOTE:
+                return connection.getRemoteProxy();
+            case SERIALIZED: {
+                if (!isSerializedAllowed) {
+                    throw new IOException("Serialized values are only accepted as the error of a call.");
+                }
+                final byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream objectIn = new ThrowableInputStream(new ByteArrayInputStream(bytes))) {
+                    return objectIn.readObject();
+                } catch (final ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    /**
+     * Writes a string as a length followed by its UTF-8 bytes. Note: unlike DataOutput.writeUTF(), the length of the
+     * string is not limited.
+     *
+     * @param out
+     *            The output to write to.
+     * @param value
+     *            The string.
+     * @throws IOException
+     *             If the output could not be written.
+     */
+    private static void writeString(final DataOutput out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString().
+     *
+     * @param in
+     *            The input to read from.
+     * @return The string.
+     * @throws IOException
+     *             If the input could not be read.
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length or a number of elements, and checks that the rest of the frame can hold it. Note: every element
+     * takes at least one byte, so this bounds collections as well as byte arrays.
+     *
+     * @param in
+     *            The frame to read from.
+     * @return The length.
+     * @throws IOException
+     *             If the length is negative or larger than the rest of the frame.
+     */
+    private static int readLength(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if ((length < 0) || (length > in.available())) {
+            throw new IOException("Invalid length " + length + ", " + in.available() + " bytes left in the frame.");
+        }
+        return length;
+    }
+
+    /**
+     * Deserializes exceptions only: any class in the stream which is neither an exception nor part of the serialized
+     * form of Throwable is rejected before it is instantiated.
+     */
+    private static class ThrowableInputStream extends ObjectInputStream {
+        private ThrowableInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass descriptor) throws IOException,
+                ClassNotFoundException {
+            final Class<?> type = super.resolveClass(descriptor);
+            if (Throwable.class.isAssignableFrom(type) || (type == StackTraceElement.class)
+                    || (type == StackTraceElement[].class)
+                    || (List.class.isAssignableFrom(type) && type.getName().startsWith("java.util."))) {
+                /**
+                 * Note: the lists of the JDK hold the suppressed exceptions, whose elements are checked in turn.
+                 */
+                return type;
+            }
+            throw new IOException("Class " + descriptor.getName() + " may not be deserialized.");
+        }
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package edu.sjsu.cs249.project1.remote;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
 
 /**
  * RMI Client Callback Interface. <br/>
@@ -16,6 +17,20 @@ public interface ClientCallback extends Remote {
      */
     void invalidateCache(String file) throws RemoteException;
 
+    /**
+     * Invalidate local client cache for all the filenames provided, using a single remote call. <br/>
+     * Note: the default implementation invalidates the files one at a time. Clients built before this method existed do
+     * not expose it remotely, in which case the server falls back to invalidateCache(String).
+     *
+     * @param fileNames
+     *            The names of the files to invalidate.
+     */
+    default void invalidateCaches(final Collection<String> fileNames) throws RemoteException {
+        for (final String fileName : fileNames) {
+            this.invalidateCache(fileName);
+        }
+    }
+
     /**
      * Returns the ID of this client.
      *
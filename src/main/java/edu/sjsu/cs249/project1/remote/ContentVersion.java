@@ -0,0 +1,119 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Computes the version of a file's contents. <br/>
+ * The version is a SHA-256 hash of the contents, so clients and server compute the same version independently, and a
+ * version stays meaningful across server and client restarts. <br/>
+ * Note: a patched file gets a version derived from its previous version and the edits instead (see after()), so that a
+ * small patch does not require hashing a large file. Such a version is only known to the server, so clients must use
+ * the versions sent by the server, and only compute versions for contents they created themselves.
+ */
+public final class ContentVersion {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Utility class, hide constructor by making it private.
+     */
+    private ContentVersion() {
+
+    }
+
+    /**
+     * Returns the version of the given contents.
+     *
+     * @param data
+     *            The contents of a file.
+     * @return The version as a hexadecimal string.
+     */
+    public static String of(final byte[] data) {
+        return toHex(newDigest().digest(data));
+    }
+
+    /**
+     * Returns the version of the contents of the given file. The file is streamed, not read into memory as a whole.
+     *
+     * @param path
+     *            The file.
+     * @return The version as a hexadecimal string.
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    public static String of(final Path path) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the version of the contents left by applying the given edits to the contents with the given version.
+     * <br/>
+     * Note: the result is a hash of the previous version and the edits, not of the new contents, so it differs from
+     * the version of() would compute for them.
+     *
+     * @param baseVersion
+     *            The version of the contents the edits are applied to.
+     * @param edits
+     *            The edits, in the order they are applied.
+     * @return The version as a hexadecimal string.
+     */
+    public static String after(final String baseVersion, final List<FileEdit> edits) {
+        final MessageDigest digest = newDigest();
+        digest.update(baseVersion.getBytes(StandardCharsets.UTF_8));
+        final ByteBuffer header = ByteBuffer.allocate(16);
+        for (final FileEdit edit : edits) {
+            header.clear();
+            header.putLong(edit.getOffset()).putInt(edit.getLength()).putInt(edit.getData().length).flip();
+            digest.update(header);
+            digest.update(edit.getData());
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     *
+     * @return The digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            /**
+             * Note: every Java platform is required to support SHA-256.
+             */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes a hash as a hexadecimal string.
+     *
+     * @param hash
+     *            The hash.
+     * @return The hexadecimal string.
+     */
+    private static String toHex(final byte[] hash) {
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[(i * 2) + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
\ No newline at end of file
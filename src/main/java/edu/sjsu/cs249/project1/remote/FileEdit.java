@@ -0,0 +1,89 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A single edit of a file, used to patch a file on the server without sending its whole contents. <br/>
+ * An edit replaces length bytes starting at offset with the given data. Overwrites, insertions, deletions and appends
+ * are all expressed this way.
+ */
+public class FileEdit implements Serializable {
+    private static final long serialVersionUID = -2875260471953867218L;
+
+    /**
+     * Offset which refers to the end of the file at the moment the edit is applied.
+     */
+    public static final long END_OF_FILE = -1;
+
+    private final long offset;
+    private final int length;
+    private final byte[] data;
+
+    /**
+     * Instantiates a new FileEdit.
+     *
+     * @param offset
+     *            The position of the first byte to replace, or END_OF_FILE.
+     * @param length
+     *            The number of bytes to replace. Must be 0 when offset is END_OF_FILE.
+     * @param data
+     *            The bytes to put in their place.
+     */
+    public FileEdit(final long offset, final int length, final byte[] data) {
+        this.offset = offset;
+        this.length = length;
+        this.data = data;
+    }
+
+    /**
+     * Returns an edit which appends the given data to the end of the file.
+     *
+     * @param data
+     *            The bytes to append.
+     * @return The edit.
+     */
+    public static FileEdit append(final byte[] data) {
+        return new FileEdit(END_OF_FILE, 0, data);
+    }
+
+    /**
+     * Returns the smallest single edit which turns oldData into newData, or null if both are equal. <br/>
+     * Note: the edit covers everything between the common prefix and the common suffix of both arrays.
+     *
+     * @param oldData
+     *            The current contents.
+     * @param newData
+     *            The desired contents.
+     * @return The edit, or null if there is nothing to change.
+     */
+    public static FileEdit between(final byte[] oldData, final byte[] newData) {
+        final int maxCommon = Math.min(oldData.length, newData.length);
+        int prefix = 0;
+        while ((prefix < maxCommon) && (oldData[prefix] == newData[prefix])) {
+            prefix++;
+        }
+        if ((prefix == oldData.length) && (prefix == newData.length)) {
+            return null;
+        }
+        int suffix = 0;
+        while ((suffix < (maxCommon - prefix))
+                && (oldData[oldData.length - 1 - suffix] == newData[newData.length - 1 - suffix])) {
+            suffix++;
+        }
+        return new FileEdit(prefix, oldData.length - prefix - suffix,
+                Arrays.copyOfRange(newData, prefix, newData.length - suffix));
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public byte[] getData() {
+        return this.data;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.Serializable;
+
+/**
+ * A handle to a file opened for a chunked read. <br/>
+ * The handle refers to a consistent snapshot of the file taken when it was opened. Chunks are pulled by offset with
+ * FileServerService.readChunk() until the whole size has been read.
+ */
+public class FileHandle implements Serializable {
+    private static final long serialVersionUID = 3184862127960153021L;
+
+    private final long id;
+    private final long size;
+
+    public FileHandle(final long id, final long size) {
+        this.id = id;
+        this.size = size;
+    }
+
+    /**
+     * Returns the ID of this handle, used to identify it in subsequent calls to the server.
+     *
+     * @return The ID of this handle.
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the size of the file snapshot this handle refers to.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+        return this.size;
+    }
+}
\ No newline at end of file
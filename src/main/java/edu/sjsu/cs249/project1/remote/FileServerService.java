@@ -2,6 +2,8 @@ package edu.sjsu.cs249.project1.remote;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,6 +34,17 @@ public interface FileServerService extends Remote {
      */
     void unregister(ClientCallback client) throws RemoteException;
 
+    /**
+     * Returns the duration of the cache lease which the server grants whenever a client opens or creates a file. <br/>
+     * A client may serve its cached copy of a file for this long, measured from the moment it sent the request, without
+     * waiting for an invalidation. After that the file must be opened again.
+     *
+     * @return The lease duration in milliseconds.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    long getCacheLeaseDuration() throws RemoteException;
+
     /**
      * Returns a set composed of the names of all files currently being hosted on the file system.
      *
@@ -41,12 +54,29 @@ public interface FileServerService extends Remote {
      */
     Set<String> listFiles() throws RemoteException;
 
+    /**
+     * Returns one page of the names of the files currently being hosted on the file system, in sorted order. <br/>
+     * Note: names created or deleted while a listing is paged through may or may not be listed, but no name which
+     * exists for the whole listing is skipped or listed twice.
+     *
+     * @param prefix
+     *            Only names starting with this prefix are listed. Null or empty to list all names.
+     * @param cursor
+     *            The cursor returned with the previous page, or null to start at the first name.
+     * @param limit
+     *            The maximum number of names to return. The server may return fewer.
+     * @return The page of names.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    ListPage listFiles(String prefix, String cursor, int limit) throws RemoteException;
+
     /**
      * Create a new file on the server. <br/>
      * Process of file creation: <br/>
      * 1. If the name already exists, prompt for a different name. <br/>
      * 2. If the name does not already exist, create the File and Client from server's view and register with Singleton
-     * FileSystem and ClientCacheManager.
+     * FileSystem and ClientCacheManager. The client is granted a cache lease on the new file.
      *
      * @param client
      *            The client creating the file.
@@ -59,12 +89,27 @@ public interface FileServerService extends Remote {
      */
     void createFile(ClientCallback client, String fileName, byte[] data) throws RemoteException;
 
+    /**
+     * Create several new files on the server in one call, see createFile(). <br/>
+     * The client is granted a cache lease on all files at once. A file which can not be created, e.g. because its name
+     * already exists, fails on its own without affecting the others.
+     *
+     * @param client
+     *            The client creating the files.
+     * @param files
+     *            The files to create. Structure: file name -> contents.
+     * @return The result of each file. Succeeded files carry no value.
+     * @throws RemoteException
+     *             If any RMI error occurs, or if the client is not registered.
+     */
+    BatchResult<Void> createFiles(ClientCallback client, Map<String, byte[]> files) throws RemoteException;
+
     /**
      * Read a file from the server. <br/>
      * Process of file read: <br/>
      * 1. If the file does not exist, print an error message. <br/>
-     * 2. If the file does exist, search Singleton FileSystem and return file data as a byte array. 3. Register the
-     * client in ClientCacheManager.
+     * 2. If the file does exist, search Singleton FileSystem and return file data as a byte array. 3. Grant the client
+     * a cache lease in ClientCacheManager.
      *
      * @param client
      *            The client opening the file.
@@ -76,6 +121,73 @@ public interface FileServerService extends Remote {
      */
     byte[] openFile(ClientCallback client, String fileName) throws RemoteException;
 
+    /**
+     * Open a file on the server, unless the client already holds its current version. <br/>
+     * Like openFile(), this grants the client a cache lease on the file. A client holding a copy which was invalidated
+     * or whose lease expired can use this to revalidate the copy, and only download the file if it actually changed.
+     *
+     * @param client
+     *            The client opening the file.
+     * @param fileName
+     *            The name of the file to read.
+     * @param knownVersion
+     *            The version (see ContentVersion) of the copy held by the client, or null if it holds none.
+     * @return Either "not modified", or the current contents of the file. Both carry the current version.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    OpenResult openFileIfChanged(ClientCallback client, String fileName, String knownVersion) throws RemoteException;
+
+    /**
+     * Open several files on the server in one call, e.g. to load a working set of small files. <br/>
+     * The client is granted a cache lease on all files at once, before any of them is read, exactly like openFile(). A
+     * file which can not be read, e.g. because it does not exist, fails on its own without affecting the others.
+     *
+     * @param client
+     *            The client opening the files.
+     * @param fileNames
+     *            The names of the files to read.
+     * @return The result of each file. Succeeded files carry their contents and version.
+     * @throws RemoteException
+     *             If any RMI error occurs, or if the client is not registered.
+     */
+    BatchResult<OpenResult> openFiles(ClientCallback client, List<String> fileNames) throws RemoteException;
+
+    /**
+     * Revalidate files which a client still holds from an earlier session, e.g. in a persistent cache. <br/>
+     * The client sends the version (see ContentVersion) of each file it holds. The server grants a cache lease on every
+     * file and returns the names of the files whose version is still current, so that the client can serve them without
+     * downloading them again.
+     *
+     * @param client
+     *            The client revalidating its files.
+     * @param knownVersions
+     *            The files to revalidate. Structure: file name -> version held by the client.
+     * @return The names of the files which are still current. Files which changed or no longer exist are left out.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    Set<String> revalidateFiles(ClientCallback client, Map<String, String> knownVersions) throws RemoteException;
+
+    /**
+     * Read a range of a file from the server. <br/>
+     * Like openFile(), this grants the client a cache lease on the file, so that the range can be cached and will be
+     * invalidated when the file changes.
+     *
+     * @param client
+     *            The client reading the file.
+     * @param fileName
+     *            The name of the file to read.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The bytes read. Fewer bytes than requested are returned if the range extends past the end of the file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    byte[] readFileRange(ClientCallback client, String fileName, long offset, int length) throws RemoteException;
+
     /**
      * Delete a file from the server. <br/>
      * Note: FileSystem will invalidate relevant client caches.
@@ -87,6 +199,18 @@ public interface FileServerService extends Remote {
      */
     void removeFile(String fileName) throws RemoteException;
 
+    /**
+     * Delete several files from the server in one call, see removeFile(). <br/>
+     * A file which can not be deleted, e.g. because it does not exist, fails on its own without affecting the others.
+     *
+     * @param fileNames
+     *            The names of the files to delete.
+     * @return The result of each file. Succeeded files carry no value.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    BatchResult<Void> removeFiles(List<String> fileNames) throws RemoteException;
+
     /**
      * Edit the contents of a file on the server. <br/>
      * Note: FileSystem will invalidate relevant client caches.
@@ -100,6 +224,40 @@ public interface FileServerService extends Remote {
      */
     void editFile(String fileName, byte[] newData) throws RemoteException;
 
+    /**
+     * Patch the contents of a file on the server. <br/>
+     * Only the edits travel over the wire, and only the edits are logged. All edits are applied atomically, in order,
+     * to whatever the contents are at that time. Use this for edits which do not depend on the contents, such as
+     * appends, and the overload taking a base version for edits computed against a cached copy. <br/>
+     * Note: FileSystem will invalidate relevant client caches.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param edits
+     *            The edits to apply. Offsets refer to the contents as left by the preceding edits.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    void patchFile(String fileName, List<FileEdit> edits) throws RemoteException;
+
+    /**
+     * Patch the contents of a file on the server, provided it still has the given version. <br/>
+     * If another client changed the file since the edits were computed, their offsets no longer fit the contents, so
+     * the file is left unchanged. The caller should then send the complete contents with editFile() instead. <br/>
+     * Note: FileSystem will invalidate relevant client caches.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param baseVersion
+     *            The version (see ContentVersion) of the contents the edits were computed against.
+     * @param edits
+     *            The edits to apply. Offsets refer to the contents as left by the preceding edits.
+     * @return True if the edits were applied, or false if the file no longer has the base version.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    boolean patchFile(String fileName, String baseVersion, List<FileEdit> edits) throws RemoteException;
+
     /**
      * Rename a file on the server. <br/>
      * Note: FileSystem will invalidate relevant client caches.
@@ -112,4 +270,91 @@ public interface FileServerService extends Remote {
      *             If any RMI error occurs.
      */
     void renameFile(String fileName, String newFileName) throws RemoteException;
+
+    /**
+     * Open a file for a chunked read. <br/>
+     * The returned handle refers to a snapshot of the file as of this call. Use readChunk() to pull the contents piece
+     * by piece and closeReadHandle() once done, so that neither side has to hold the whole file in a single message.
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @return A handle to the file snapshot, including its size.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    FileHandle openReadHandle(String fileName) throws RemoteException;
+
+    /**
+     * Read a chunk of a file opened with openReadHandle().
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read. The server may return fewer bytes, but never zero bytes before the end
+     *            of the file.
+     * @return The bytes read, or an empty array once offset reaches the end of the file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    byte[] readChunk(long handleId, long offset, int length) throws RemoteException;
+
+    /**
+     * Close a read handle and release the server resources held by it.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    void closeReadHandle(long handleId) throws RemoteException;
+
+    /**
+     * Start a chunked upload. <br/>
+     * Send the contents with uploadChunk() and finish with commitUpload(), which atomically creates the file or replaces
+     * the contents of an existing one. Until then, other clients keep seeing the previous contents. <br/>
+     * Note: FileSystem will invalidate relevant client caches when an existing file is replaced.
+     *
+     * @param fileName
+     *            The name of the file to create or replace.
+     * @return The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    long beginUpload(String fileName) throws RemoteException;
+
+    /**
+     * Upload a chunk of a file at the given offset.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @param offset
+     *            The position in the file at which the chunk starts.
+     * @param data
+     *            The contents of the chunk.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    void uploadChunk(long uploadId, long offset, byte[] data) throws RemoteException;
+
+    /**
+     * Commit an upload, atomically creating or replacing the file.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    void commitUpload(long uploadId) throws RemoteException;
+
+    /**
+     * Abort an upload and discard the chunks sent so far.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    void abortUpload(long uploadId) throws RemoteException;
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a file listing (see FileServerService.listFiles(String, String, int)). <br/>
+ * The names are sorted. If more names follow, the page carries a cursor which is passed to the next call to continue
+ * the listing right after the last name of this page.
+ */
+public class ListPage implements Serializable {
+    private static final long serialVersionUID = 4101652237815392461L;
+
+    private final List<String> fileNames;
+    private final String nextCursor;
+
+    /**
+     * Instantiates a new ListPage.
+     *
+     * @param fileNames
+     *            The names on this page, in sorted order.
+     * @param nextCursor
+     *            The cursor of the next page, or null if this is the last page.
+     */
+    public ListPage(final List<String> fileNames, final String nextCursor) {
+        this.fileNames = fileNames;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<String> getFileNames() {
+        return this.fileNames;
+    }
+
+    /**
+     * Returns the cursor to pass to the next call to continue the listing.
+     *
+     * @return The cursor, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+}
\ No newline at end of file
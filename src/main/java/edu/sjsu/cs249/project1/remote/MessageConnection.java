@@ -0,0 +1,623 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A connection which carries remote calls in both directions over a single socket, as an alternative to RMI. <br/>
+ * Each side exports one local object, e.g. the FileServer on the server and the ClientCallback on the client, and calls
+ * the object exported by the other side through a proxy of its interface (see getRemoteProxy()). <br/>
+ * Calls are sent as length-prefixed frames, encoded by BinaryCodec, and tagged with a request ID. Any number of calls
+ * may be in flight at once, from any number of threads: replies are matched to their calls by ID, in whatever order
+ * they arrive. Incoming calls are read by a single reader thread and handed to an executor, so a slow call never holds
+ * up the others. <br/>
+ * Frame layout: [int length of the rest][byte kind][long request ID][body]. The body of a call is the method index
+ * followed by the arguments, the body of a reply is the return value or the thrown exception. <br/>
+ * Frames larger than the maximum frame size (see setMaxFrameSize()) are rejected by closing the connection, before
+ * they are read into memory.
+ */
+public class MessageConnection {
+    private static final byte CALL = 0;
+    private static final byte REPLY = 1;
+    private static final byte ERROR = 2;
+
+    /**
+     * Size of the frame header in front of the body: the length, the kind and the request ID.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8;
+
+    /**
+     * Default of the largest frame accepted from the other side: 64 MiB.
+     */
+    public static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final List<Method> localMethods;
+    private final List<Method> remoteMethods;
+    private final Class<?> remoteInterface;
+    private final Executor executor;
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /**
+     * Structure: request ID -> reply of a call which is in flight.
+     */
+    private final Map<Long, CompletableFuture<Object>> pendingCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Note: frames are written while holding this lock, so that frames of concurrent calls never interleave.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * The object which serves the calls of the other side. It may be exported later, when it is first passed as an
+     * argument (see exportLocal()).
+     */
+    private volatile Object localTarget;
+    private volatile Object remoteProxy;
+    private volatile boolean isClosed;
+
+    /**
+     * Time call() waits for a reply, or 0 to wait as long as the connection is open.
+     */
+    private volatile long callTimeoutMillis;
+
+    private volatile int maxFrameBytes = DEFAULT_MAX_FRAME_BYTES;
+
+    /**
+     * Writes the body of a byte array reply straight to the socket, see sendBytesReply().
+     */
+    public interface BodyWriter {
+        /**
+         * Writes exactly the announced number of bytes.
+         *
+         * @param target
+         *            The socket to write to.
+         * @throws IOException
+         *             If the bytes could not be written.
+         */
+        void writeTo(WritableByteChannel target) throws IOException;
+    }
+
+    /**
+     * Instantiates a new MessageConnection. Nothing is read until start() is called.
+     *
+     * @param channel
+     *            The connected socket, in blocking mode.
+     * @param localInterface
+     *            The interface of the object exported by this side.
+     * @param localTarget
+     *            The object exported by this side, or null if it is exported later.
+     * @param remoteInterface
+     *            The interface of the object exported by the other side.
+     * @param executor
+     *            The executor which runs incoming calls.
+     */
+    public MessageConnection(final SocketChannel channel, final Class<?> localInterface, final Object localTarget,
+            final Class<?> remoteInterface, final Executor executor) {
+        this.channel = channel;
+        this.localMethods = getMethodTable(localInterface);
+        this.remoteMethods = getMethodTable(remoteInterface);
+        this.localTarget = localTarget;
+        this.remoteInterface = remoteInterface;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the methods of an interface in a fixed order, which both sides agree on without exchanging them. The
+     * position of a method in this list identifies it on the wire.
+     *
+     * @param type
+     *            The interface.
+     * @return The methods of the interface.
+     */
+    private static List<Method> getMethodTable(final Class<?> type) {
+        final List<Method> methods = new ArrayList<>();
+        for (final Method method : type.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        Collections.sort(methods, new Comparator<Method>() {
+            @Override
+            public int compare(final Method first, final Method second) {
+                return (first.getName() + Arrays.toString(first.getParameterTypes()))
+                        .compareTo(second.getName() + Arrays.toString(second.getParameterTypes()));
+            }
+        });
+        return methods;
+    }
+
+    /**
+     * Starts the thread which reads incoming frames.
+     */
+    public void start() {
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                MessageConnection.this.readFrames();
+            }
+        }, "connection-reader-" + this.channel.socket().getRemoteSocketAddress());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Returns a proxy of the object exported by the other side. Calls on the proxy block until their reply arrives.
+     * <br/>
+     * Note: like with RMI, a RemoteException thrown by the other side is rethrown wrapped in a ServerException.
+     *
+     * @return The proxy, which implements the remote interface.
+     */
+    public synchronized Object getRemoteProxy() {
+        Object proxy = this.remoteProxy;
+        if (proxy == null) {
+            proxy = Proxy.newProxyInstance(this.remoteInterface.getClassLoader(), new Class<?>[] {
+                    this.remoteInterface }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object self, final Method method, final Object[] args)
+                                throws Throwable {
+                            if (method.getDeclaringClass() == Object.class) {
+                                return MessageConnection.this.invokeObjectMethod(self, method, args);
+                            }
+                            return MessageConnection.this.call(method, args);
+                        }
+                    });
+            this.remoteProxy = proxy;
+        }
+        return proxy;
+    }
+
+    /**
+     * Handles the methods of Object on the proxy locally.
+     *
+     * @param self
+     *            The proxy.
+     * @param method
+     *            The method of Object.
+     * @param args
+     *            The arguments.
+     * @return The result.
+     */
+    private Object invokeObjectMethod(final Object self, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return self == args[0];
+            case "hashCode":
+                return System.identityHashCode(self);
+            default:
+                return this.remoteInterface.getSimpleName() + " at " + this.channel.socket().getRemoteSocketAddress();
+        }
+    }
+
+    /**
+     * Calls a method of the object exported by the other side and waits for the reply.
+     *
+     * @param method
+     *            The method of the remote interface.
+     * @param args
+     *            The arguments, or null if there are none.
+     * @return The return value.
+     * @throws Throwable
+     *             The exception thrown by the call, or a RemoteException if the connection failed.
+     */
+    public Object call(final Method method, final Object[] args) throws Throwable {
+        final CompletableFuture<Object> reply = this.callAsync(method, args);
+        final long timeoutMillis = this.callTimeoutMillis;
+        try {
+            return timeoutMillis > 0 ? reply.get(timeoutMillis, TimeUnit.MILLISECONDS) : reply.get();
+        } catch (final ExecutionException e) {
+            throw e.getCause();
+        } catch (final TimeoutException e) {
+            /**
+             * Note: a late reply is discarded by the reader, since the call is no longer pending.
+             */
+            this.pendingCalls.values().remove(reply);
+            throw new RemoteException("No reply within " + timeoutMillis + " ms.", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for a reply.", e);
+        }
+    }
+
+    /**
+     * Sets the time call() waits for a reply before it fails with a RemoteException, e.g. so that a server does not
+     * wait forever on a client which stopped answering. Calls made with callAsync() are not affected.
+     *
+     * @param timeoutMillis
+     *            The timeout in milliseconds, or 0 to wait as long as the connection is open (the default).
+     */
+    public void setCallTimeout(final long timeoutMillis) {
+        this.callTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets the largest frame accepted from the other side. A larger frame closes the connection, so that a malformed or
+     * hostile frame can not exhaust the heap. Note: the frame of a call or reply carrying file contents is slightly
+     * larger than the contents.
+     *
+     * @param maxFrameBytes
+     *            The size in bytes, after the length of the frame (default DEFAULT_MAX_FRAME_BYTES).
+     */
+    public void setMaxFrameSize(final int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * Calls a method of the object exported by the other side without waiting for the reply.
+     *
+     * @param method
+     *            The method of the remote interface.
+     * @param args
+     *            The arguments, or null if there are none.
+     * @return The future reply. It completes with the exception thrown by the call, or with a RemoteException if the
+     *         connection failed.
+     */
+    public CompletableFuture<Object> callAsync(final Method method, final Object[] args) {
+        final CompletableFuture<Object> reply = new CompletableFuture<>();
+        final int methodIndex = this.remoteMethods.indexOf(method);
+        if (methodIndex < 0) {
+            reply.completeExceptionally(new RemoteException("Method " + method + " can not be called remotely."));
+            return reply;
+        }
+        final long requestId = this.nextRequestId.incrementAndGet();
+        this.pendingCalls.put(requestId, reply);
+        try {
+            final FrameBuffer frame = new FrameBuffer(CALL, requestId);
+            frame.data.writeShort(methodIndex);
+            final int argumentCount = args != null ? args.length : 0;
+            frame.data.writeByte(argumentCount);
+            for (int i = 0; i < argumentCount; i++) {
+                BinaryCodec.write(frame.data, args[i], this);
+            }
+            this.send(frame);
+        } catch (final IOException e) {
+            this.pendingCalls.remove(requestId);
+            reply.completeExceptionally(new RemoteException("Could not send the call to the remote side.", e));
+        }
+        if (this.isClosed) {
+            /**
+             * Note: the connection may have closed before the call was registered, in which case nobody else fails it.
+             */
+            this.failPendingCalls();
+        }
+        return reply;
+    }
+
+    /**
+     * Exports the given object as the local target of this connection, when it is first passed to the other side.
+     *
+     * @param object
+     *            The object.
+     * @throws IOException
+     *             If a different object is already exported.
+     */
+    synchronized void exportLocal(final Remote object) throws IOException {
+        if (this.localTarget == null) {
+            this.localTarget = object;
+        } else if (this.localTarget != object) {
+            throw new IOException("Only one object can be exported per connection.");
+        }
+    }
+
+    /**
+     * Runs an incoming call on the executor and sends its reply. <br/>
+     * Note: subclasses may override this method to serve some calls differently, e.g. with sendBytesReply().
+     *
+     * @param requestId
+     *            The request ID of the call.
+     * @param method
+     *            The method of the local interface.
+     * @param args
+     *            The arguments.
+     */
+    protected void dispatch(final long requestId, final Method method, final Object[] args) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MessageConnection.this.invokeLocal(requestId, method, args);
+            }
+        });
+    }
+
+    /**
+     * Invokes an incoming call on the local target in the current thread and sends its reply.
+     *
+     * @param requestId
+     *            The request ID of the call.
+     * @param method
+     *            The method of the local interface.
+     * @param args
+     *            The arguments.
+     */
+    protected void invokeLocal(final long requestId, final Method method, final Object[] args) {
+        final Object target = this.localTarget;
+        if (target == null) {
+            this.sendError(requestId, new RemoteException("No object is exported on this side of the connection."));
+            return;
+        }
+        try {
+            this.sendReply(requestId, method.invoke(target, args));
+        } catch (final InvocationTargetException e) {
+            this.sendError(requestId, e.getCause());
+        } catch (final IllegalAccessException | IllegalArgumentException e) {
+            this.sendError(requestId, new RemoteException("Could not invoke " + method + ".", e));
+        }
+    }
+
+    /**
+     * Sends the return value of an incoming call.
+     *
+     * @param requestId
+     *            The request ID of the call.
+     * @param value
+     *            The return value.
+     */
+    protected void sendReply(final long requestId, final Object value) {
+        try {
+            final FrameBuffer frame = new FrameBuffer(REPLY, requestId);
+            BinaryCodec.write(frame.data, value, this);
+            this.send(frame);
+        } catch (final IOException e) {
+            this.sendError(requestId, new RemoteException("Could not encode the reply.", e));
+        }
+    }
+
+    /**
+     * Sends a byte array as the return value of an incoming call, without holding the bytes in memory. The frame
+     * header is written first, then the body writer writes the bytes straight to the socket.
+     *
+     * @param requestId
+     *            The request ID of the call.
+     * @param length
+     *            The number of bytes in the array.
+     * @param body
+     *            The writer of the bytes.
+     */
+    protected void sendBytesReply(final long requestId, final int length, final BodyWriter body) {
+        try {
+            final FrameBuffer frame = new FrameBuffer(REPLY, requestId);
+            BinaryCodec.writeBytesHeader(frame.data, length);
+            synchronized (this.writeLock) {
+                this.write(frame.toFrame(length));
+                body.writeTo(this.channel);
+            }
+        } catch (final IOException e) {
+            /**
+             * Note: part of the frame may have been written, so the stream can not be trusted anymore.
+             */
+            e.printStackTrace();
+            this.close();
+        }
+    }
+
+    /**
+     * Sends the exception thrown by an incoming call. A RemoteException is wrapped in a ServerException, so that the
+     * caller sees the same exceptions as with RMI.
+     *
+     * @param requestId
+     *            The request ID of the call.
+     * @param exception
+     *            The exception.
+     */
+    protected void sendError(final long requestId, final Throwable exception) {
+        final Throwable error = exception instanceof RemoteException ? new ServerException(
+                "RemoteException occurred in server thread", (RemoteException) exception) : exception;
+        try {
+            final FrameBuffer frame = new FrameBuffer(ERROR, requestId);
+            BinaryCodec.write(frame.data, error, this);
+            this.send(frame);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            this.close();
+        }
+    }
+
+    /**
+     * Writes a complete frame to the socket.
+     *
+     * @param frame
+     *            The frame.
+     * @throws IOException
+     *             If the socket could not be written.
+     */
+    private void send(final FrameBuffer frame) throws IOException {
+        final ByteBuffer buffer = frame.toFrame(0);
+        synchronized (this.writeLock) {
+            this.write(buffer);
+        }
+    }
+
+    /**
+     * Writes a buffer to the socket. Note: must be called while holding the write lock.
+     *
+     * @param buffer
+     *            The buffer.
+     * @throws IOException
+     *             If the socket could not be written.
+     */
+    private void write(final ByteBuffer buffer) throws IOException {
+        if (this.isClosed) {
+            throw new IOException("The connection is closed.");
+        }
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads frames until the connection is closed.
+     */
+    private void readFrames() {
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        try {
+            while (!this.isClosed) {
+                lengthBuffer.clear();
+                this.readFully(lengthBuffer);
+                final int length = lengthBuffer.getInt(0);
+                if ((length < (HEADER_SIZE - 4)) || (length > this.maxFrameBytes)) {
+                    throw new IOException("Invalid frame length " + length + ", at most " + this.maxFrameBytes
+                            + " bytes are accepted.");
+                }
+                final byte[] frame = new byte[length];
+                this.readFully(ByteBuffer.wrap(frame));
+                this.handleFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+            }
+        } catch (final EOFException e) {
+            /**
+             * The other side closed the connection.
+             */
+        } catch (final IOException e) {
+            if (!this.isClosed) {
+                e.printStackTrace();
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Handles one incoming frame.
+     *
+     * @param in
+     *            The frame, after its length.
+     * @throws IOException
+     *             If the frame could not be decoded.
+     */
+    private void handleFrame(final DataInputStream in) throws IOException {
+        final byte kind = in.readByte();
+        final long requestId = in.readLong();
+        if (kind == CALL) {
+            final int methodIndex = in.readShort();
+            if ((methodIndex < 0) || (methodIndex >= this.localMethods.size())) {
+                throw new IOException("Unknown method index " + methodIndex + ".");
+            }
+            final int argumentCount = in.readByte();
+            if (argumentCount < 0) {
+                throw new IOException("Invalid argument count " + argumentCount + ".");
+            }
+            final Object[] args = new Object[argumentCount];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = BinaryCodec.read(in, this);
+            }
+            this.dispatch(requestId, this.localMethods.get(methodIndex), args);
+        } else if ((kind == REPLY) || (kind == ERROR)) {
+            final CompletableFuture<Object> reply = this.pendingCalls.remove(requestId);
+            final Object value = kind == ERROR ? BinaryCodec.readError(in, this) : BinaryCodec.read(in, this);
+            if (reply != null) {
+                if (kind == REPLY) {
+                    reply.complete(value);
+                } else {
+                    reply.completeExceptionally((Throwable) value);
+                }
+            }
+        } else {
+            throw new IOException("Unknown frame kind " + kind + ".");
+        }
+    }
+
+    /**
+     * Reads from the socket until the buffer is full.
+     *
+     * @param buffer
+     *            The buffer to fill.
+     * @throws IOException
+     *             If the socket could not be read, or EOFException if the other side closed it.
+     */
+    private void readFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Determines if this connection is still open.
+     *
+     * @return True if the connection is open.
+     */
+    public boolean isOpen() {
+        return !this.isClosed;
+    }
+
+    /**
+     * Closes this connection. Calls which are still in flight fail with a RemoteException.
+     */
+    public void close() {
+        this.isClosed = true;
+        try {
+            this.channel.close();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+        this.failPendingCalls();
+    }
+
+    /**
+     * Fails all calls which are in flight, after the connection was closed.
+     */
+    private void failPendingCalls() {
+        for (final Long requestId : this.pendingCalls.keySet()) {
+            final CompletableFuture<Object> reply = this.pendingCalls.remove(requestId);
+            if (reply != null) {
+                reply.completeExceptionally(new RemoteException("The connection to "
+                        + this.channel.socket().getRemoteSocketAddress() + " is closed."));
+            }
+        }
+    }
+
+    /**
+     * A frame being encoded. Room for the header is reserved up front, and the length is filled in by toFrame().
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+        private final DataOutputStream data = new DataOutputStream(this);
+
+        private FrameBuffer(final byte kind, final long requestId) throws IOException {
+            super(64);
+            this.data.writeInt(0);
+            this.data.writeByte(kind);
+            this.data.writeLong(requestId);
+        }
+
+        /**
+         * Returns the encoded frame, without copying it.
+         *
+         * @param trailingBytes
+         *            The number of bytes which follow the encoded part, see sendBytesReply().
+         * @return The frame.
+         */
+        private ByteBuffer toFrame(final int trailingBytes) {
+            final ByteBuffer buffer = ByteBuffer.wrap(this.buf, 0, this.count);
+            buffer.putInt(0, (this.count - 4) + trailingBytes);
+            return buffer;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package edu.sjsu.cs249.project1.remote;
+
+import java.io.Serializable;
+
+/**
+ * The reply to a conditional open (see FileServerService.openFileIfChanged()). <br/>
+ * If the client already holds the current version of the file, no data is sent. Otherwise, the reply carries the
+ * current contents together with their version.
+ */
+public class OpenResult implements Serializable {
+    private static final long serialVersionUID = -6512934016736092185L;
+
+    private final boolean isModified;
+    private final byte[] data;
+    private final String version;
+
+    private OpenResult(final boolean isModified, final byte[] data, final String version) {
+        this.isModified = isModified;
+        this.data = data;
+        this.version = version;
+    }
+
+    /**
+     * Returns a reply telling the client that its copy is still current.
+     *
+     * @param version
+     *            The current version of the file.
+     * @return The reply.
+     */
+    public static OpenResult notModified(final String version) {
+        return new OpenResult(false, null, version);
+    }
+
+    /**
+     * Returns a reply carrying the current contents of the file.
+     *
+     * @param data
+     *            The current contents of the file.
+     * @param version
+     *            The version of data.
+     * @return The reply.
+     */
+    public static OpenResult modified(final byte[] data, final String version) {
+        return new OpenResult(true, data, version);
+    }
+
+    /**
+     * Determines if the file has changed since the version known to the client.
+     *
+     * @return True if the reply carries new contents, or false if the client's copy is still current.
+     */
+    public boolean isModified() {
+        return this.isModified;
+    }
+
+    /**
+     * Returns the current contents of the file.
+     *
+     * @return The contents, or null if the file was not modified.
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    public String getVersion() {
+        return this.version;
+    }
+}
\ No newline at end of file
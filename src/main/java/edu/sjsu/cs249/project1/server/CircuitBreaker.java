@@ -0,0 +1,144 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards the remote calls to one client, so that a client which stopped answering does not keep tying up the threads
+ * of the server. <br/>
+ * The breaker is closed as long as calls succeed. After a number of consecutive failures it opens, and calls are
+ * refused without contacting the client. Once the open period has passed, a single trial call is let through (half
+ * open): if it succeeds the breaker closes again, otherwise it reopens. <br/>
+ * The breaker also tracks since when the client has been failing, which ClientCacheManager uses to evict dead clients.
+ * <br/>
+ * The following system properties can be used to tune the breakers: <br/>
+ * fileserver.client.failureThreshold - Number of consecutive failed calls which open the breaker (default 5). <br/>
+ * fileserver.client.breakerOpenMillis - Time to refuse calls before a trial call is let through (default 5000).
+ */
+public class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("fileserver.client.failureThreshold", 5);
+    private static final long OPEN_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(
+            "fileserver.client.breakerOpenMillis", 5000L));
+
+    /**
+     * The states of a CircuitBreaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * The System.nanoTime() of the first failure since the last success, only meaningful if consecutiveFailures > 0.
+     */
+    private long failingSince;
+
+    /**
+     * The System.nanoTime() of the last successful call, or of the creation of the breaker.
+     */
+    private volatile long lastSuccess = System.nanoTime();
+
+    /**
+     * Instantiates a closed breaker, tuned by the system properties.
+     */
+    public CircuitBreaker() {
+        this(FAILURE_THRESHOLD, OPEN_NANOS);
+    }
+
+    /**
+     * Instantiates a closed breaker with the given limits. Note: the server only uses the system properties, this
+     * constructor lets tests use a short open period.
+     *
+     * @param failureThreshold
+     *            The number of consecutive failed calls which open the breaker.
+     * @param openNanos
+     *            The time to refuse calls before a trial call is let through, in nanoseconds.
+     */
+    CircuitBreaker(final int failureThreshold, final long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Asks for permission to call the client. Every permitted call must be reported with recordSuccess() or
+     * recordFailure().
+     *
+     * @return True if the call may go ahead, or false if it should fail right away.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (this.state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if ((System.nanoTime() - this.openedAt) >= this.openNanos) {
+                this.state = State.HALF_OPEN;
+                return true;
+            }
+            return false;
+        default:
+            /**
+             * Note: a trial call is already in flight.
+             */
+            return false;
+        }
+    }
+
+    /**
+     * Reports a successful call, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        this.state = State.CLOSED;
+        this.consecutiveFailures = 0;
+        this.lastSuccess = System.nanoTime();
+    }
+
+    /**
+     * Reports a failed call. The breaker opens once the failure threshold is reached, or if the trial call of a half
+     * open breaker failed.
+     */
+    public synchronized void recordFailure() {
+        final long now = System.nanoTime();
+        if (this.consecutiveFailures == 0) {
+            this.failingSince = now;
+        }
+        this.consecutiveFailures++;
+        if ((this.state == State.HALF_OPEN) || (this.consecutiveFailures >= this.failureThreshold)) {
+            this.state = State.OPEN;
+            this.openedAt = now;
+        }
+    }
+
+    /**
+     * Returns the current state of this breaker.
+     *
+     * @return The state.
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns how long the client has been failing, i.e. the time since the first of the current run of failures.
+     *
+     * @return The duration in milliseconds, or 0 if the last call succeeded.
+     */
+    public synchronized long getFailingMillis() {
+        if (this.consecutiveFailures == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.failingSince);
+    }
+
+    /**
+     * Returns the time since the last successful call, or since the creation of this breaker if no call succeeded yet.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getMillisSinceLastSuccess() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.lastSuccess);
+    }
+}
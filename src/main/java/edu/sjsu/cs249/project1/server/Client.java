@@ -1,16 +1,46 @@
 package edu.sjsu.cs249.project1.server;
 
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.Collection;
+
 import edu.sjsu.cs249.project1.remote.ClientCallback;
 
 /**
- * This class represents a Client as viewed by the server.
+ * This class represents a Client as viewed by the server. <br/>
+ * The following system properties can be used to tune the calls to the client: <br/>
+ * fileserver.client.callbackTimeoutMillis - Time to wait for a client to answer a callback before the call fails
+ * (default 5000).
  *
  * @author David Fisher
  */
 public class Client {
+    /**
+     * Applied by the transports, see ServerApplication for RMI and NioFileServer for the binary protocol.
+     */
+    public static final long CALLBACK_TIMEOUT_MILLIS = Long.getLong("fileserver.client.callbackTimeoutMillis",
+            5000L);
+
     private final String name;
     private final ClientCallback callback;
-    private boolean isActive;
+    private volatile boolean isActive;
+
+    /**
+     * False once we learn that this client was built before ClientCallback.invalidateCaches() existed.
+     */
+    private volatile boolean supportsBatchInvalidation = true;
+
+    /**
+     * Invalidations waiting to be delivered to this client by the InvalidationDispatcher.
+     */
+    private final InvalidationQueue invalidationQueue = new InvalidationQueue();
+
+    /**
+     * Guards the callbacks to this client, see InvalidationDispatcher.
+     */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
 
     /**
      * Instantiates a new Client object with the given name.
@@ -44,25 +74,74 @@ public class Client {
     }
 
     /**
-     * Sends this client a cache invalidation event for the given file name. <br/>
-     * Note: this method most likely needs to be synchronized, but we may be able to unsynchronize it once we know the
-     * implementation details.
+     * Sends this client cache invalidation events for the given file names. <br/>
+     * All file names are sent in one remote call. If the client does not support batched invalidation, the file names
+     * are sent one at a time instead. <br/>
+     * Note: this method does not need to be synchronized, since the InvalidationDispatcher runs at most one delivery per
+     * client at a time. Each call is recorded as a CacheInvalidation flight recorder event.
      *
-     * @param fileName
-     *            The name of the file which is being invalidated.
+     * @param fileNames
+     *            The names of the files which are being invalidated.
+     * @throws RemoteException
+     *             If the client could not be reached. The InvalidationDispatcher decides whether to retry.
      */
-    public synchronized void sendCacheInvalidationEvent(final String fileName) {
+    public void sendCacheInvalidationEvent(final Collection<String> fileNames) throws RemoteException {
+        final Object event = FlightRecorderEvent.CACHE_INVALIDATION.begin();
+        boolean isSucceeded = false;
         try {
+            this.invalidateCaches(fileNames);
+            isSucceeded = true;
+        } finally {
+            if (event != null) {
+                FlightRecorderEvent.CACHE_INVALIDATION.commit(event, this.name, fileNames.size(),
+                        String.join(", ", fileNames), isSucceeded);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the given file names at this client, in one remote call if the client supports it.
+     *
+     * @param fileNames
+     *            The names of the files which are being invalidated.
+     * @throws RemoteException
+     *             If the client could not be reached.
+     */
+    private void invalidateCaches(final Collection<String> fileNames) throws RemoteException {
+        if (this.supportsBatchInvalidation) {
+            try {
+                this.callback.invalidateCaches(new ArrayList<>(fileNames));
+                return;
+            } catch (final ServerException e) {
+                /**
+                 * An older client rejects the unknown method with an UnmarshalException, which RMI wraps in a
+                 * ServerException. Remember that and fall back to single file invalidations.
+                 */
+                if (e.getCause() instanceof UnmarshalException) {
+                    this.supportsBatchInvalidation = false;
+                    System.out.println("Client \"" + this.name
+                            + "\" does not support batched invalidation - falling back to single file callbacks.");
+                } else {
+                    throw e;
+                }
+            }
+        }
+        for (final String fileName : fileNames) {
             this.callback.invalidateCache(fileName);
-        } catch (final Exception e) {
-            /**
-             * Note: Exceptions need to be handled within this method itself, as we don't want one client failure to
-             * impact the notification of other clients.
-             */
-            e.printStackTrace();
         }
     }
 
+    /**
+     * Checks that this client is still reachable, by asking it for its ID. <br/>
+     * Note: every client answers this call, so it serves as a heartbeat without extending ClientCallback.
+     *
+     * @throws RemoteException
+     *             If the client could not be reached.
+     */
+    public void ping() throws RemoteException {
+        this.callback.getId();
+    }
+
     /**
      * Compares two String objects for equivalency.
      *
@@ -76,6 +155,33 @@ public class Client {
         return ((str1 != null) && str1.equals(str2)) || ((str1 == null) && (str2 == null));
     }
 
+    /**
+     * Returns the name of this client.
+     *
+     * @return The name of this client.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the outbound queue of invalidations waiting to be delivered to this client.
+     *
+     * @return The invalidation queue of this client.
+     */
+    public InvalidationQueue getInvalidationQueue() {
+        return this.invalidationQueue;
+    }
+
+    /**
+     * Returns the circuit breaker which guards the callbacks to this client.
+     *
+     * @return The circuit breaker of this client.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
     /**
      * Returns the callback associated with this client.
      *
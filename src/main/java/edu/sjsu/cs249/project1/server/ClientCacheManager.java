@@ -1,35 +1,102 @@
 package edu.sjsu.cs249.project1.server;
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
 
 /**
  * This singleton class manages the relation of files to clients. It has two purposes: <br/>
  * 1. Keeps track of which clients have which files cached locally. <br/>
- * 2. Sends out cache invalidation notices to clients when a file changes in the file system.
+ * 2. Sends out cache invalidation notices to clients when a file changes in the file system. <br/>
+ * Cached files are tracked as time-bounded leases. A client may trust its cached copy until the lease expires, even if
+ * an invalidation never reaches it. Expired leases, and leases of clients which have unregistered, are reaped by a
+ * background sweeper. <br/>
+ * Clients which have not answered a callback for a while are sent a heartbeat. A client which keeps failing its
+ * callbacks, e.g. because it crashed without unregistering, is evicted, so that it no longer accumulates leases and
+ * invalidations. See CircuitBreaker for how failures are counted. An evicted client which calls the server again is
+ * registered again, since it is evidently alive, e.g. after a network partition. Its cached copies are covered by the
+ * leases as usual, so it does not need to be told about the invalidations it missed. <br/>
+ * The following system properties can be used to tune the leases and the heartbeats: <br/>
+ * fileserver.cache.leaseMillis - Duration of a cache lease (default 30000). <br/>
+ * fileserver.cache.leaseSweepMillis - Interval between two sweeps of expired leases (default 10000). <br/>
+ * fileserver.client.heartbeatMillis - Time without a successful callback after which a client is sent a heartbeat, and
+ * interval between two checks of the clients (default 10000). <br/>
+ * fileserver.client.evictAfterMillis - Time a client may keep failing its callbacks before it is evicted (default
+ * 60000). <br/>
+ * fileserver.client.readmitMillis - Time after its eviction during which a client is registered again when it calls
+ * the server (default 3600000).
  *
  * @author David Fisher
  */
 public class ClientCacheManager {
+    private static final long LEASE_MILLIS = Long.getLong("fileserver.cache.leaseMillis", 30000L);
+    private static final long LEASE_SWEEP_MILLIS = Long.getLong("fileserver.cache.leaseSweepMillis", 10000L);
+    private static final long HEARTBEAT_MILLIS = Long.getLong("fileserver.client.heartbeatMillis", 10000L);
+    private static final long EVICT_AFTER_MILLIS = Long.getLong("fileserver.client.evictAfterMillis", 60000L);
+    private static final long READMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(
+            "fileserver.client.readmitMillis", 3600000L));
+
     private static final ClientCacheManager INSTANCE = new ClientCacheManager();
 
     /**
-     * Structure: file name -> set of clients who have the file cached.
+     * Structure: file name -> (client ID -> lease expiry in System.nanoTime() units). <br/>
+     * Note: the inner maps are only ever accessed inside atomic operations on the outer map (compute, remove), so they
+     * do not need to be thread safe themselves. Clients are referenced by ID so that a lease never keeps an unregistered
+     * Client reachable.
      */
-    private final Map<String, Set<Client>> clientCacheMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> clientCacheMap = new ConcurrentHashMap<>();
 
     /**
      * Structure: client ID -> Client wrapper object.
      */
     private final Map<String, Client> registeredClientsMap = new ConcurrentHashMap<>();
 
+    /**
+     * Structure: client ID -> System.nanoTime() of its eviction. <br/>
+     * Note: only holds the clients which have not registered or unregistered since, for at most READMIT_NANOS.
+     */
+    private final Map<String, Long> evictedClientsMap = new ConcurrentHashMap<>();
+
     /**
      * Singleton class, hide constructor by making it private.
      */
     private ClientCacheManager() {
+        final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cache-lease-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ClientCacheManager.this.sweepExpiredLeases();
+            }
+        }, LEASE_SWEEP_MILLIS, LEASE_SWEEP_MILLIS, TimeUnit.MILLISECONDS);
 
+        /**
+         * Note: checking the clients never blocks on them, since the heartbeats run on the InvalidationDispatcher, so
+         * the checks can share the thread of the sweeper.
+         */
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ClientCacheManager.this.checkClients();
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -42,42 +109,48 @@ public class ClientCacheManager {
     }
 
     /**
-     * Registers a client under the given file name. This method should be called whenever a client caches a file for
-     * the first time. <br/>
-     * Note: this method requires synchronization on clientCacheMap because we are directly manipulating it and may
-     * impact sendCacheInvalidationEvent().
+     * Returns the duration of the cache lease granted by registerCachedFile().
      *
-     * @param client
-     *            The client which is caching the given file.
+     * @return The lease duration in milliseconds.
+     */
+    public long getLeaseDuration() {
+        return LEASE_MILLIS;
+    }
+
+    /**
+     * Returns the number of clients which are currently registered.
+     *
+     * @return The number of registered clients.
+     */
+    public int getRegisteredClientCount() {
+        return this.registeredClientsMap.size();
+    }
+
+    /**
+     * Grants the client a cache lease on the given file name. This method should be called whenever a client caches a
+     * file. If the client already holds a lease on the file, the lease is renewed. <br/>
+     * Note: callers should grant the lease before reading the file. A modification which happens after the read then
+     * always finds the lease and invalidates the client.
+     *
+     * @param clientId
+     *            The ID of the client which is caching the given file.
      * @param fileName
      *            The name of the file which the client is caching.
      * @throws CacheException
-     *             If client or fileName are passed as null.
+     *             If client or fileName are passed as null, or if the client is not registered.
      */
     public void registerCachedFile(final String clientId, final String fileName) throws CacheException {
         final Client client = clientId != null ? this.registeredClientsMap.get(clientId) : null;
         if ((client != null) && (fileName != null)) {
-            synchronized (this.clientCacheMap) {
-                /**
-                 * Retrieve the set of all clients who have the given file name cached.
-                 */
-                Set<Client> clients = this.clientCacheMap.get(fileName);
-                if (clients == null) {
-                    /**
-                     * Instantiate the set if null.
-                     */
-                    clients = new LinkedHashSet<>();
-                    this.clientCacheMap.put(fileName, clients);
+            final long expiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEASE_MILLIS);
+            this.clientCacheMap.compute(fileName, new BiFunction<String, Map<String, Long>, Map<String, Long>>() {
+                @Override
+                public Map<String, Long> apply(final String name, final Map<String, Long> leases) {
+                    final Map<String, Long> result = leases != null ? leases : new HashMap<String, Long>();
+                    result.put(clientId, expiry);
+                    return result;
                 }
-
-                /**
-                 * Add the new Client. Note: it doesn't matter if the client is already known to have cached the file -
-                 * since this is a set, it eliminates duplicate values. However, because LinkedHashSet determines
-                 * equivalency by calling the equals() method on an object, we need to define our own implementation of
-                 * Client.equals().
-                 */
-                clients.add(client);
-            }
+            });
         } else {
             throw new CacheException("Client and file name are required to register a cache event.");
         }
@@ -85,28 +158,158 @@ public class ClientCacheManager {
     }
 
     /**
-     * Sends an invalidation event to all clients which have the given file cached. All clients need to invalidate their
-     * cached copy.
+     * Grants the client a cache lease on all given file names, see registerCachedFile(). <br/>
+     * Note: the client is looked up once for all files and all leases expire at the same time.
+     *
+     * @param clientId
+     *            The ID of the client which is caching the given files.
+     * @param fileNames
+     *            The names of the files which the client is caching.
+     * @throws CacheException
+     *             If client or any file name is passed as null, or if the client is not registered. No lease is granted
+     *             in that case.
+     */
+    public void registerCachedFiles(final String clientId, final Collection<String> fileNames) throws CacheException {
+        final Client client = clientId != null ? this.registeredClientsMap.get(clientId) : null;
+        if ((client == null) || fileNames.contains(null)) {
+            throw new CacheException("Client and file name are required to register a cache event.");
+        }
+        final long expiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEASE_MILLIS);
+        final BiFunction<String, Map<String, Long>, Map<String, Long>> grantLease =
+                new BiFunction<String, Map<String, Long>, Map<String, Long>>() {
+                    @Override
+                    public Map<String, Long> apply(final String name, final Map<String, Long> leases) {
+                        final Map<String, Long> result = leases != null ? leases : new HashMap<String, Long>();
+                        result.put(clientId, expiry);
+                        return result;
+                    }
+                };
+        for (final String fileName : fileNames) {
+            this.clientCacheMap.compute(fileName, grantLease);
+        }
+    }
+
+    /**
+     * Sends an invalidation event to all clients which hold a live lease on the given file. All clients need to
+     * invalidate their cached copy. <br/>
+     * Note: the leases are kept. A client may have been granted its lease before the change, but read the file after
+     * it, in which case its copy is current and must still be invalidated by the next change. The leases expire as
+     * usual, so a client which dropped its copy receives at most a few superfluous invalidations until then.
      *
      * @param fileName
      *            The name of the file which has been changed or deleted, and hence requires a cache invalidation event
      *            to be triggered.
      */
     public void sendCacheInvalidationEventToAllClients(final String fileName) {
-        final Set<Client> clients = this.clientCacheMap.get(fileName);
-        if (clients != null) {
-            for (final Client client : clients) {
-                if (client.isActive()) {
-                    /**
-                     * Asynchronously send a cache invalidation event to each active client.
-                     */
-                    new Thread(new Runnable() {
+        final long now = System.nanoTime();
+        final List<Client> leaseholders = new ArrayList<>();
+        this.clientCacheMap.computeIfPresent(fileName, new BiFunction<String, Map<String, Long>, Map<String, Long>>() {
+            @Override
+            public Map<String, Long> apply(final String name, final Map<String, Long> leases) {
+                for (final Map.Entry<String, Long> lease : leases.entrySet()) {
+                    final Client client = ClientCacheManager.this.registeredClientsMap.get(lease.getKey());
+                    if ((client != null) && client.isActive() && ((lease.getValue() - now) > 0)) {
+                        leaseholders.add(client);
+                    }
+                }
+                return leases;
+            }
+        });
+
+        /**
+         * Asynchronously send a cache invalidation event to each active leaseholder. Note: the dispatcher uses a
+         * bounded pool of worker threads and merges invalidations which are still waiting for the same client.
+         */
+        for (final Client client : leaseholders) {
+            InvalidationDispatcher.getInstance().dispatch(client, fileName);
+        }
+    }
+
+    /**
+     * Removes all expired leases, as well as leases held by clients which are no longer registered. File names without
+     * any remaining lease are dropped from clientCacheMap.
+     */
+    private void sweepExpiredLeases() {
+        final long now = System.nanoTime();
+        for (final String fileName : this.clientCacheMap.keySet()) {
+            this.clientCacheMap.computeIfPresent(fileName,
+                    new BiFunction<String, Map<String, Long>, Map<String, Long>>() {
                         @Override
-                        public void run() {
-                            client.sendCacheInvalidationEvent(fileName);
+                        public Map<String, Long> apply(final String name, final Map<String, Long> leases) {
+                            final Iterator<Map.Entry<String, Long>> iterator = leases.entrySet().iterator();
+                            while (iterator.hasNext()) {
+                                final Map.Entry<String, Long> lease = iterator.next();
+                                if (((lease.getValue() - now) <= 0)
+                                        || !ClientCacheManager.this.registeredClientsMap.containsKey(lease.getKey())) {
+                                    iterator.remove();
+                                }
+                            }
+                            return leases.isEmpty() ? null : leases;
                         }
-                    }).start();
-                }
+                    });
+        }
+    }
+
+    /**
+     * Evicts the clients which have been failing their callbacks for longer than EVICT_AFTER_MILLIS, and sends a
+     * heartbeat to the clients which have not answered a callback for HEARTBEAT_MILLIS.
+     */
+    private void checkClients() {
+        final long now = System.nanoTime();
+        final Iterator<Long> evictions = this.evictedClientsMap.values().iterator();
+        while (evictions.hasNext()) {
+            if ((now - evictions.next()) >= READMIT_NANOS) {
+                evictions.remove();
+            }
+        }
+        for (final Client client : this.registeredClientsMap.values()) {
+            final CircuitBreaker circuitBreaker = client.getCircuitBreaker();
+            final long failingMillis = circuitBreaker.getFailingMillis();
+            if (failingMillis >= EVICT_AFTER_MILLIS) {
+                this.evictClient(client, failingMillis);
+            } else if (circuitBreaker.getMillisSinceLastSuccess() >= HEARTBEAT_MILLIS) {
+                InvalidationDispatcher.getInstance().ping(client);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a client which stopped answering, as if it had unregistered itself. <br/>
+     * Note: synchronized like unregisterClient(), and only removes the given client, so that a client which has since
+     * registered again under the same ID is kept.
+     *
+     * @param client
+     *            The client to evict.
+     * @param failingMillis
+     *            How long the client has been failing.
+     */
+    private synchronized void evictClient(final Client client, final long failingMillis) {
+        if (this.registeredClientsMap.remove(client.getName(), client)) {
+            client.deactivateClient();
+            this.evictedClientsMap.put(client.getName(), System.nanoTime());
+            System.out.println("Client Evicted: " + client.getName() + " (failing for " + failingMillis + " ms)");
+            System.out.println("Now tracking " + this.registeredClientsMap.size() + " clients.");
+        }
+    }
+
+    /**
+     * Registers a client again if it was evicted, so that it can keep using the server. Called whenever a client calls
+     * the server; does nothing for a client which is registered, or which was never evicted.
+     *
+     * @param id
+     *            The ID of the client.
+     * @param callback
+     *            The callback of the client.
+     */
+    public void readmitClient(final String id, final ClientCallback callback) {
+        if ((id == null) || !this.evictedClientsMap.containsKey(id)) {
+            return;
+        }
+        synchronized (this.registeredClientsMap) {
+            if ((this.evictedClientsMap.remove(id) != null) && !this.registeredClientsMap.containsKey(id)) {
+                this.registeredClientsMap.put(id, new Client(id, callback));
+                System.out.println("Client registered again after its eviction: " + id);
+                System.out.println("Now tracking " + this.registeredClientsMap.size() + " clients.");
             }
         }
     }
@@ -129,6 +332,7 @@ public class ClientCacheManager {
         if ((id != null) && (client != null)) {
             synchronized (this.registeredClientsMap) {
                 if (!this.registeredClientsMap.containsKey(id)) {
+                    this.evictedClientsMap.remove(id);
                     this.registeredClientsMap.put(id, client);
                     System.out.println("Client registered with ID \"" + id + "\" and callback: \""
                             + client.getCallback() + "\".");
@@ -157,11 +361,16 @@ public class ClientCacheManager {
                 /**
                  * Note: we both remove the client from the registration map as well as mark it as inactive. <br/>
                  * Marking as inactive is required so that clientCacheMap is essentially aware of the removal from
-                 * registeredClientsMap.
+                 * registeredClientsMap. The leases of this client are reaped by the next sweep.
                  */
                 this.registeredClientsMap.remove(id).deactivateClient();
                 System.out.println("Client Unregistered: " + id);
                 System.out.println("Now tracking " + this.registeredClientsMap.size() + " clients.");
+            } else if (this.evictedClientsMap.remove(id) != null) {
+                /**
+                 * Note: the client was evicted before it unregistered, so there is nothing left to remove.
+                 */
+                System.out.println("Client Unregistered: " + id + " (evicted before)");
             } else {
                 throw new CacheException("ID \"" + id + "\" is not currently registered with the server.");
             }
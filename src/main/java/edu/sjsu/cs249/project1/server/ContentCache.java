@@ -0,0 +1,233 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This singleton class holds the contents of recently used files in memory, bounded by the total number of bytes. <br/>
+ * When the bound is exceeded, contents which were not used recently are evicted, and the next read of those files goes
+ * to disk again. Recency is tracked with the second chance (CLOCK) approximation of LRU: a hit only sets a flag on the
+ * entry, so that lookups never take a lock, and eviction skips and clears flagged entries once. Files with changes
+ * which are not yet written to disk keep their contents themselves (see File), so they are never evicted. <br/>
+ * The following system properties can be used to tune the cache: <br/>
+ * fileserver.cache.maxBytes - Total number of bytes held by the cache (default a quarter of the maximum heap size).
+ * <br/>
+ * fileserver.cache.statsMillis - Interval at which the cache statistics are printed, or 0 to never print them
+ * (default 0).
+ */
+public class ContentCache {
+    private static final long MAX_BYTES = Long.getLong("fileserver.cache.maxBytes",
+            Runtime.getRuntime().maxMemory() / 4);
+    private static final long STATS_MILLIS = Long.getLong("fileserver.cache.statsMillis", 0L);
+
+    private static final ContentCache INSTANCE = new ContentCache();
+
+    /**
+     * Structure: file -> cached contents. Read without locking. <br/>
+     * Note: files are compared by identity, so a renamed file keeps its entry.
+     */
+    private final Map<File, Entry> contents = new ConcurrentHashMap<>();
+
+    /**
+     * Structure: file -> cached contents, in eviction order (next candidate first). Only used while holding the lock of
+     * this cache.
+     */
+    private final LinkedHashMap<File, Entry> evictionOrder = new LinkedHashMap<>();
+
+    private final long maxBytes;
+    private long totalBytes;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private long evictionCount;
+
+    /**
+     * The cached contents of a file.
+     */
+    private static class Entry {
+        private final byte[] data;
+
+        /**
+         * True if the contents were used since the entry was last passed over by eviction.
+         */
+        private volatile boolean isReferenced;
+
+        private Entry(final byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Singleton class, hide constructor by making it private.
+     */
+    private ContentCache() {
+        this(MAX_BYTES);
+        if (STATS_MILLIS > 0) {
+            final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "content-cache-stats");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reporter.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    System.out.println("Content cache: " + ContentCache.this);
+                }
+            }, STATS_MILLIS, STATS_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Instantiates a cache holding at most the given number of bytes. Note: the server only uses the singleton
+     * instance, this constructor lets tests use a cache of a known size.
+     *
+     * @param maxBytes
+     *            The total number of bytes held by the cache.
+     */
+    ContentCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the singleton instance of ContentCache.
+     *
+     * @return The singleton instance of ContentCache.
+     */
+    public static ContentCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached contents of the given file and marks them as recently used. <br/>
+     * Note: lookups do not take any lock. Only hits are counted here, since a file which is not cached may still be in
+     * memory elsewhere; callers report a miss with recordMiss() when they have to go to disk.
+     *
+     * @param file
+     *            The file.
+     * @return The contents, or null if they are not cached.
+     */
+    public byte[] get(final File file) {
+        final Entry entry = this.contents.get(file);
+        if (entry != null) {
+            if (!entry.isReferenced) {
+                entry.isReferenced = true;
+            }
+            this.hitCount.increment();
+            return entry.data;
+        }
+        return null;
+    }
+
+    /**
+     * Counts a read which had to go to disk because the contents were not cached.
+     */
+    public void recordMiss() {
+        this.missCount.increment();
+    }
+
+    /**
+     * Caches the contents of the given file, evicting contents which were not used recently if the cache is full. <br/>
+     * Note: contents larger than the whole cache are not cached, those files are always read from disk.
+     *
+     * @param file
+     *            The file.
+     * @param data
+     *            The contents of the file as they are stored on disk. The array must not be changed afterwards.
+     */
+    public synchronized void put(final File file, final byte[] data) {
+        this.remove(file);
+        if (data.length <= this.maxBytes) {
+            final Entry entry = new Entry(data);
+            this.contents.put(file, entry);
+            this.evictionOrder.put(file, entry);
+            this.totalBytes += data.length;
+            this.evict();
+        }
+    }
+
+    /**
+     * Removes the cached contents of the given file, e.g. when the file changed or was deleted.
+     *
+     * @param file
+     *            The file.
+     */
+    public synchronized void remove(final File file) {
+        final Entry entry = this.evictionOrder.remove(file);
+        if (entry != null) {
+            this.contents.remove(file);
+            this.totalBytes -= entry.data.length;
+        }
+    }
+
+    /**
+     * Evicts contents which were not used recently until the cache is within its bound again. Referenced entries get a
+     * second chance: their flag is cleared and they are moved to the end of the eviction order.
+     */
+    private void evict() {
+        while (this.totalBytes > this.maxBytes) {
+            final Iterator<Map.Entry<File, Entry>> iterator = this.evictionOrder.entrySet().iterator();
+            final Map.Entry<File, Entry> candidate = iterator.next();
+            iterator.remove();
+            if (candidate.getValue().isReferenced) {
+                candidate.getValue().isReferenced = false;
+                this.evictionOrder.put(candidate.getKey(), candidate.getValue());
+            } else {
+                this.contents.remove(candidate.getKey());
+                this.totalBytes -= candidate.getValue().data.length;
+                this.evictionCount++;
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    public int getEntryCount() {
+        return this.contents.size();
+    }
+
+    /**
+     * Returns the share of lookups which were served from the cache.
+     *
+     * @return The hit ratio, between 0 and 1, or 0 if nothing was looked up yet.
+     */
+    public double getHitRatio() {
+        final long hits = this.hitCount.sum();
+        final long lookups = hits + this.missCount.sum();
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    /**
+     * Returns a one line summary of the cache statistics.
+     *
+     * @return The cache statistics.
+     */
+    @Override
+    public synchronized String toString() {
+        return this.contents.size() + " files, " + this.totalBytes + "/" + this.maxBytes + " bytes, "
+                + this.hitCount.sum() + " hits, " + this.missCount.sum() + " misses ("
+                + Math.round(100 * this.getHitRatio()) + "% hit ratio), " + this.evictionCount + " evictions";
+    }
+}
\ No newline at end of file
@@ -1,15 +1,27 @@
 package edu.sjsu.cs249.project1.server;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import edu.sjsu.cs249.project1.remote.ContentVersion;
+import edu.sjsu.cs249.project1.remote.FileEdit;
+import edu.sjsu.cs249.project1.remote.OpenResult;
 
 /**
- * This class represents a file in a file system. Data is represented as a byte array.
+ * This class represents a file in a file system. Data is represented as a byte array. <br/>
+ * Changes are recorded in the WriteAheadLog and applied to the in-memory copy. The file on disk is only written by
+ * checkpoints, see checkpoint(). Once the file on disk is up to date, its contents are only kept in the ContentCache,
+ * which may evict them. Large files are not cached on the heap at all, but read through a memory mapping of the file on
+ * disk.
  *
  * @author David Fisher
  */
@@ -18,53 +30,514 @@ public class File {
      * Note: FILE_PATH_PREFIX is relative to your workspace installation directory.
      */
     private static final String FILE_PATH_PREFIX = "filesystem/";
-    private final String absolutePath;
-    private byte[] cachedFile;
+
+    /**
+     * Files of at least this many bytes are read through a memory mapping instead of being cached on the heap. Can be
+     * overridden with the fileserver.mmap.minBytes system property.
+     */
+    private static final long MAPPED_READ_MIN_BYTES = Long.getLong("fileserver.mmap.minBytes", 1024L * 1024);
+
+    /**
+     * The outcomes of patch().
+     */
+    public enum PatchResult {
+        CHANGED, UNCHANGED, STALE
+    }
+
+    /**
+     * Note: the name changes when the file is renamed (see rename()), the path once it was moved on disk (see
+     * moveOnDisk()). The name is volatile since it may be read without holding the lock.
+     */
+    private volatile String name;
+    private String absolutePath;
+
+    /**
+     * The contents of this file which are not written to disk yet, or null if the file on disk is up to date. Unwritten
+     * contents are held here rather than in the ContentCache, so that they can never be evicted. Note: volatile since
+     * it is cleared while holding only the read lock.
+     */
+    private volatile byte[] unwrittenData;
+
+    /**
+     * A read-only mapping of the file on disk, or null if it was not mapped yet. Note: the file on disk is never
+     * changed in place, changes always move a new file into place (see WriteAheadLog.writeAtomically()). A mapping
+     * therefore keeps showing the same contents, and it is simply dropped when the contents change. Volatile since it
+     * is set while holding only the read lock.
+     */
+    private volatile ByteBuffer mapping;
     private boolean isActive;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
 
     /**
-     * Instantiates a new File with the given data.
+     * The sequence number of the last log record of this file.
+     */
+    private volatile long lastLsn;
+
+    /**
+     * Version of the contents, computed whenever the data changes, or on first use for files loaded from disk. Note:
+     * volatile since it is set while holding only the read lock.
+     */
+    private volatile String version;
+
+    /**
+     * Version of the contents of the file on disk as computed by ContentVersion.of(), or null if it is not known yet.
+     * Differs from version once the file was patched, see ContentVersion.after(). Note: volatile since it is set while
+     * holding only the read lock.
+     */
+    private volatile String diskVersion;
+
+    /**
+     * Note: readers first try an optimistic read, which takes no lock at all. This works since the contents in memory
+     * are never changed in place, only replaced. The read lock is only taken when the contents have to be read from
+     * disk, or when a writer got in between. The lock is not reentrant.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Instantiates a new File with the given data. The creation is logged, and the file is written to disk by the next
+     * checkpoint.
      *
      * @param name
      *            The name of this file.
      * @param data
      *            The initial data to store in this file.
      * @throws FileException
-     *             If any problem is encountered while creating the file on disk.
+     *             If any problem is encountered while logging the creation.
      */
     public File(final String name, final byte[] data) throws FileException {
-        this.absolutePath = FILE_PATH_PREFIX + name;
-        try (FileOutputStream outputStream = new FileOutputStream(this.absolutePath)) {
-            outputStream.write(data);
+        this(name, Arrays.copyOf(data, data.length), ContentVersion.of(data));
+        this.markDirty();
+        this.lastLsn = WriteAheadLog.getInstance().logCreate(name, this.unwrittenData, this.version);
+    }
+
+    /**
+     * Instantiates a new File by atomically moving the given file into place. <br/>
+     * Note: the source must reside on the same disk as the file system, e.g. a temporary file of an upload.
+     *
+     * @param name
+     *            The name of this file.
+     * @param source
+     *            The file holding the initial data of this file.
+     * @throws FileException
+     *             If any problem is encountered while moving or reading the file on disk.
+     */
+    public File(final String name, final Path source) throws FileException {
+        this(name, null, null);
+        try {
+            /**
+             * Note: a file left on disk by a deletion which is still waiting for its log record is replaced, see
+             * FileSystem.deleteFile().
+             */
+            final Path target = Paths.get(this.absolutePath);
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            WriteAheadLog.forceDirectory(target.getParent());
+            this.version = ContentVersion.of(target);
+            this.diskVersion = this.version;
         } catch (IOException | SecurityException e) {
             throw new FileException("Error occurred while creating file.", e);
         }
-        this.cachedFile = Arrays.copyOf(data, data.length);
+        this.lastLsn = WriteAheadLog.getInstance().logReplace(name, this.version);
+    }
+
+    /**
+     * Instantiates a new File without logging anything.
+     *
+     * @param name
+     *            The name of this file.
+     * @param data
+     *            The data of this file which is not written to disk yet, or null if it is stored on disk.
+     * @param version
+     *            The version of data, or null to compute it on first use.
+     */
+    private File(final String name, final byte[] data, final String version) {
+        this.name = name;
+        this.absolutePath = FILE_PATH_PREFIX + name;
+        this.unwrittenData = data;
+        this.version = version;
         this.isActive = true;
     }
 
+    /**
+     * Returns a File for data which is already stored on disk under the given name, e.g. when the server starts. The
+     * data is not read until it is first needed.
+     *
+     * @param name
+     *            The name of the file.
+     * @return The file.
+     */
+    public static File load(final String name) {
+        return new File(name, null, null);
+    }
+
+    /**
+     * Returns the current name of this file.
+     *
+     * @return The name of this file.
+     */
+    public String getName() {
+        return this.name;
+    }
+
     /**
      * Returns the contents of this file as a byte array. <br/>
-     * Lock used: <i>Read</i>
+     * Lock used: <i>Optimistic read</i>, or <i>Read</i> if the contents are not in memory
      *
      * @return The contents of this file.
      * @throws FileException
      *             If this file was deleted before it could be read.
      */
     public byte[] read() throws FileException {
-        this.lock.readLock().lock();
+        final long optimisticStamp = this.lock.tryOptimisticRead();
+        final boolean wasActive = this.isActive;
+        final byte[] residentData = this.getResidentData();
+        if (wasActive && (residentData != null) && this.lock.validate(optimisticStamp)) {
+            return residentData;
+        }
+
+        final long stamp = this.lock.readLock();
         try {
             if (this.isActive) {
                 /**
-                 * Note: no need to read from the physical file since we have it locally cached in memory.
+                 * Note: the physical file is only read if its contents are not cached in memory.
                  */
-                return this.cachedFile;
+                return this.getData();
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the version of the contents of this file, as computed by ContentVersion. <br/>
+     * Lock used: <i>Optimistic read</i>, or <i>Read</i> if the version is not known yet <br/>
+     * Note: the version is computed at most once per change of the data.
+     *
+     * @return The version of the contents.
+     * @throws FileException
+     *             If this file was deleted.
+     */
+    public String getVersion() throws FileException {
+        final long optimisticStamp = this.lock.tryOptimisticRead();
+        final boolean wasActive = this.isActive;
+        final String knownVersion = this.version;
+        if (wasActive && (knownVersion != null) && this.lock.validate(optimisticStamp)) {
+            return knownVersion;
+        }
+
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive) {
+                return this.getCurrentVersion();
             } else {
                 throw new FileException("This file no longer exists.");
             }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
         } finally {
-            this.lock.readLock().unlock();
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the contents of this file, unless they still have the given version. <br/>
+     * Lock used: <i>Optimistic read</i>, or <i>Read</i> if the contents are needed but not in memory <br/>
+     * Note: the contents and the version are validated against the same stamp, so the returned version always
+     * describes the returned contents.
+     *
+     * @param knownVersion
+     *            The version held by the caller, or null if it holds none.
+     * @return The outcome of the conditional read.
+     * @throws FileException
+     *             If this file was deleted before it could be read.
+     */
+    public OpenResult readIfChanged(final String knownVersion) throws FileException {
+        final long optimisticStamp = this.lock.tryOptimisticRead();
+        final boolean wasActive = this.isActive;
+        final String optimisticVersion = this.version;
+        if (wasActive && (optimisticVersion != null)) {
+            if (optimisticVersion.equals(knownVersion)) {
+                if (this.lock.validate(optimisticStamp)) {
+                    return OpenResult.notModified(optimisticVersion);
+                }
+            } else {
+                final byte[] residentData = this.getResidentData();
+                if ((residentData != null) && this.lock.validate(optimisticStamp)) {
+                    return OpenResult.modified(residentData, optimisticVersion);
+                }
+            }
+        }
+
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive) {
+                final String currentVersion = this.getCurrentVersion();
+                if (currentVersion.equals(knownVersion)) {
+                    return OpenResult.notModified(currentVersion);
+                } else {
+                    return OpenResult.modified(this.getData(), currentVersion);
+                }
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the contents of this file as a read-only buffer, without copying them. <br/>
+     * Lock used: <i>Read</i> <br/>
+     * Note: the buffer is a snapshot, it keeps showing the contents as of this call even if the file is changed or
+     * deleted afterwards.
+     *
+     * @return The contents of this file.
+     * @throws FileException
+     *             If this file was deleted before it could be read.
+     */
+    public ByteBuffer readBuffer() throws FileException {
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive) {
+                final ByteBuffer buffer = this.getBuffer();
+                return (buffer != null ? buffer : ByteBuffer.wrap(this.readFromDisk())).asReadOnlyBuffer();
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Opens the file on disk for reading, if it is large enough to be mapped and up to date on disk. <br/>
+     * Lock used: <i>Read</i> <br/>
+     * Note: the channel is a snapshot, since the file on disk is never changed in place. It keeps reading the contents
+     * as of this call even if the file is changed or deleted afterwards.
+     *
+     * @return The channel, which the caller must close, or null if the contents should be read with readBuffer().
+     * @throws FileException
+     *             If this file was deleted before it could be opened, or if it could not be opened.
+     */
+    public FileChannel openChannel() throws FileException {
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive) {
+                if (this.unwrittenData != null) {
+                    return null;
+                }
+                final FileChannel channel = FileChannel.open(Paths.get(this.absolutePath), StandardOpenOption.READ);
+                if (channel.size() < MAPPED_READ_MIN_BYTES) {
+                    channel.close();
+                    return null;
+                }
+                return channel;
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the contents of this file from memory or from its mapping, or reads them from disk and caches them. Note:
+     * must be called while holding the lock. Two readers may both read the file from disk, which is harmless since it
+     * is not changing.
+     *
+     * @return The contents of this file.
+     * @throws IOException
+     *             If the file could not be read from disk.
+     */
+    private byte[] getData() throws IOException {
+        byte[] data = this.getResidentData();
+        if (data == null) {
+            ContentCache.getInstance().recordMiss();
+            final ByteBuffer mapped = this.getMapping();
+            if (mapped != null) {
+                /**
+                 * Note: the copy only lives as long as the caller needs it, the mapping stays off the heap.
+                 */
+                data = new byte[mapped.remaining()];
+                mapped.duplicate().get(data);
+            } else {
+                data = this.readFromDisk();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Reads the contents of this file from disk and caches them. Note: must be called while holding the lock.
+     *
+     * @return The contents of this file.
+     * @throws IOException
+     *             If the file could not be read from disk.
+     */
+    private byte[] readFromDisk() throws IOException {
+        final Object event = FlightRecorderEvent.FILE_READ.begin();
+        final byte[] data = Files.readAllBytes(Paths.get(this.absolutePath));
+        if (event != null) {
+            FlightRecorderEvent.FILE_READ.commit(event, this.name, (long) data.length);
+        }
+        ContentCache.getInstance().put(this, data);
+        return data;
+    }
+
+    /**
+     * Returns the contents of this file if they can be read without copying them, i.e. if they are in memory or if the
+     * file is large enough to be mapped. Note: must be called while holding the lock.
+     *
+     * @return The contents of this file, or null if they have to be read from disk.
+     * @throws IOException
+     *             If the file could not be mapped.
+     */
+    private ByteBuffer getBuffer() throws IOException {
+        final byte[] data = this.getResidentData();
+        if (data != null) {
+            return ByteBuffer.wrap(data);
+        }
+        ContentCache.getInstance().recordMiss();
+        return this.getMapping();
+    }
+
+    /**
+     * Returns the mapping of the file on disk, mapping it if it is large enough and not mapped yet. Note: must be
+     * called while holding the lock, and only if the contents are not in memory, since the file on disk may be
+     * outdated.
+     *
+     * @return The mapping, or null if the file is too small to be mapped.
+     * @throws IOException
+     *             If the file could not be mapped.
+     */
+    private ByteBuffer getMapping() throws IOException {
+        ByteBuffer mapped = this.mapping;
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(Paths.get(this.absolutePath), StandardOpenOption.READ)) {
+                final long size = channel.size();
+                /**
+                 * Note: a mapping stays valid after its channel is closed. Files beyond Integer.MAX_VALUE bytes can not
+                 * be mapped in one piece, nor be held in a byte array, so those are left to the positional reads.
+                 */
+                if ((size >= MAPPED_READ_MIN_BYTES) && (size <= Integer.MAX_VALUE)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    this.mapping = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns the contents of this file if they are in memory. Note: may be called during an optimistic read, since it
+     * has no effect other than marking the cached contents as used.
+     *
+     * @return The contents of this file, or null if they have to be read from disk.
+     */
+    private byte[] getResidentData() {
+        final byte[] data = this.unwrittenData;
+        return data != null ? data : ContentCache.getInstance().get(this);
+    }
+
+    /**
+     * Returns the version of the contents, computing it if it is not known yet. If the contents are stored on disk, the
+     * version is computed by streaming the file from disk. Note: must be called while holding the lock.
+     *
+     * @return The version of the contents.
+     * @throws IOException
+     *             If the file could not be read from disk.
+     */
+    private String getCurrentVersion() throws IOException {
+        String currentVersion = this.version;
+        if (currentVersion == null) {
+            final byte[] data = this.unwrittenData;
+            if (data != null) {
+                currentVersion = ContentVersion.of(data);
+            } else {
+                currentVersion = ContentVersion.of(Paths.get(this.absolutePath));
+                this.diskVersion = currentVersion;
+            }
+            this.version = currentVersion;
+        }
+        return currentVersion;
+    }
+
+    /**
+     * Returns a range of the contents of this file. <br/>
+     * Lock used: <i>Optimistic read</i>, or <i>Read</i> if the contents are not in memory <br/>
+     * The range is served from memory when the contents are resident, or from the mapping of a large file. Otherwise
+     * only the requested bytes are read from disk with a positional read, without caching the contents.
+     *
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The bytes read. Fewer bytes than requested are returned if the range extends past the end of the file,
+     *         and none if offset is at or past the end of the file.
+     * @throws FileException
+     *             If this file was deleted before it could be read, or if offset or length is negative.
+     */
+    public byte[] read(final long offset, final int length) throws FileException {
+        if ((offset < 0) || (length < 0)) {
+            throw new FileException("Offset and length must not be negative.");
+        }
+        final long optimisticStamp = this.lock.tryOptimisticRead();
+        final boolean wasActive = this.isActive;
+        final byte[] residentData = this.getResidentData();
+        if (wasActive && (residentData != null)) {
+            /**
+             * Note: the copy is taken before validating, which is safe since the array is never changed in place.
+             */
+            final int from = (int) Math.min(offset, residentData.length);
+            final byte[] range = Arrays.copyOfRange(residentData, from, from + Math.min(length, residentData.length
+                    - from));
+            if (this.lock.validate(optimisticStamp)) {
+                return range;
+            }
+        }
+
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive) {
+                final ByteBuffer contents = this.getBuffer();
+                if (contents != null) {
+                    final int from = (int) Math.min(offset, contents.limit());
+                    final byte[] range = new byte[Math.min(length, contents.limit() - from)];
+                    ((ByteBuffer) contents.duplicate().position(from)).get(range);
+                    return range;
+                } else {
+                    try (FileChannel channel = FileChannel.open(Paths.get(this.absolutePath),
+                            StandardOpenOption.READ)) {
+                        final long size = channel.size();
+                        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0,
+                                Math.min(length, size - offset)));
+                        /**
+                         * Note: a positional read may return fewer bytes than requested, so keep reading until the
+                         * buffer is full or the end of the file is reached.
+                         */
+                        int bytesRead = 0;
+                        while (buffer.hasRemaining() && (bytesRead >= 0)) {
+                            bytesRead = channel.read(buffer, offset + buffer.position());
+                        }
+                        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position())
+                                : buffer.array();
+                    }
+                }
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockRead(stamp);
         }
     }
 
@@ -80,20 +553,27 @@ public class File {
      *             If this file was deleted before it could be modified.
      */
     public boolean modify(final byte[] newData) throws FileException {
-        this.lock.writeLock().lock();
-        try (FileOutputStream outputStream = new FileOutputStream(this.absolutePath)) {
+        final long stamp = this.lock.writeLock();
+        try {
+            final Object event = FlightRecorderEvent.FILE_WRITE.begin();
             if (this.isActive) {
-                if (!Arrays.equals(this.cachedFile, newData)) {
-                    /**
-                     * Write to disk.
-                     */
-                    outputStream.write(newData);
+                if (!Arrays.equals(this.getData(), newData)) {
+                    final byte[] data = Arrays.copyOf(newData, newData.length);
+                    final String newVersion = ContentVersion.of(data);
 
                     /**
-                     * Update the cached copy. <br/>
-                     * Note: Must be done after writing to disk in case writing throws an exception.
+                     * Log the change. <br/>
+                     * Note: the cached copy must be updated after logging in case logging throws an exception.
                      */
-                    this.cachedFile = Arrays.copyOf(newData, newData.length);
+                    this.markDirty();
+                    this.lastLsn = WriteAheadLog.getInstance().logModify(this.name, data, newVersion);
+                    this.unwrittenData = data;
+                    this.mapping = null;
+                    ContentCache.getInstance().remove(this);
+                    this.version = newVersion;
+                    if (event != null) {
+                        FlightRecorderEvent.FILE_WRITE.commit(event, this.name, (long) data.length, "modify");
+                    }
                     return true;
                 } else {
                     return false;
@@ -104,32 +584,393 @@ public class File {
         } catch (IOException | SecurityException e) {
             throw new FileException(e);
         } finally {
-            this.lock.writeLock().unlock();
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies a list of edits to this file, in order. <br/>
+     * Lock used: <i>Read</i> while the edits are applied to a copy of the contents, <i>Write</i> while they are logged
+     * <br/>
+     * Only the edits are logged, not the resulting contents, and the new version is derived from the edits (see
+     * ContentVersion.after()), so that the write lock is held for a time which only depends on the size of the edits.
+     * Should another change get in between, the edits are applied again to the new contents. <br/>
+     * Note: the in-memory copy is still replaced rather than changed in place, since readers may be holding on to it.
+     * The new contents stay on the heap until the next checkpoint, also for files which are otherwise read through
+     * their mapping.
+     *
+     * @param baseVersion
+     *            The version of the contents the edits were computed against, or null to apply them to whatever the
+     *            contents are.
+     * @param edits
+     *            The edits to apply. Offsets refer to the contents as left by the preceding edits.
+     * @return Whether the data was changed, left as it was, or not patched since it no longer has the base version.
+     * @throws FileException
+     *             If this file was deleted before it could be patched, or if an edit lies outside of the file.
+     */
+    public PatchResult patch(final String baseVersion, final List<FileEdit> edits) throws FileException {
+        while (true) {
+            final byte[] oldData;
+            final String oldVersion;
+            final long oldLsn;
+            final long readStamp = this.lock.readLock();
+            try {
+                if (!this.isActive) {
+                    throw new FileException("This file no longer exists.");
+                }
+                oldVersion = this.getCurrentVersion();
+                if ((baseVersion != null) && !baseVersion.equals(oldVersion)) {
+                    return PatchResult.STALE;
+                }
+                oldData = this.getData();
+                oldLsn = this.lastLsn;
+            } catch (IOException | SecurityException e) {
+                throw new FileException(e);
+            } finally {
+                this.lock.unlockRead(readStamp);
+            }
+
+            final byte[] newData = applyEdits(oldData, edits);
+            if (newData == oldData) {
+                return PatchResult.UNCHANGED;
+            }
+            final String newVersion = ContentVersion.after(oldVersion, edits);
+
+            final long stamp = this.lock.writeLock();
+            try {
+                final Object event = FlightRecorderEvent.FILE_WRITE.begin();
+                /**
+                 * Every change of the contents is logged, so an unchanged sequence number means that the edits were
+                 * applied to the current contents.
+                 */
+                if (this.isActive && (this.lastLsn == oldLsn)) {
+                    /**
+                     * Log the change. <br/>
+                     * Note: the cached copy must be updated after logging in case logging throws an exception.
+                     */
+                    this.markDirty();
+                    this.lastLsn = WriteAheadLog.getInstance().logPatch(this.name, edits, newVersion);
+                    this.unwrittenData = newData;
+                    this.mapping = null;
+                    ContentCache.getInstance().remove(this);
+                    this.version = newVersion;
+                    if (event != null) {
+                        FlightRecorderEvent.FILE_WRITE.commit(event, this.name, (long) newData.length, "patch");
+                    }
+                    return PatchResult.CHANGED;
+                }
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Applies a list of edits to the given data. The data is copied on the first edit which changes it.
+     *
+     * @param oldData
+     *            The data to edit. It is not changed.
+     * @param edits
+     *            The edits to apply. Offsets refer to the contents as left by the preceding edits.
+     * @return The edited data, or oldData itself if no edit changed anything.
+     * @throws FileException
+     *             If an edit lies outside of the data.
+     */
+    static byte[] applyEdits(final byte[] oldData, final List<FileEdit> edits) throws FileException {
+        byte[] newData = oldData;
+        for (final FileEdit edit : edits) {
+            final byte[] data = edit.getData();
+            final long offset = edit.getOffset() == FileEdit.END_OF_FILE ? newData.length : edit.getOffset();
+            if ((data == null) || (offset < 0) || (edit.getLength() < 0)
+                    || ((offset + edit.getLength()) > newData.length)) {
+                throw new FileException("Edit at offset " + edit.getOffset() + " lies outside of the file.");
+            }
+            final int start = (int) offset;
+            if (data.length == edit.getLength()) {
+                if (!ByteBuffer.wrap(newData, start, data.length).equals(ByteBuffer.wrap(data))) {
+                    if (newData == oldData) {
+                        newData = Arrays.copyOf(oldData, oldData.length);
+                    }
+                    System.arraycopy(data, 0, newData, start, data.length);
+                }
+            } else {
+                final byte[] resized = new byte[(newData.length - edit.getLength()) + data.length];
+                System.arraycopy(newData, 0, resized, 0, start);
+                System.arraycopy(data, 0, resized, start, data.length);
+                System.arraycopy(newData, start + edit.getLength(), resized, start + data.length,
+                        newData.length - start - edit.getLength());
+                newData = resized;
+            }
+        }
+        return newData;
+    }
+
+    /**
+     * Replaces the data of this file by atomically moving the given file into place. <br/>
+     * Lock used: <i>Write</i> <br/>
+     * Note: readers either see the old or the new contents, never a partially written file.
+     *
+     * @param source
+     *            The file holding the new contents. It must reside on the same disk as the file system.
+     * @throws FileException
+     *             If this file was deleted before it could be replaced.
+     */
+    public void replace(final Path source) throws FileException {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.isActive) {
+                /**
+                 * Note: the new contents must be durable on disk before the change is logged, since the log record
+                 * does not carry them.
+                 */
+                final Path target = Paths.get(this.absolutePath);
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                WriteAheadLog.forceDirectory(target.getParent());
+                this.unwrittenData = null;
+                this.mapping = null;
+                ContentCache.getInstance().remove(this);
+                this.version = ContentVersion.of(target);
+                this.diskVersion = this.version;
+                this.lastLsn = WriteAheadLog.getInstance().logReplace(this.name, this.version);
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockWrite(stamp);
         }
     }
 
     /**
      * Deletes this file. <br/>
      * Lock used: <i>Write</i> <br/>
-     * Note: This object will still exist, but it will be marked as inactive and the file will be deleted.
+     * Note: This object will still exist, but it will be marked as inactive. The file on disk is left in place until
+     * the deletion is durable in the log (see removeFromDisk()), so that a crash can never lose a file whose deletion
+     * was not acknowledged.
      *
      * @throws FileException
      *             If this file was already deleted by another process.
      */
     public void delete() throws FileException {
-        this.lock.writeLock().lock();
+        final long stamp = this.lock.writeLock();
         try {
             if (this.isActive) {
-                Files.delete(Paths.get(this.absolutePath));
-                this.cachedFile = null;
+                this.lastLsn = WriteAheadLog.getInstance().logDelete(this.name);
+                this.unwrittenData = null;
+                this.mapping = null;
+                ContentCache.getInstance().remove(this);
                 this.isActive = false;
             } else {
                 throw new FileException("This file no longer exists.");
             }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the file on disk of this deleted file. <br/>
+     * Lock used: <i>Write</i> <br/>
+     * Note: must only be called once the deletion is durable, and only if no other file took the name it is stored
+     * under on disk in the meantime (see getDiskName()).
+     *
+     * @throws FileException
+     *             If the file on disk could not be removed.
+     */
+    public void removeFromDisk() throws FileException {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (!this.isActive) {
+                Files.deleteIfExists(Paths.get(this.absolutePath));
+            }
+        } catch (IOException | SecurityException e) {
+            throw new FileException(e);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the name under which this file is stored on disk. It differs from the name of this file until a rename
+     * was moved on disk (see moveOnDisk()), and no longer changes once this file was deleted. <br/>
+     * Lock used: <i>Read</i>
+     *
+     * @return The name of the file on disk.
+     */
+    public String getDiskName() {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.absolutePath.substring(FILE_PATH_PREFIX.length());
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Renames this file. Only metadata changes: the file keeps its contents in memory, and is moved on disk by
+     * moveOnDisk() once the rename is durable. <br/>
+     * Lock used: <i>Write</i> <br/>
+     * Note: pending changes are not written here, so that the cost of a rename does not depend on the size of the file.
+     * The next checkpoint after the move writes them under the new name.
+     *
+     * @param newName
+     *            The new name of the file.
+     * @throws FileException
+     *             If this file was deleted before it could be renamed, or if it was not moved on disk yet by an earlier
+     *             rename.
+     */
+    public void rename(final String newName) throws FileException {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.isActive) {
+                if (this.isMoving()) {
+                    throw new FileException("This file is still being moved by another rename.");
+                }
+
+                /**
+                 * The file may only be moved once the rename is durable, see WriteAheadLog.logRename(). It stays dirty
+                 * until then, so that no checkpoint removes the record before the file was moved.
+                 */
+                this.markDirty();
+                this.lastLsn = WriteAheadLog.getInstance().logRename(this.name, newName, this.version);
+                this.name = newName;
+            } else {
+                throw new FileException("This file no longer exists.");
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves the file on disk to the current name of this file, which completes a rename. <br/>
+     * Lock used: <i>Write</i> <br/>
+     * Note: must only be called once the rename is durable. A file which was not written to disk yet has nothing to
+     * move, it is written under its new name by the next checkpoint.
+     *
+     * @return True if the file was moved, or false if it was deleted in the meantime.
+     * @throws FileException
+     *             If the file could not be moved on disk.
+     */
+    public boolean moveOnDisk() throws FileException {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.isActive) {
+                final Path source = Paths.get(this.absolutePath);
+                if ((this.unwrittenData == null) || Files.exists(source)) {
+                    final Path target = Paths.get(FILE_PATH_PREFIX + this.name);
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                    WriteAheadLog.forceDirectory(target.getParent());
+                }
+                this.absolutePath = FILE_PATH_PREFIX + this.name;
+                return true;
+            } else {
+                return false;
+            }
         } catch (IOException | SecurityException e) {
             throw new FileException(e);
         } finally {
-            this.lock.writeLock().unlock();
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Waits until the last change of this file is durable in the log. <br/>
+     * Note: callers should wait outside of any lock, so that concurrent changes can be committed together.
+     *
+     * @throws FileException
+     *             If the log could not be flushed.
+     */
+    public void awaitDurable() throws FileException {
+        WriteAheadLog.getInstance().awaitDurable(this.lastLsn);
+    }
+
+    /**
+     * Writes the in-memory copy of this file to disk, if it changed since it was last written. <br/>
+     * Lock used: <i>Read</i> <br/>
+     * The data is written atomically (see WriteAheadLog.writeAtomically()), and only once the changes it contains are
+     * durable in the log. <br/>
+     * Note: the whole file is rewritten, even if only a small region was patched. Writing just the patched regions in
+     * place would save I/O on large files, but a crash in the middle of such a write leaves contents behind which match
+     * no logged version, so recovery could no longer tell which records the file already reflects. The cost is bounded
+     * instead: a file is rewritten at most once per checkpoint, however many patches it received in between.
+     *
+     * @return True if the file on disk is up to date, or false if it can not be written before a rename moved it.
+     * @throws FileException
+     *             If the file could not be written.
+     */
+    public boolean checkpoint() throws FileException {
+        final long stamp = this.lock.readLock();
+        try {
+            if (this.isActive && this.isMoving()) {
+                /**
+                 * Note: the file must not be written under its old name once the rename is logged.
+                 */
+                return false;
+            }
+            if (this.isActive && (this.unwrittenData != null)) {
+                final Object event = FlightRecorderEvent.FILE_WRITE.begin();
+                final long size = this.unwrittenData.length;
+                this.writeToDisk();
+                if (event != null) {
+                    FlightRecorderEvent.FILE_WRITE.commit(event, this.name, size, "checkpoint");
+                }
+            }
+            return true;
+        } catch (IOException | SecurityException e) {
+            throw new FileException("Error occurred while writing file to disk.", e);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the in-memory copy of this file to disk. Note: must be called while holding the lock, and only if there is
+     * an in-memory copy. <br/>
+     * The version of the written contents is logged first, see WriteAheadLog.logWrite(). Waiting for that record also
+     * makes all earlier changes of this file durable.
+     *
+     * @throws IOException
+     *             If the file could not be written.
+     * @throws FileException
+     *             If the log could not be written or flushed.
+     */
+    private void writeToDisk() throws IOException, FileException {
+        final byte[] data = this.unwrittenData;
+        final String writtenVersion = ContentVersion.of(data);
+        final WriteAheadLog log = WriteAheadLog.getInstance();
+        log.awaitDurable(log.logWrite(this.name, writtenVersion));
+        WriteAheadLog.writeAtomically(Paths.get(this.absolutePath), data);
+        this.diskVersion = writtenVersion;
+        this.markWritten();
+    }
+
+    /**
+     * Returns whether this file was renamed, but not moved on disk yet. Note: must be called while holding the lock.
+     *
+     * @return True if the file on disk is still stored under an older name.
+     */
+    private boolean isMoving() {
+        return !this.absolutePath.equals(FILE_PATH_PREFIX + this.name);
+    }
+
+    /**
+     * Registers this file for the next checkpoint. Note: must be called before the change is logged.
+     */
+    private void markDirty() {
+        WriteAheadLog.getInstance().markDirty(this);
+    }
+
+    /**
+     * Hands the contents which were just written to disk over to the ContentCache, unless they are large enough to be
+     * mapped. Note: must be called while holding the lock. The contents are cached before they are cleared here, so
+     * that concurrent readers always find them in one of both places, or on disk.
+     */
+    private void markWritten() {
+        if (this.unwrittenData.length < MAPPED_READ_MIN_BYTES) {
+            ContentCache.getInstance().put(this, this.unwrittenData);
         }
+        this.unwrittenData = null;
     }
 }
\ No newline at end of file
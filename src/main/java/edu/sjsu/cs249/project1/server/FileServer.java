@@ -1,18 +1,31 @@
 package edu.sjsu.cs249.project1.server;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import edu.sjsu.cs249.project1.remote.BatchResult;
 import edu.sjsu.cs249.project1.remote.ClientCallback;
+import edu.sjsu.cs249.project1.remote.FileEdit;
+import edu.sjsu.cs249.project1.remote.FileHandle;
 import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.remote.ListPage;
+import edu.sjsu.cs249.project1.remote.OpenResult;
 
 /**
  * The FileServer is the entry point into the Server operations from a Client. <br/>
@@ -21,6 +34,9 @@ import edu.sjsu.cs249.project1.remote.FileServerService;
 public class FileServer extends UnicastRemoteObject implements FileServerService {
     private static final long serialVersionUID = -6819647968679623776L;
     private static final String EXCEPTION_MESSAGE = "Operation fault";
+    private static final int INDEX_THREADS = Integer.getInteger("fileserver.startup.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final int INDEX_BATCH_SIZE = 1024;
 
     public FileServer() throws RemoteException {
         super();
@@ -38,27 +54,93 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         }
 
         /**
-         * Load existing files on the file system.
+         * Replay the changes which were logged but not yet written to the files before the server went down.
          */
-        System.out.println("Loading existing files on the file system...");
-
-        try {
-            Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
-                    final String fileName = file.toFile().getName();
-                    System.out.println("Reading " + fileName);
-                    try {
-                        FileSystem.getInstance().createFile(fileName, Files.readAllBytes(file));
-                    } catch (final FileException e) {
-                        e.printStackTrace();
-                    }
-                    return FileVisitResult.CONTINUE;
+        try {
+            WriteAheadLog.getInstance().recover();
+        } catch (final FileException e) {
+            throw new RemoteException("Could not recover the file system.", e);
+        }
+
+        /**
+         * Index the existing files on the file system. <br/>
+         * Note: only the names are collected here, the contents are read when a file is first used. The entries are
+         * checked in batches on several threads, so that a large directory is not indexed one stat at a time.
+         */
+        System.out.println("Indexing existing files on the file system...");
+        final long startTime = System.nanoTime();
+        final ExecutorService indexers = Executors.newFixedThreadPool(INDEX_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "file-indexer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(basePath)) {
+            final List<Future<?>> batches = new ArrayList<>();
+            List<Path> batch = new ArrayList<>(INDEX_BATCH_SIZE);
+            for (final Path path : paths) {
+                /**
+                 * Hidden entries hold server bookkeeping (e.g. staged uploads), not hosted files.
+                 */
+                if (!path.getFileName().toString().startsWith(".")) {
+                    batch.add(path);
+                }
+                if (batch.size() == INDEX_BATCH_SIZE) {
+                    batches.add(indexers.submit(this.indexFiles(batch)));
+                    batch = new ArrayList<>(INDEX_BATCH_SIZE);
                 }
-            });
-        } catch (final IOException e) {
+            }
+            batches.add(indexers.submit(this.indexFiles(batch)));
+            for (final Future<?> future : batches) {
+                future.get();
+            }
+        } catch (IOException | ExecutionException e) {
             e.printStackTrace();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            indexers.shutdown();
         }
+        System.out.println("Indexed " + FileSystem.getInstance().getFileCount() + " files in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms.");
+    }
+
+    /**
+     * Returns a task which adds the given files to the file system without reading their contents.
+     *
+     * @param paths
+     *            The paths of the files to index.
+     * @return The task.
+     */
+    private Runnable indexFiles(final List<Path> paths) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (final Path path : paths) {
+                    if (Files.isRegularFile(path)) {
+                        FileSystem.getInstance().loadFile(path.getFileName().toString());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the ID of a client which calls the server, and registers the client again if it was evicted. A client
+     * which calls the server is alive, so it should not fail every call until it is restarted.
+     *
+     * @param client
+     *            The client callback.
+     * @return The ID of the client.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    private static String getClientId(final ClientCallback client) throws RemoteException {
+        final String clientId = client.getId();
+        ClientCacheManager.getInstance().readmitClient(clientId, client);
+        return clientId;
     }
 
     /**
@@ -99,6 +181,18 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         }
     }
 
+    /**
+     * Returns the duration of the cache lease which the server grants whenever a client opens or creates a file.
+     *
+     * @return The lease duration in milliseconds.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public long getCacheLeaseDuration() throws RemoteException {
+        return ClientCacheManager.getInstance().getLeaseDuration();
+    }
+
     /**
      * Returns a set composed of the names of all files currently being hosted on the file system.
      *
@@ -111,12 +205,30 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         return FileSystem.getInstance().getFileNames();
     }
 
+    /**
+     * Returns one page of the names of the files currently being hosted on the file system, in sorted order.
+     *
+     * @param prefix
+     *            Only names starting with this prefix are listed. Null or empty to list all names.
+     * @param cursor
+     *            The cursor returned with the previous page, or null to start at the first name.
+     * @param limit
+     *            The maximum number of names to return. The server may return fewer.
+     * @return The page of names.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public ListPage listFiles(final String prefix, final String cursor, final int limit) throws RemoteException {
+        return FileSystem.getInstance().listFileNames(prefix, cursor, limit);
+    }
+
     /**
      * Create a new file on the server. <br/>
      * Process of file creation: <br/>
      * 1. If the name already exists, prompt for a different name. <br/>
-     * 2. If the name does not already exist, create the file on the server. <br/>
-     * 3. Register the client in ClientCacheManager.
+     * 2. Grant the client a cache lease in ClientCacheManager. <br/>
+     * 3. If the name does not already exist, create the file on the server.
      *
      * @param client
      *            The client creating the file.
@@ -132,26 +244,62 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         final FileSystem fileSystem = FileSystem.getInstance();
         try {
             /**
-             * Create the file.
+             * Grant the client a cache lease. Note: this happens before the file is created so that a concurrent edit
+             * can never slip in between without invalidating this client.
              */
-            fileSystem.createFile(fileName, data);
+            ClientCacheManager.getInstance().registerCachedFile(getClientId(client), fileName);
 
             /**
-             * Start tracking the cache of this client.
+             * Create the file.
              */
-            ClientCacheManager.getInstance().registerCachedFile(client.getId(), fileName);
+            fileSystem.createFile(fileName, data);
         } catch (final FileException | CacheException e) {
             e.printStackTrace();
             throw new RemoteException(EXCEPTION_MESSAGE, e);
         }
     }
 
+    /**
+     * Create several new files on the server in one call. <br/>
+     * The client is granted a cache lease on all files in one pass before any of them is created, then each file is
+     * created exactly like createFile().
+     *
+     * @param client
+     *            The client creating the files.
+     * @param files
+     *            The files to create. Structure: file name -> contents.
+     * @return The result of each file.
+     * @throws RemoteException
+     *             If any RMI error occurs, or if the client is not registered.
+     */
+    @Override
+    public BatchResult<Void> createFiles(final ClientCallback client, final Map<String, byte[]> files)
+            throws RemoteException {
+        try {
+            ClientCacheManager.getInstance().registerCachedFiles(getClientId(client), files.keySet());
+        } catch (final CacheException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+        final BatchResult<Void> result = new BatchResult<>();
+        for (final Map.Entry<String, byte[]> file : files.entrySet()) {
+            try {
+                FileSystem.getInstance().createFile(file.getKey(), file.getValue());
+                result.addValue(file.getKey(), null);
+            } catch (final FileException e) {
+                e.printStackTrace();
+                result.addFailure(file.getKey(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
     /**
      * Read a file from the server. <br/>
      * Process of file read: <br/>
      * 1. If the file does not exist, print an error message. <br/>
-     * 2. If the file does exist, search Singleton FileSystem and return file data as a byte array. 3. Register the
-     * client in ClientCacheManager.
+     * 2. Grant the client a cache lease in ClientCacheManager. <br/>
+     * 3. If the file does exist, search Singleton FileSystem and return file data as a byte array.
      *
      * @param client
      *            The client opening the file.
@@ -165,16 +313,141 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
     public byte[] openFile(final ClientCallback client, final String fileName) throws RemoteException {
         try {
             /**
-             * Read the file.
+             * Grant the client a cache lease. Note: this happens before the read so that a concurrent edit can never
+             * slip in between without invalidating this client.
              */
-            final byte[] result = FileSystem.getInstance().readFile(fileName);
+            ClientCacheManager.getInstance().registerCachedFile(getClientId(client), fileName);
 
             /**
-             * Start tracking the cache of this client.
+             * Read the file.
              */
-            ClientCacheManager.getInstance().registerCachedFile(client.getId(), fileName);
+            return FileSystem.getInstance().readFile(fileName);
+        } catch (final FileException | CacheException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Open a file on the server, unless the client already holds its current version. <br/>
+     * The client is granted a cache lease on the file before it is read, exactly like openFile().
+     *
+     * @param client
+     *            The client opening the file.
+     * @param fileName
+     *            The name of the file to read.
+     * @param knownVersion
+     *            The version of the copy held by the client, or null if it holds none.
+     * @return Either "not modified", or the current contents of the file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public OpenResult openFileIfChanged(final ClientCallback client, final String fileName, final String knownVersion)
+            throws RemoteException {
+        try {
+            ClientCacheManager.getInstance().registerCachedFile(getClientId(client), fileName);
+            return FileSystem.getInstance().readFileIfChanged(fileName, knownVersion);
+        } catch (final FileException | CacheException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Open several files on the server in one call. <br/>
+     * The client is granted a cache lease on all files in one pass before any of them is read, then each file is read
+     * exactly like openFile().
+     *
+     * @param client
+     *            The client opening the files.
+     * @param fileNames
+     *            The names of the files to read.
+     * @return The result of each file, with its contents and version.
+     * @throws RemoteException
+     *             If any RMI error occurs, or if the client is not registered.
+     */
+    @Override
+    public BatchResult<OpenResult> openFiles(final ClientCallback client, final List<String> fileNames)
+            throws RemoteException {
+        try {
+            ClientCacheManager.getInstance().registerCachedFiles(getClientId(client), fileNames);
+        } catch (final CacheException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+        final BatchResult<OpenResult> result = new BatchResult<>();
+        for (final String fileName : fileNames) {
+            try {
+                result.addValue(fileName, FileSystem.getInstance().readFileIfChanged(fileName, null));
+            } catch (final FileException e) {
+                e.printStackTrace();
+                result.addFailure(fileName, e.getMessage());
+            }
+        }
+        return result;
+    }
 
-            return result;
+    /**
+     * Revalidate files which a client still holds from an earlier session. <br/>
+     * The client is granted a cache lease on every file before its version is compared, exactly like openFile().
+     *
+     * @param client
+     *            The client revalidating its files.
+     * @param knownVersions
+     *            The files to revalidate. Structure: file name -> version held by the client.
+     * @return The names of the files which are still current.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public Set<String> revalidateFiles(final ClientCallback client, final Map<String, String> knownVersions)
+            throws RemoteException {
+        final String clientId = getClientId(client);
+        final Set<String> currentFiles = new HashSet<>();
+        try {
+            for (final Map.Entry<String, String> knownVersion : knownVersions.entrySet()) {
+                ClientCacheManager.getInstance().registerCachedFile(clientId, knownVersion.getKey());
+                try {
+                    if (FileSystem.getInstance().getFileVersion(knownVersion.getKey())
+                            .equals(knownVersion.getValue())) {
+                        currentFiles.add(knownVersion.getKey());
+                    }
+                } catch (final FileException e) {
+                    /**
+                     * The file no longer exists, so the client's copy is not current.
+                     */
+                }
+            }
+        } catch (final CacheException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+        return currentFiles;
+    }
+
+    /**
+     * Read a range of a file from the server. <br/>
+     * The client is granted a cache lease on the file before the range is read, exactly like openFile().
+     *
+     * @param client
+     *            The client reading the file.
+     * @param fileName
+     *            The name of the file to read.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The bytes read.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public byte[] readFileRange(final ClientCallback client, final String fileName, final long offset,
+            final int length) throws RemoteException {
+        try {
+            ClientCacheManager.getInstance().registerCachedFile(getClientId(client), fileName);
+            return FileSystem.getInstance().readFile(fileName, offset, length);
         } catch (final FileException | CacheException e) {
             e.printStackTrace();
             throw new RemoteException(EXCEPTION_MESSAGE, e);
@@ -203,6 +476,30 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         }
     }
 
+    /**
+     * Delete several files from the server in one call. Each file is deleted exactly like removeFile().
+     *
+     * @param fileNames
+     *            The names of the files to delete.
+     * @return The result of each file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public BatchResult<Void> removeFiles(final List<String> fileNames) throws RemoteException {
+        final BatchResult<Void> result = new BatchResult<>();
+        for (final String fileName : fileNames) {
+            try {
+                FileSystem.getInstance().deleteFile(fileName);
+                result.addValue(fileName, null);
+            } catch (final FileException e) {
+                e.printStackTrace();
+                result.addFailure(fileName, e.getMessage());
+            }
+        }
+        return result;
+    }
+
     /**
      * Edit the contents of a file on the server. <br/>
      * Note: FileSystem will invalidate relevant client caches.
@@ -227,6 +524,58 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
         }
     }
 
+    /**
+     * Patch the contents of a file on the server. <br/>
+     * Note: FileSystem will invalidate relevant client caches.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param edits
+     *            The edits to apply, in order.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public void patchFile(final String fileName, final List<FileEdit> edits) throws RemoteException {
+        try {
+            /**
+             * Patch the file.
+             */
+            FileSystem.getInstance().patchFile(fileName, edits);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Patch the contents of a file on the server, provided it still has the given version. <br/>
+     * Note: FileSystem will invalidate relevant client caches.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param baseVersion
+     *            The version of the contents the edits were computed against.
+     * @param edits
+     *            The edits to apply, in order.
+     * @return True if the edits were applied, or false if the file no longer has the base version.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public boolean patchFile(final String fileName, final String baseVersion, final List<FileEdit> edits)
+            throws RemoteException {
+        try {
+            /**
+             * Patch the file, unless it was changed since the caller read it.
+             */
+            return FileSystem.getInstance().patchFile(fileName, baseVersion, edits);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
     /**
      * Rename a file on the server. <br/>
      * Note: FileSystem will invalidate relevant client caches.
@@ -250,4 +599,132 @@ public class FileServer extends UnicastRemoteObject implements FileServerService
             throw new RemoteException(EXCEPTION_MESSAGE, e);
         }
     }
+
+    /**
+     * Open a file for a chunked read.
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @return A handle to the file snapshot, including its size.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public FileHandle openReadHandle(final String fileName) throws RemoteException {
+        try {
+            return TransferManager.getInstance().openRead(fileName);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Read a chunk of a file opened with openReadHandle().
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The bytes read, or an empty array once offset reaches the end of the file.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public byte[] readChunk(final long handleId, final long offset, final int length) throws RemoteException {
+        try {
+            return TransferManager.getInstance().readChunk(handleId, offset, length);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Close a read handle and release the server resources held by it.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public void closeReadHandle(final long handleId) throws RemoteException {
+        TransferManager.getInstance().closeRead(handleId);
+    }
+
+    /**
+     * Start a chunked upload.
+     *
+     * @param fileName
+     *            The name of the file to create or replace.
+     * @return The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public long beginUpload(final String fileName) throws RemoteException {
+        try {
+            return TransferManager.getInstance().beginUpload(fileName);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Upload a chunk of a file at the given offset.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @param offset
+     *            The position in the file at which the chunk starts.
+     * @param data
+     *            The contents of the chunk.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public void uploadChunk(final long uploadId, final long offset, final byte[] data) throws RemoteException {
+        try {
+            TransferManager.getInstance().writeChunk(uploadId, offset, data);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Commit an upload, atomically creating or replacing the file. <br/>
+     * Note: FileSystem will invalidate relevant client caches.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public void commitUpload(final long uploadId) throws RemoteException {
+        try {
+            TransferManager.getInstance().commitUpload(uploadId);
+        } catch (final FileException e) {
+            e.printStackTrace();
+            throw new RemoteException(EXCEPTION_MESSAGE, e);
+        }
+    }
+
+    /**
+     * Abort an upload and discard the chunks sent so far.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @throws RemoteException
+     *             If any RMI error occurs.
+     */
+    @Override
+    public void abortUpload(final long uploadId) throws RemoteException {
+        TransferManager.getInstance().abortUpload(uploadId);
+    }
 }
\ No newline at end of file
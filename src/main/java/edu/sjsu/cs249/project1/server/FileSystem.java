@@ -1,9 +1,20 @@
 package edu.sjsu.cs249.project1.server;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import edu.sjsu.cs249.project1.remote.FileEdit;
+import edu.sjsu.cs249.project1.remote.ListPage;
+import edu.sjsu.cs249.project1.remote.OpenResult;
 
 /**
  * This singleton class represents a file system supporting six primary operations. <br/>
@@ -12,20 +23,48 @@ import java.util.concurrent.ConcurrentHashMap;
  * 3. Read a file <br/>
  * 4. Modify a file <br/>
  * 5. Rename a file <br/>
- * 6. List all files
+ * 6. List all files, or a page of them
  *
  * @author David Fisher
  */
 public class FileSystem {
     private static final FileSystem INSTANCE = new FileSystem();
 
+    /**
+     * Number of locks which the names of the file system are spread over. Must be a power of two.
+     */
+    private static final int NAME_LOCK_STRIPES = 256;
+
+    /**
+     * Largest number of names returned in one page of a listing. Can be overridden with the fileserver.list.maxPageSize
+     * system property.
+     */
+    private static final int MAX_LIST_PAGE_SIZE = Integer.getInteger("fileserver.list.maxPageSize", 1000);
+
     private final Map<String, File> fileMap = new ConcurrentHashMap<>();
 
+    /**
+     * The names of fileMap in sorted order, used to page through the names without copying them. Note: updated
+     * together with fileMap while holding the lock of the name, while fileMap stays the structure of record for
+     * lookups.
+     */
+    private final NavigableSet<String> nameIndex = new ConcurrentSkipListSet<>();
+
+    /**
+     * Locks guarding the names of the file system. Operations which take or free a name (create, delete and rename)
+     * synchronize on the lock of that name, see getNameLock(). Operations on unrelated names therefore run
+     * concurrently, unless their names happen to share a lock. The time spent waiting for a lock is recorded in the
+     * ServerMetrics, and long waits as NameLockWait flight recorder events, see recordNameLockWait().
+     */
+    private final Object[] nameLocks = new Object[NAME_LOCK_STRIPES];
+
     /**
      * Singleton class, hide constructor by making it private.
      */
     private FileSystem() {
-
+        for (int i = 0; i < this.nameLocks.length; i++) {
+            this.nameLocks[i] = new Object();
+        }
     }
 
     /**
@@ -37,12 +76,27 @@ public class FileSystem {
         return INSTANCE;
     }
 
+    /**
+     * Adds a file which is already stored on disk to the file system, e.g. when the server starts. Nothing is read,
+     * logged or written; the data is read when it is first needed.
+     *
+     * @param fileName
+     *            The name of the file.
+     */
+    public void loadFile(final String fileName) {
+        this.fileMap.put(fileName, File.load(fileName));
+        this.nameIndex.add(fileName);
+    }
+
     /**
      * Creates a new file with the given name and data in the file system. <br/>
-     * Note: This method is synchronized at method level because we want to pipe all creations into a sequential order.
-     * This is important because for each file, we need to check if the name already exists or not. Imagine the scenario
-     * where two clients try to create a new file with the same name at the same time - this synchronization approach
-     * will properly handle it by performing the creates one at a time.
+     * Note: This method synchronizes on the lock of the name, because for each file we need to check if the name
+     * already exists or not. Imagine the scenario where two clients try to create a new file with the same name at the
+     * same time - this synchronization approach will properly handle it by performing those creates one at a time.
+     * Deletions and renames synchronize on the locks of their names as well, so a name can not be taken by a create
+     * while it is being freed or taken by them. Creations of other names are not held up. <br/>
+     * Note: the method waits for the creation to be durable only after leaving the synchronized block, so that
+     * concurrent creations are committed together.
      *
      * @param fileName
      *            The name to give to the new file.
@@ -51,13 +105,23 @@ public class FileSystem {
      * @throws FileException
      *             If the provided name is null or if a file with the provided name already exists.
      */
-    public synchronized void createFile(final String fileName, final byte[] data) throws FileException {
+    public void createFile(final String fileName, final byte[] data) throws FileException {
         if ((fileName != null) && (data != null)) {
-            if (!this.fileMap.containsKey(fileName)) {
-                this.fileMap.put(fileName, new File(fileName, data));
-            } else {
-                throw new FileException("File with name \"" + fileName + "\" already exists.");
+            final File file;
+            final Object nameLock = this.getNameLock(fileName);
+            final long waitStart = System.nanoTime();
+            final Object waitEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+            synchronized (nameLock) {
+                this.recordNameLockWait(fileName, waitStart, waitEvent);
+                if (!this.fileMap.containsKey(fileName)) {
+                    file = new File(fileName, data);
+                    this.fileMap.put(fileName, file);
+                    this.nameIndex.add(fileName);
+                } else {
+                    throw new FileException("File with name \"" + fileName + "\" already exists.");
+                }
             }
+            file.awaitDurable();
         } else {
             throw new FileException("Both a file name and data are required to create a new file.");
         }
@@ -65,13 +129,15 @@ public class FileSystem {
 
     /**
      * Deletes the file with the given name from the file system. <br/>
-     * Note: This method synchronizes fileMap at object level. This is because we need to lock access to the file system
-     * during the deletion process. This approach properly handles the below scenarios when they occur on the same file:
-     * <br/>
+     * Note: This method synchronizes on the lock of the name. This is because we need to lock access to the name during
+     * the deletion process. This approach properly handles the below scenarios when they occur on the same file: <br/>
      * 1. Two or more delete operations happening concurrently. First operation will succeed, subsequent operations will
      * fail. <br/>
      * 2. A create operation and a delete operation happening concurrently (in either order). <br/>
-     * 3. A read/modify operation and a delete operation happening concurrently (in either order).
+     * 3. A read/modify operation and a delete operation happening concurrently (in either order). <br/>
+     * The deletion is waited for outside of the lock, as in modifyFile(). The file on disk is then removed while
+     * holding the lock of the name it is stored under, unless a new file took that name in the meantime. Client caches
+     * are invalidated after releasing it.
      *
      * @param fileName
      *            The name of the file to delete.
@@ -81,30 +147,84 @@ public class FileSystem {
      */
     public void deleteFile(final String fileName) throws FileException {
         if (fileName != null) {
-            synchronized (this.fileMap) {
+            this.completeDelete(fileName, this.beginDelete(fileName));
+        } else {
+            throw new FileException("A file name is required to delete a file.");
+        }
+    }
+
+    /**
+     * Deletes the file with the given name and removes it from the "directory" (fileMap), the first part of
+     * deleteFile(). <br/>
+     * Note: the server only calls both parts together, they are split so that tests can interleave other operations.
+     *
+     * @param fileName
+     *            The name of the file to delete.
+     * @return The deleted file.
+     * @throws FileException
+     *             If a file with the provided name does not exist, or if the file was already deleted.
+     */
+    File beginDelete(final String fileName) throws FileException {
+        final File file;
+        final Object nameLock = this.getNameLock(fileName);
+        final long waitStart = System.nanoTime();
+        final Object waitEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+        synchronized (nameLock) {
+            this.recordNameLockWait(fileName, waitStart, waitEvent);
+            file = this.fileMap.get(fileName);
+            if (file != null) {
                 /**
-                 * First, remove the file from the "directory" (fileMap).
+                 * First, delete (nullify) the data. Note: delete uses an internal write lock, which handles scenario #3
+                 * listed in deleteFile().
                  */
-                final File file = this.fileMap.remove(fileName);
-                if (file != null) {
-                    /**
-                     * Second, delete (nullify) the data. Note: delete uses an internal write lock, which handles
-                     * scenario #3 listed above.
-                     */
-                    file.delete();
+                file.delete();
 
-                    /**
-                     * Since the file has been deleted, notify the clients to invalidate their cached files.
-                     */
-                    ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
-                } else {
-                    throw new FileException("No file with name \"" + fileName
-                            + "\" exists and therefore cannot be deleted.");
-                }
+                /**
+                 * Second, remove the file from the "directory" (fileMap).
+                 */
+                this.fileMap.remove(fileName);
+                this.nameIndex.remove(fileName);
+            } else {
+                throw new FileException("No file with name \"" + fileName
+                        + "\" exists and therefore cannot be deleted.");
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Removes a deleted file from disk once the deletion is durable, and notifies the clients, the second part of
+     * deleteFile().
+     *
+     * @param fileName
+     *            The name of the deleted file.
+     * @param file
+     *            The file returned by beginDelete().
+     * @throws FileException
+     *             If the deletion could not be made durable, or if the file on disk could not be removed.
+     */
+    void completeDelete(final String fileName, final File file) throws FileException {
+        /**
+         * Third, remove the file on disk once the deletion is durable. A new file with the same name owns the file on
+         * disk, and overwrites it. Note: a file deleted during a rename is still stored under its old name, which the
+         * rename releases, so the lock and the owner of that name are checked rather than those of fileName.
+         */
+        file.awaitDurable();
+        final String diskName = file.getDiskName();
+        final long removeStart = System.nanoTime();
+        final Object removeEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+        synchronized (this.getNameLock(diskName)) {
+            this.recordNameLockWait(diskName, removeStart, removeEvent);
+            final File owner = this.fileMap.get(diskName);
+            if ((owner == null) || (owner == file)) {
+                file.removeFromDisk();
             }
-        } else {
-            throw new FileException("A file name is required to delete a file.");
         }
+
+        /**
+         * Since the file has been deleted, notify the clients to invalidate their cached files.
+         */
+        ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
     }
 
     /**
@@ -139,6 +259,156 @@ public class FileSystem {
         }
     }
 
+    /**
+     * Returns the data of the file with the given name in the file system as a read-only buffer, without copying it.
+     * The buffer keeps showing the data as of this call, even if the file is changed afterwards. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @return The contents of the file.
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, or if the file was
+     *             deleted before it could be read.
+     */
+    public ByteBuffer readFileBuffer(final String fileName) throws FileException {
+        if (fileName != null) {
+            /**
+             * Note: We need to do an atomic "get" here (i.e., not do a containsKey(), then get()) to correctly handle
+             * the synchronization logic in deleteFile().
+             */
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                /**
+                 * Read the file. Note: readBuffer uses an internal read lock.
+                 */
+                return file.readBuffer();
+            } else {
+                throw new FileException("No file with name \"" + fileName + "\" exists and therefore cannot be read.");
+            }
+        } else {
+            throw new FileException("A file name is required to read a file.");
+        }
+    }
+
+    /**
+     * Opens the file with the given name on disk for reading, if it is large and up to date on disk (see
+     * File.openChannel()). <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to open.
+     * @return The channel, which the caller must close, or null if the file should be read with readFileBuffer().
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, or if the file was
+     *             deleted before it could be opened.
+     */
+    public FileChannel openFileChannel(final String fileName) throws FileException {
+        if (fileName != null) {
+            /**
+             * Note: We need to do an atomic "get" here (i.e., not do a containsKey(), then get()) to correctly handle
+             * the synchronization logic in deleteFile().
+             */
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                return file.openChannel();
+            } else {
+                throw new FileException("No file with name \"" + fileName + "\" exists and therefore cannot be read.");
+            }
+        } else {
+            throw new FileException("A file name is required to read a file.");
+        }
+    }
+
+    /**
+     * Reads a range of the data of the file with the given name in the file system. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The bytes read. Fewer bytes than requested are returned if the range extends past the end of the file.
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, if the file was
+     *             deleted before it could be read, or if offset or length is negative.
+     */
+    public byte[] readFile(final String fileName, final long offset, final int length) throws FileException {
+        if (fileName != null) {
+            /**
+             * Note: We need to do an atomic "get" here (i.e., not do a containsKey(), then get()) to correctly handle
+             * the synchronization logic in deleteFile().
+             */
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                /**
+                 * Read the range. Note: read uses an internal read lock.
+                 */
+                return file.read(offset, length);
+            } else {
+                throw new FileException("No file with name \"" + fileName + "\" exists and therefore cannot be read.");
+            }
+        } else {
+            throw new FileException("A file name is required to read a file.");
+        }
+    }
+
+    /**
+     * Returns the version of the file with the given name in the file system. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The version of the contents of the file.
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, or if the file was
+     *             deleted before its version could be determined.
+     */
+    public String getFileVersion(final String fileName) throws FileException {
+        if (fileName != null) {
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                return file.getVersion();
+            } else {
+                throw new FileException("No file with name \"" + fileName + "\" exists.");
+            }
+        } else {
+            throw new FileException("A file name is required to determine the version of a file.");
+        }
+    }
+
+    /**
+     * Reads the data of the file with the given name, unless the caller already holds its current version. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @param knownVersion
+     *            The version held by the caller, or null if it holds none.
+     * @return The outcome of the conditional read.
+     * @throws FileException
+     *             If the file does not exist.
+     */
+    public OpenResult readFileIfChanged(final String fileName, final String knownVersion) throws FileException {
+        if (fileName != null) {
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                return file.readIfChanged(knownVersion);
+            } else {
+                throw new FileException("No file with name \"" + fileName + "\" exists and therefore cannot be read.");
+            }
+        } else {
+            throw new FileException("A file name is required to read a file.");
+        }
+    }
+
     /**
      * Modifies the data of the file with the given name to the given value. <br/>
      * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
@@ -168,7 +438,13 @@ public class FileSystem {
                     /**
                      * Since the file has been modified, notify the clients to invalidate their cached files.
                      */
-                    ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
+                    this.sendCacheInvalidationEvent(fileName, file);
+
+                    /**
+                     * Wait for the change to be durable. Note: this happens outside of the file's lock, so that
+                     * concurrent changes are committed together.
+                     */
+                    file.awaitDurable();
                 }
             } else {
                 throw new FileException("No file with name \"" + fileName
@@ -179,6 +455,130 @@ public class FileSystem {
         }
     }
 
+    /**
+     * Applies a list of edits to the file with the given name. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param edits
+     *            The edits to apply, in order.
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, if the file was
+     *             deleted before it could be patched, or if an edit lies outside of the file.
+     */
+    public void patchFile(final String fileName, final List<FileEdit> edits) throws FileException {
+        this.patchFile(fileName, null, edits);
+    }
+
+    /**
+     * Applies a list of edits to the file with the given name, provided the file still has the given version. <br/>
+     * Note: This method does not require synchronization of the file system structure (fileMap), as the structure is
+     * not changing.
+     *
+     * @param fileName
+     *            The name of the file to patch.
+     * @param baseVersion
+     *            The version of the contents the edits were computed against, or null to apply them to whatever the
+     *            contents are.
+     * @param edits
+     *            The edits to apply, in order.
+     * @return True if the edits were applied, or false if the file no longer has the base version.
+     * @throws FileException
+     *             If the provided name is null, if a file with the provided name does not exist, if the file was
+     *             deleted before it could be patched, or if an edit lies outside of the file.
+     */
+    public boolean patchFile(final String fileName, final String baseVersion, final List<FileEdit> edits)
+            throws FileException {
+        if ((fileName != null) && (edits != null)) {
+            final File file = this.fileMap.get(fileName);
+            if (file != null) {
+                /**
+                 * Apply the edits. Note: patch uses an internal write lock, so all edits are applied atomically, and
+                 * the version is checked under the same lock. <br/>
+                 * If the file was changed, then we need to invalidate client caches.
+                 */
+                final File.PatchResult result = file.patch(baseVersion, edits);
+                if (result == File.PatchResult.CHANGED) {
+                    this.sendCacheInvalidationEvent(fileName, file);
+                    file.awaitDurable();
+                }
+                return result != File.PatchResult.STALE;
+            } else {
+                throw new FileException("No file with name \"" + fileName
+                        + "\" exists and therefore cannot be patched.");
+            }
+        } else {
+            throw new FileException("Both a file name and edits are required to patch an existing file.");
+        }
+    }
+
+    /**
+     * Creates a file with the given name from the given file on disk, or replaces the data of the file if one with
+     * that name already exists. <br/>
+     * Note: This method synchronizes on the lock of the name, so that no create or delete of the same name can slip in
+     * between the check for the file and its creation or replacement.
+     *
+     * @param fileName
+     *            The name of the file to create or replace.
+     * @param source
+     *            The file holding the data, which is moved into the file system.
+     * @throws FileException
+     *             If the provided name is null, or if the data could not be moved into place.
+     */
+    public void createOrReplaceFile(final String fileName, final Path source) throws FileException {
+        if ((fileName != null) && (source != null)) {
+            final File file;
+            final boolean isReplaced;
+            final Object nameLock = this.getNameLock(fileName);
+            final long waitStart = System.nanoTime();
+            final Object waitEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+            synchronized (nameLock) {
+                this.recordNameLockWait(fileName, waitStart, waitEvent);
+                final File existingFile = this.fileMap.get(fileName);
+                if (existingFile != null) {
+                    /**
+                     * Note: the file cannot be deleted concurrently, since deleteFile() removes it from fileMap while
+                     * holding the same lock.
+                     */
+                    existingFile.replace(source);
+                    file = existingFile;
+                    isReplaced = true;
+                } else {
+                    file = new File(fileName, source);
+                    this.fileMap.put(fileName, file);
+                    this.nameIndex.add(fileName);
+                    isReplaced = false;
+                }
+            }
+            if (isReplaced) {
+                this.sendCacheInvalidationEvent(fileName, file);
+            }
+            file.awaitDurable();
+        } else {
+            throw new FileException("Both a file name and data are required to create or replace a file.");
+        }
+    }
+
+    /**
+     * Notifies the clients to invalidate their cached copies of a changed file. <br/>
+     * Note: a file may be renamed while it is being changed through its old name. In that case, the cached copies of
+     * its new name are invalidated as well.
+     *
+     * @param fileName
+     *            The name under which the file was changed.
+     * @param file
+     *            The changed file.
+     */
+    private void sendCacheInvalidationEvent(final String fileName, final File file) {
+        ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
+        final String currentName = file.getName();
+        if (!currentName.equals(fileName)) {
+            ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(currentName);
+        }
+    }
+
     /**
      * Returns the names of all files currently being hosted by the file system.
      *
@@ -191,15 +591,61 @@ public class FileSystem {
         return new HashSet<String>(this.fileMap.keySet());
     }
 
+    /**
+     * Returns the number of files currently being hosted by the file system.
+     *
+     * @return The number of files.
+     */
+    public int getFileCount() {
+        return this.fileMap.size();
+    }
+
+    /**
+     * Returns one page of the names of the files currently being hosted by the file system, in sorted order. <br/>
+     * Note: the page is read straight from the sorted name index, so only the names on the page are copied. The cursor
+     * is the last name of the previous page, which stays a valid starting point even if that name is deleted.
+     *
+     * @param prefix
+     *            Only names starting with this prefix are listed. Null or empty to list all names.
+     * @param cursor
+     *            The cursor returned with the previous page, or null to start at the first name.
+     * @param limit
+     *            The maximum number of names to return. Values which are not positive, or above the maximum page
+     *            size, are replaced by the maximum page size.
+     * @return The page of names.
+     */
+    public ListPage listFileNames(final String prefix, final String cursor, final int limit) {
+        final String namePrefix = prefix != null ? prefix : "";
+        final int pageSize = (limit > 0) && (limit < MAX_LIST_PAGE_SIZE) ? limit : MAX_LIST_PAGE_SIZE;
+        final NavigableSet<String> names = (cursor != null) && (cursor.compareTo(namePrefix) >= 0)
+                ? this.nameIndex.tailSet(cursor, false) : this.nameIndex.tailSet(namePrefix, true);
+
+        final List<String> page = new ArrayList<>(Math.min(pageSize, 64));
+        for (final String name : names) {
+            if (!name.startsWith(namePrefix)) {
+                /**
+                 * Names with the prefix are adjacent in sorted order, so the first name without it ends the listing.
+                 */
+                return new ListPage(page, null);
+            } else if (page.size() == pageSize) {
+                return new ListPage(page, page.get(page.size() - 1));
+            }
+            page.add(name);
+        }
+        return new ListPage(page, null);
+    }
+
     /**
      * Renames a file with a new name. <br/>
-     * Note: This method synchronizes fileMap at object level. This is because we need to lock access to the file system
-     * during the renaming process. This approach properly handles the below scenarios when they occur on the same file:
-     * <br/>
+     * Note: This method synchronizes on the locks of both names, always taking them in the same order so that two
+     * renames between the same names can not deadlock. This is because we need to lock access to both names during the
+     * renaming process. This approach properly handles the below scenarios when they occur on the same file: <br/>
      * 1. Two or more rename operations happening concurrently. First operation will succeed, subsequent operations will
      * fail. <br/>
      * 2. A create operation, a delete operation, and a rename operation happening concurrently (in any order). <br/>
-     * 3. A read/modify operation and a rename operation happening concurrently (in either order).
+     * 3. A read/modify operation and a rename operation happening concurrently (in either order). <br/>
+     * The rename is waited for outside of the locks, as in modifyFile(). The file is reachable under both names until
+     * it was moved on disk, so that no new file can take the old name before it is free on disk.
      *
      * @param fileName
      *            The name of the file to rename.
@@ -212,31 +658,58 @@ public class FileSystem {
      */
     public void renameFile(final String fileName, final String newName) throws FileException {
         if ((fileName != null) && (newName != null)) {
-            synchronized (this.fileMap) {
+            this.completeRename(fileName, newName, this.beginRename(fileName, newName));
+        } else {
+            throw new FileException("Both a file name and a new file name are required to rename a file.");
+        }
+    }
+
+    /**
+     * Renames the file with the given name and adds it to the "directory" (fileMap) under its new name, the first part
+     * of renameFile(). <br/>
+     * Note: the server only calls both parts together, they are split so that tests can interleave other operations.
+     *
+     * @param fileName
+     *            The name of the file to rename.
+     * @param newName
+     *            The new name of the file.
+     * @return The renamed file.
+     * @throws FileException
+     *             If a file with fileName does not exist, if a file with newName already exists, or if the file was
+     *             already deleted.
+     */
+    File beginRename(final String fileName, final String newName) throws FileException {
+        /**
+         * Take the locks of both names in the order of their stripes. Note: both names may share a lock, which is
+         * simply taken twice.
+         */
+        final int fileNameStripe = this.getNameStripe(fileName);
+        final int newNameStripe = this.getNameStripe(newName);
+        final File file;
+        final long waitStart = System.nanoTime();
+        final Object waitEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+        synchronized (this.nameLocks[Math.min(fileNameStripe, newNameStripe)]) {
+            synchronized (this.nameLocks[Math.max(fileNameStripe, newNameStripe)]) {
+                this.recordNameLockWait(fileName, waitStart, waitEvent);
                 /**
                  * First, check if the "directory" (fileMap) already contains a file named as newName.
                  */
                 if (!this.fileMap.containsKey(newName)) {
-                    /**
-                     * Second, remove the file from the "directory" (fileMap).
-                     */
-                    final File file = this.fileMap.remove(fileName);
+                    file = this.fileMap.get(fileName);
 
                     if (file != null) {
                         /**
-                         * Third, re-add the file back to the "directory" (fileMap) using the new name.
+                         * Second, rename the file at the file level. This logs the rename without copying its data.
+                         * The file is moved on disk once the rename is durable.
                          */
-                        this.fileMap.put(newName, new File(newName, file.read()));
+                        file.rename(newName);
 
                         /**
-                         * Fourth, delete the old file at the file level.
+                         * Third, add the same file object, together with its in-memory copy, to the "directory"
+                         * (fileMap) under its new name.
                          */
-                        file.delete();
-
-                        /**
-                         * Since the file has been renamed, notify the clients to invalidate their cached files.
-                         */
-                        ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
+                        this.fileMap.put(newName, file);
+                        this.nameIndex.add(newName);
                     } else {
                         throw new FileException("No file with name \"" + fileName
                                 + "\" exists and therefore cannot be renamed.");
@@ -245,8 +718,90 @@ public class FileSystem {
                     throw new FileException("File with name \"" + newName + "\" already exists.");
                 }
             }
-        } else {
-            throw new FileException("Both a file name and a new file name are required to rename a file.");
+        }
+        return file;
+    }
+
+    /**
+     * Moves a renamed file on disk once the rename is durable, releases its old name, and notifies the clients, the
+     * second part of renameFile().
+     *
+     * @param fileName
+     *            The old name of the file.
+     * @param newName
+     *            The new name of the file.
+     * @param file
+     *            The file returned by beginRename().
+     * @throws FileException
+     *             If the rename could not be made durable, or if the file could not be moved on disk.
+     */
+    void completeRename(final String fileName, final String newName, final File file) throws FileException {
+        /**
+         * Fourth, move the file on disk once the rename is durable, and release the old name. Should the file have been
+         * deleted in the meantime, it is released under both names.
+         */
+        file.awaitDurable();
+        final int fileNameStripe = this.getNameStripe(fileName);
+        final int newNameStripe = this.getNameStripe(newName);
+        final long moveStart = System.nanoTime();
+        final Object moveEvent = FlightRecorderEvent.NAME_LOCK_WAIT.begin();
+        synchronized (this.nameLocks[Math.min(fileNameStripe, newNameStripe)]) {
+            synchronized (this.nameLocks[Math.max(fileNameStripe, newNameStripe)]) {
+                this.recordNameLockWait(fileName, moveStart, moveEvent);
+                final boolean isMoved = file.moveOnDisk();
+                if (this.fileMap.remove(fileName, file)) {
+                    this.nameIndex.remove(fileName);
+                }
+                if (!isMoved && this.fileMap.remove(newName, file)) {
+                    this.nameIndex.remove(newName);
+                }
+            }
+        }
+
+        /**
+         * Since the file has been renamed, notify the clients to invalidate their cached files.
+         */
+        ClientCacheManager.getInstance().sendCacheInvalidationEventToAllClients(fileName);
+    }
+
+    /**
+     * Returns the lock guarding the given name.
+     *
+     * @param fileName
+     *            The name.
+     * @return The lock of the name.
+     */
+    private Object getNameLock(final String fileName) {
+        return this.nameLocks[this.getNameStripe(fileName)];
+    }
+
+    /**
+     * Returns the index of the lock guarding the given name. Note: the high bits of the hash code are spread into the
+     * low bits, as done by HashMap, since only the low bits select the lock.
+     *
+     * @param fileName
+     *            The name.
+     * @return The index of the lock in nameLocks.
+     */
+    private int getNameStripe(final String fileName) {
+        final int hash = fileName.hashCode();
+        return (hash ^ (hash >>> 16)) & (NAME_LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Records the time spent waiting for the lock of a name. Note: must be called right after the lock was taken.
+     *
+     * @param fileName
+     *            The name whose lock was taken.
+     * @param waitStart
+     *            The System.nanoTime() before waiting for the lock.
+     * @param waitEvent
+     *            The flight recorder event started before waiting for the lock, or null.
+     */
+    private void recordNameLockWait(final String fileName, final long waitStart, final Object waitEvent) {
+        ServerMetrics.getInstance().recordNameLockWait(System.nanoTime() - waitStart);
+        if (waitEvent != null) {
+            FlightRecorderEvent.NAME_LOCK_WAIT.commit(waitEvent, fileName);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An event type of the JDK Flight Recorder (JFR), used to profile the hot paths of the server: reads from and writes to
+ * disk, waits for the locks of file names, and invalidation callbacks to clients. <br/>
+ * The event types are defined at runtime through jdk.jfr.EventFactory, since the server is built for Java 8, which
+ * has no JFR API to compile against. On a JVM without JFR every method does nothing. While no recording is running,
+ * begin() only checks whether the event type is enabled, so the events can stay in place at near-zero cost. <br/>
+ * Usage: <br/>
+ * final Object event = FlightRecorderEvent.FILE_WRITE.begin(); <br/>
+ * ... the work to measure ... <br/>
+ * if (event != null) { FlightRecorderEvent.FILE_WRITE.commit(event, fileName, size, "modify"); } <br/>
+ * Note: commit() takes its values as varargs, so the check keeps the array and the boxing off the hot path while no
+ * recording is running. Events of work done under a lock begin once the lock is held, so that they leave out the wait
+ * for it, which NAME_LOCK_WAIT measures for the name locks. <br/>
+ * The events are recorded with e.g. java -XX:StartFlightRecording=filename=server.jfr ... and show up under the
+ * category "CS249 File Server". <br/>
+ * The following system properties can be used to configure the events: <br/>
+ * fileserver.jfr - Whether to define the events at all (default true).
+ */
+public class FlightRecorderEvent {
+    private static final boolean JFR_ENABLED = Boolean.parseBoolean(System.getProperty("fileserver.jfr", "true"));
+    private static final String[] CATEGORY = { "CS249 File Server" };
+
+    /**
+     * The contents of a file were read from disk into memory.
+     */
+    public static final FlightRecorderEvent FILE_READ = new FlightRecorderEvent("FileRead", "File Read",
+            "Contents of a file read from disk", null, new Field(String.class, "fileName", "File Name", false),
+            new Field(long.class, "size", "Size", true));
+
+    /**
+     * A file was changed, i.e. the change was logged, or its contents were written to disk by a checkpoint.
+     */
+    public static final FlightRecorderEvent FILE_WRITE = new FlightRecorderEvent("FileWrite", "File Write",
+            "Change of a file logged or written to disk", null, new Field(String.class, "fileName", "File Name",
+                    false), new Field(long.class, "size", "Size", true), new Field(String.class, "operation",
+                            "Operation", false));
+
+    /**
+     * A file system operation waited for the lock of a file name. Only waits of at least 1 ms are recorded by default.
+     */
+    public static final FlightRecorderEvent NAME_LOCK_WAIT = new FlightRecorderEvent("NameLockWait",
+            "Name Lock Wait", "Wait for the lock of a file name", "1 ms", new Field(String.class, "fileName",
+                    "File Name", false));
+
+    /**
+     * A batch of invalidations was sent to a client, i.e. one remote callback.
+     */
+    public static final FlightRecorderEvent CACHE_INVALIDATION = new FlightRecorderEvent("CacheInvalidation",
+            "Cache Invalidation", "Invalidation callback to a client", null, new Field(String.class, "clientId",
+                    "Client ID", false), new Field(int.class, "fileCount", "File Count", false),
+            new Field(String.class, "fileNames", "File Names", false), new Field(boolean.class, "succeeded",
+                    "Succeeded", false));
+
+    private final Object factory;
+    private final Object eventType;
+    private final int fieldCount;
+
+    /**
+     * Describes one field of an event.
+     */
+    private static class Field {
+        private final Class<?> type;
+        private final String name;
+        private final String label;
+        private final boolean isBytes;
+
+        private Field(final Class<?> type, final String name, final String label, final boolean isBytes) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.isBytes = isBytes;
+        }
+    }
+
+    /**
+     * The reflective handles into jdk.jfr, or null if JFR is not available.
+     */
+    private static class Jfr {
+        private static final Jfr INSTANCE = JFR_ENABLED ? load() : null;
+
+        private final Constructor<?> annotationElement;
+        private final Constructor<?> valueDescriptor;
+        private final Method create;
+        private final Method getEventType;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method begin;
+        private final Method end;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+
+        private Jfr() throws ReflectiveOperationException {
+            final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            this.annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            this.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class,
+                    String.class, List.class);
+            this.create = factoryClass.getMethod("create", List.class, List.class);
+            this.getEventType = factoryClass.getMethod("getEventType");
+            this.newEvent = factoryClass.getMethod("newEvent");
+            this.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+            this.begin = eventClass.getMethod("begin");
+            this.end = eventClass.getMethod("end");
+            this.shouldCommit = eventClass.getMethod("shouldCommit");
+            this.set = eventClass.getMethod("set", int.class, Object.class);
+            this.commit = eventClass.getMethod("commit");
+        }
+
+        private static Jfr load() {
+            try {
+                return new Jfr();
+            } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+                /**
+                 * Note: expected on JVMs without JFR, e.g. most builds of Java 8 before update 262.
+                 */
+                return null;
+            }
+        }
+
+        private Object annotation(final String className, final Object value) throws ReflectiveOperationException {
+            return this.annotationElement.newInstance(Class.forName(className).asSubclass(Annotation.class), value);
+        }
+    }
+
+    /**
+     * Defines a new event type, or nothing if JFR is not available.
+     *
+     * @param name
+     *            The name of the event type, which is prefixed with the package of the server.
+     * @param label
+     *            The human readable name of the event type.
+     * @param description
+     *            What the event represents.
+     * @param threshold
+     *            The minimum duration of the recorded events, e.g. "1 ms", or null to record all of them.
+     * @param fields
+     *            The fields of the event, in the order in which commit() takes their values.
+     */
+    private FlightRecorderEvent(final String name, final String label, final String description,
+            final String threshold, final Field... fields) {
+        this.fieldCount = fields.length;
+        final Jfr jfr = Jfr.INSTANCE;
+        Object newFactory = null;
+        Object newEventType = null;
+        if (jfr != null) {
+            try {
+                final List<Object> annotations = new ArrayList<>(Arrays.asList(
+                        jfr.annotation("jdk.jfr.Name", "edu.sjsu.cs249.project1." + name),
+                        jfr.annotation("jdk.jfr.Label", label),
+                        jfr.annotation("jdk.jfr.Description", description),
+                        jfr.annotation("jdk.jfr.Category", CATEGORY),
+                        jfr.annotation("jdk.jfr.StackTrace", false)));
+                if (threshold != null) {
+                    annotations.add(jfr.annotation("jdk.jfr.Threshold", threshold));
+                }
+                final List<Object> descriptors = new ArrayList<>();
+                for (final Field field : fields) {
+                    final List<Object> fieldAnnotations = new ArrayList<>();
+                    fieldAnnotations.add(jfr.annotation("jdk.jfr.Label", field.label));
+                    if (field.isBytes) {
+                        fieldAnnotations.add(jfr.annotation("jdk.jfr.DataAmount", "BYTES"));
+                    }
+                    descriptors.add(jfr.valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+                }
+                newFactory = jfr.create.invoke(null, annotations, descriptors);
+                newEventType = jfr.getEventType.invoke(newFactory);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.out.println("Could not define flight recorder event \"" + name + "\": " + e);
+                newFactory = null;
+                newEventType = null;
+            }
+        }
+        this.factory = newFactory;
+        this.eventType = newEventType;
+    }
+
+    /**
+     * Starts timing an event, if a recording is running which records this event type.
+     *
+     * @return The started event, to be passed to commit(), or null if the event is not recorded.
+     */
+    public Object begin() {
+        if (this.eventType == null) {
+            return null;
+        }
+        final Jfr jfr = Jfr.INSTANCE;
+        try {
+            if (!(Boolean) jfr.isEnabled.invoke(this.eventType)) {
+                return null;
+            }
+            final Object event = jfr.newEvent.invoke(this.factory);
+            jfr.begin.invoke(event);
+            return event;
+        } catch (final ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops timing an event and records it, unless it is shorter than the threshold of its event type.
+     *
+     * @param event
+     *            The event returned by begin(). Nothing is done if it is null.
+     * @param values
+     *            The values of the fields, in the order in which the event type declares them.
+     */
+    public void commit(final Object event, final Object... values) {
+        if (event == null) {
+            return;
+        }
+        final Jfr jfr = Jfr.INSTANCE;
+        try {
+            jfr.end.invoke(event);
+            if ((Boolean) jfr.shouldCommit.invoke(event)) {
+                for (int i = 0; i < this.fieldCount; i++) {
+                    jfr.set.invoke(event, i, values[i]);
+                }
+                jfr.commit.invoke(event);
+            }
+        } catch (final ReflectiveOperationException e) {
+            /**
+             * Note: profiling must never fail the operation being profiled.
+             */
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This singleton class delivers cache invalidation events to clients using a bounded pool of worker threads. <br/>
+ * Every client owns an outbound InvalidationQueue. Invalidations are merged in that queue while they wait, and a single
+ * delivery task per client drains the queue and sends all pending file names as one batch. A delivery starts after a
+ * short coalescing window, so that a burst of edits reaches each client in a single remote call. <br/>
+ * Every call to a client passes through its CircuitBreaker. While the breaker of a client is open, its invalidations
+ * are dropped without contacting it; its cached copies stay bounded by their leases. The worker pool also runs the
+ * heartbeats which ClientCacheManager sends to idle clients, see ping(). <br/>
+ * The following system properties can be used to tune the dispatcher: <br/>
+ * fileserver.invalidation.threads - Number of worker threads (default 8). <br/>
+ * fileserver.invalidation.queueCapacity - Maximum number of delivery tasks waiting for a worker (default 10000). <br/>
+ * fileserver.invalidation.maxPendingPerClient - Maximum number of distinct file names queued per client (default
+ * 10000). <br/>
+ * fileserver.invalidation.maxRetries - Number of times a failed delivery is retried before it is dropped (default 3).
+ * <br/>
+ * fileserver.invalidation.retryBackoffMillis - Base delay between two delivery attempts (default 100). <br/>
+ * fileserver.invalidation.coalesceWindowMillis - Time to wait for more invalidations before a delivery starts (default
+ * 10, 0 disables the window).
+ */
+public class InvalidationDispatcher {
+    private static final int THREADS = Integer.getInteger("fileserver.invalidation.threads", 8);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("fileserver.invalidation.queueCapacity", 10000);
+    private static final int MAX_PENDING_PER_CLIENT = Integer.getInteger(
+            "fileserver.invalidation.maxPendingPerClient", 10000);
+    private static final int MAX_RETRIES = Integer.getInteger("fileserver.invalidation.maxRetries", 3);
+    private static final long RETRY_BACKOFF_MILLIS = Long.getLong("fileserver.invalidation.retryBackoffMillis", 100L);
+    private static final long COALESCE_WINDOW_MILLIS = Long.getLong("fileserver.invalidation.coalesceWindowMillis",
+            10L);
+
+    private static final InvalidationDispatcher INSTANCE = new InvalidationDispatcher();
+
+    /**
+     * Note: there is at most one delivery task per client, so the task queue only fills up once more clients than
+     * QUEUE_CAPACITY are waiting for a worker at the same time.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Holds deliveries back for the coalescing window, and failed deliveries for their backoff, before they are handed
+     * to the worker pool.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder mergedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+
+    /**
+     * Singleton class, hide constructor by making it private.
+     */
+    private InvalidationDispatcher() {
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable,
+                                "invalidation-dispatcher-" + this.threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "invalidation-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the singleton instance of InvalidationDispatcher.
+     *
+     * @return The singleton instance of InvalidationDispatcher.
+     */
+    public static InvalidationDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a cache invalidation event for the given client and file name. <br/>
+     * Note: this method never blocks on the client. The event is delivered asynchronously by a worker thread.
+     *
+     * @param client
+     *            The client which needs to invalidate its cached copy.
+     * @param fileName
+     *            The name of the file to invalidate.
+     */
+    public void dispatch(final Client client, final String fileName) {
+        final InvalidationQueue queue = client.getInvalidationQueue();
+        switch (queue.offer(fileName, MAX_PENDING_PER_CLIENT)) {
+        case QUEUED:
+            this.queueDepth.incrementAndGet();
+            break;
+        case MERGED:
+            this.mergedCount.increment();
+            break;
+        default:
+            this.droppedCount.increment();
+            System.out.println("Invalidation queue of client \"" + client.getName() + "\" is full - dropped \""
+                    + fileName + "\".");
+            break;
+        }
+        this.schedule(client);
+    }
+
+    /**
+     * Schedules a delivery for the given client at the end of the coalescing window, unless one is already scheduled.
+     *
+     * @param client
+     *            The client to deliver to.
+     */
+    private void schedule(final Client client) {
+        if (client.getInvalidationQueue().markDeliveryScheduled()) {
+            if (COALESCE_WINDOW_MILLIS > 0) {
+                this.scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        InvalidationDispatcher.this.submit(client);
+                    }
+                }, COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                this.submit(client);
+            }
+        }
+    }
+
+    /**
+     * Hands the delivery for the given client to the worker pool.
+     *
+     * @param client
+     *            The client to deliver to.
+     */
+    private void submit(final Client client) {
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    InvalidationDispatcher.this.deliver(client);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            /**
+             * All workers are busy and the task queue is full. Drop the pending batch rather than blocking the file
+             * system operation which triggered the invalidation.
+             */
+            final List<String> fileNames = client.getInvalidationQueue().drain();
+            this.queueDepth.addAndGet(-fileNames.size());
+            this.droppedCount.add(fileNames.size());
+            System.out.println("Invalidation dispatcher is saturated - dropped " + fileNames.size()
+                    + " invalidation(s) for client \"" + client.getName() + "\".");
+            this.finishDelivery(client);
+        }
+    }
+
+    /**
+     * Drains the outbound queue of the given client and delivers all pending file names as one batch. <br/>
+     * Note: this method runs on a worker thread.
+     *
+     * @param client
+     *            The client to deliver to.
+     */
+    private void deliver(final Client client) {
+        final List<String> fileNames = client.getInvalidationQueue().drain();
+        this.queueDepth.addAndGet(-fileNames.size());
+        this.attemptDelivery(client, fileNames, 0, System.nanoTime());
+    }
+
+    /**
+     * Makes one attempt to deliver a batch of invalidations to the given client. The delivery of the client stays
+     * scheduled until the batch was delivered or dropped, also while a retry waits for its backoff. <br/>
+     * Note: this method runs on a worker thread.
+     *
+     * @param client
+     *            The client to deliver to.
+     * @param fileNames
+     *            The names of the files to invalidate.
+     * @param attempt
+     *            The number of attempts which failed before.
+     * @param start
+     *            The System.nanoTime() of the first attempt.
+     */
+    private void attemptDelivery(final Client client, final List<String> fileNames, final int attempt,
+            final long start) {
+        boolean isFinished = true;
+        try {
+            if (client.isActive()) {
+                isFinished = this.send(client, fileNames, attempt, start);
+            } else {
+                this.droppedCount.add(fileNames.size());
+            }
+        } finally {
+            if (isFinished) {
+                this.finishDelivery(client);
+            }
+        }
+    }
+
+    /**
+     * Marks the delivery of the given client as finished, and schedules the next one if more invalidations arrived in
+     * the meantime. <br/>
+     * Note: we resubmit instead of looping so that one busy client cannot monopolize a worker thread.
+     *
+     * @param client
+     *            The client which was delivered to.
+     */
+    private void finishDelivery(final Client client) {
+        if (client.getInvalidationQueue().finishDelivery()) {
+            this.schedule(client);
+        }
+    }
+
+    /**
+     * Sends a batch of invalidations to the given client. A failed attempt is retried after a linear backoff, which
+     * is waited out on the scheduler rather than on the worker thread, so that an unreachable client does not hold up
+     * the deliveries to the other clients.
+     *
+     * @param client
+     *            The client to deliver to.
+     * @param fileNames
+     *            The names of the files to invalidate.
+     * @param attempt
+     *            The number of attempts which failed before.
+     * @param start
+     *            The System.nanoTime() of the first attempt.
+     * @return True if the batch was delivered or dropped, or false if a retry was scheduled.
+     */
+    private boolean send(final Client client, final List<String> fileNames, final int attempt, final long start) {
+        final CircuitBreaker circuitBreaker = client.getCircuitBreaker();
+        if (!circuitBreaker.tryAcquire()) {
+            this.droppedCount.add(fileNames.size());
+            ServerMetrics.getInstance().recordInvalidationDelivery(System.nanoTime() - start, false);
+            System.out.println("Circuit of client \"" + client.getName() + "\" is open - dropped " + fileNames.size()
+                    + " invalidation(s).");
+            return true;
+        }
+        RemoteException failure = null;
+        boolean isDelivered = false;
+        try {
+            client.sendCacheInvalidationEvent(fileNames);
+            isDelivered = true;
+        } catch (final RemoteException e) {
+            failure = e;
+        } finally {
+            /**
+             * Note: the call is also reported if it failed with an unchecked exception. Otherwise a half open breaker
+             * would keep waiting for the outcome of its trial call, and refuse all calls forever.
+             */
+            if (isDelivered) {
+                circuitBreaker.recordSuccess();
+            } else {
+                circuitBreaker.recordFailure();
+            }
+        }
+
+        if (isDelivered) {
+            this.deliveredCount.add(fileNames.size());
+            ServerMetrics.getInstance().recordInvalidationDelivery(System.nanoTime() - start, true);
+            return true;
+        }
+        if (attempt >= MAX_RETRIES) {
+            this.droppedCount.add(fileNames.size());
+            ServerMetrics.getInstance().recordInvalidationDelivery(System.nanoTime() - start, false);
+            System.out.println("Giving up on delivering " + fileNames.size() + " invalidation(s) to client \""
+                    + client.getName() + "\": " + failure.getMessage());
+            return true;
+        }
+        this.retryCount.increment();
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                InvalidationDispatcher.this.submitRetry(client, fileNames, attempt + 1, start);
+            }
+        }, RETRY_BACKOFF_MILLIS * (attempt + 1), TimeUnit.MILLISECONDS);
+        return false;
+    }
+
+    /**
+     * Hands the retry of a failed delivery to the worker pool, once its backoff has passed.
+     *
+     * @param client
+     *            The client to deliver to.
+     * @param fileNames
+     *            The names of the files to invalidate.
+     * @param attempt
+     *            The number of attempts which failed before.
+     * @param start
+     *            The System.nanoTime() of the first attempt.
+     */
+    private void submitRetry(final Client client, final List<String> fileNames, final int attempt, final long start) {
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    InvalidationDispatcher.this.attemptDelivery(client, fileNames, attempt, start);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.droppedCount.add(fileNames.size());
+            ServerMetrics.getInstance().recordInvalidationDelivery(System.nanoTime() - start, false);
+            System.out.println("Invalidation dispatcher is saturated - dropped the retry of " + fileNames.size()
+                    + " invalidation(s) for client \"" + client.getName() + "\".");
+            this.finishDelivery(client);
+        }
+    }
+
+    /**
+     * Checks on a worker thread that the given client is still reachable, unless its circuit breaker is open. The
+     * outcome is reported to the breaker. <br/>
+     * Note: this method never blocks on the client. If all workers are busy, the heartbeat is skipped.
+     *
+     * @param client
+     *            The client to check.
+     */
+    public void ping(final Client client) {
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final CircuitBreaker circuitBreaker = client.getCircuitBreaker();
+                    if (client.isActive() && circuitBreaker.tryAcquire()) {
+                        boolean isReachable = false;
+                        try {
+                            client.ping();
+                            isReachable = true;
+                        } catch (final RemoteException e) {
+                            /**
+                             * Note: reported as a failure below.
+                             */
+                        } finally {
+                            if (isReachable) {
+                                circuitBreaker.recordSuccess();
+                            } else {
+                                circuitBreaker.recordFailure();
+                            }
+                        }
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            /**
+             * Note: the next heartbeat tries again.
+             */
+        }
+    }
+
+    /**
+     * Returns the number of invalidations currently waiting in client queues.
+     *
+     * @return The number of queued invalidations.
+     */
+    public int getQueueDepth() {
+        return this.queueDepth.get();
+    }
+
+    /**
+     * Returns the number of invalidations which were merged into an invalidation already waiting for the same client.
+     *
+     * @return The number of merged invalidations.
+     */
+    public long getMergedCount() {
+        return this.mergedCount.sum();
+    }
+
+    /**
+     * Returns the number of invalidations which were successfully delivered.
+     *
+     * @return The number of delivered invalidations.
+     */
+    public long getDeliveredCount() {
+        return this.deliveredCount.sum();
+    }
+
+    /**
+     * Returns the number of invalidations which were dropped, either because a queue was full or because the client
+     * could not be reached.
+     *
+     * @return The number of dropped invalidations.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of delivery attempts which were retried after a failure.
+     *
+     * @return The number of retried deliveries.
+     */
+    public long getRetryCount() {
+        return this.retryCount.sum();
+    }
+}
\ No newline at end of file
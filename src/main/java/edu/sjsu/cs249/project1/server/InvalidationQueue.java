@@ -0,0 +1,100 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents the outbound queue of cache invalidations waiting to be delivered to a single client. <br/>
+ * Invalidations for the same file are merged while they wait, and all pending file names are drained together so that
+ * they can be delivered as one batch.
+ */
+public class InvalidationQueue {
+    /**
+     * The possible outcomes of offering a file name to the queue.
+     */
+    public enum OfferResult {
+        /**
+         * The file name was added to the queue.
+         */
+        QUEUED,
+        /**
+         * The file name was already pending, so the new invalidation was merged into the existing one.
+         */
+        MERGED,
+        /**
+         * The queue is full and the invalidation was not accepted.
+         */
+        REJECTED
+    }
+
+    private final Set<String> pendingFileNames = new LinkedHashSet<>();
+    private boolean isDeliveryScheduled;
+
+    /**
+     * Offers a file name to this queue.
+     *
+     * @param fileName
+     *            The name of the file to invalidate.
+     * @param capacity
+     *            The maximum number of distinct file names this queue may hold.
+     * @return The outcome of the offer.
+     */
+    public synchronized OfferResult offer(final String fileName, final int capacity) {
+        if (this.pendingFileNames.contains(fileName)) {
+            return OfferResult.MERGED;
+        } else if (this.pendingFileNames.size() >= capacity) {
+            return OfferResult.REJECTED;
+        } else {
+            this.pendingFileNames.add(fileName);
+            return OfferResult.QUEUED;
+        }
+    }
+
+    /**
+     * Marks this queue as scheduled for delivery, unless a delivery is already scheduled or nothing is pending. <br/>
+     * Note: this guarantees that at most one delivery task exists per client at any time.
+     *
+     * @return True if the caller is now responsible for scheduling a delivery, or false otherwise.
+     */
+    public synchronized boolean markDeliveryScheduled() {
+        if (!this.isDeliveryScheduled && !this.pendingFileNames.isEmpty()) {
+            this.isDeliveryScheduled = true;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Removes and returns all pending file names, in the order they were first queued.
+     *
+     * @return The pending file names.
+     */
+    public synchronized List<String> drain() {
+        final List<String> fileNames = new ArrayList<>(this.pendingFileNames);
+        this.pendingFileNames.clear();
+        return fileNames;
+    }
+
+    /**
+     * Marks the current delivery as finished.
+     *
+     * @return True if more file names were queued while the delivery was running and a new delivery must be scheduled,
+     *         or false otherwise.
+     */
+    public synchronized boolean finishDelivery() {
+        this.isDeliveryScheduled = false;
+        return !this.pendingFileNames.isEmpty();
+    }
+
+    /**
+     * Returns the number of file names currently waiting in this queue.
+     *
+     * @return The number of pending file names.
+     */
+    public synchronized int size() {
+        return this.pendingFileNames.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A histogram of latencies in nanoseconds, recorded from many threads without locking. <br/>
+ * Like HdrHistogram, values are counted in buckets whose width grows with the value: every power of two is split into
+ * SUB_BUCKET_COUNT / 2 buckets of equal width, so any recorded value is known to within 1.6%, from nanoseconds up to
+ * hours, in a fixed amount of memory. Used by the ServerMetrics as well as the LoadGenerator.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Structure: bucket index -> number of values. The index of a value v is (b * SUB_BUCKET_COUNT) + (v >>> b), where
+     * b is the number of low bits of v which are dropped, see getIndex().
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(((Long.SIZE - SUB_BUCKET_BITS) + 1) * SUB_BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(final long first, final long second) {
+            return Math.max(first, second);
+        }
+    }, 0);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *            The latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(getIndex(value));
+        this.totalCount.increment();
+        this.totalNanos.add(value);
+        this.maxNanos.accumulate(value);
+    }
+
+    /**
+     * Returns the bucket index of a value.
+     *
+     * @param value
+     *            The value, not negative.
+     * @return The index in counts.
+     */
+    private static int getIndex(final long value) {
+        final int droppedBits = Math.max(0, (Long.SIZE - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS);
+        return (droppedBits * SUB_BUCKET_COUNT) + (int) (value >>> droppedBits);
+    }
+
+    /**
+     * Returns the largest value which is counted in the given bucket.
+     *
+     * @param index
+     *            The bucket index.
+     * @return The largest value of the bucket.
+     */
+    private static long getHighestValue(final int index) {
+        final int droppedBits = index / SUB_BUCKET_COUNT;
+        return (((long) (index % SUB_BUCKET_COUNT) + 1) << droppedBits) - 1;
+    }
+
+    public long getCount() {
+        return this.totalCount.sum();
+    }
+
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMeanNanos() {
+        final long count = this.totalCount.sum();
+        return count > 0 ? (double) this.totalNanos.sum() / count : 0;
+    }
+
+    /**
+     * Returns the latency below or at which the given share of the recorded latencies lie, e.g. 99 for p99.
+     *
+     * @param percentile
+     *            The percentile, between 0 and 100.
+     * @return The latency in nanoseconds, rounded up to the end of its bucket, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long count = this.totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil((percentile / 100) * count));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(getHighestValue(i), this.getMaxNanos());
+            }
+        }
+        return this.getMaxNanos();
+    }
+}
\ No newline at end of file
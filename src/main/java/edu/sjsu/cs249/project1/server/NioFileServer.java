@@ -0,0 +1,169 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
+import edu.sjsu.cs249.project1.remote.FileServerService;
+import edu.sjsu.cs249.project1.remote.MessageConnection;
+
+/**
+ * Serves a FileServerService over the binary MessageConnection protocol instead of RMI. <br/>
+ * Every accepted socket becomes one connection, which carries the calls of the client as well as the callbacks of the
+ * server. Calls of all connections run on a shared pool of worker threads. Download chunks (readChunk) are not copied
+ * through the heap but written straight from the file to the socket, see TransferManager.transferChunk(). <br/>
+ * The acceptor thread is not a daemon, so the server keeps running once main() returns. <br/>
+ * The following system properties can be used to tune the server: <br/>
+ * fileserver.nio.workerThreads - Number of threads which run calls (default 8 per available processor). <br/>
+ * fileserver.nio.bindAddress - Address to listen on (default all interfaces, like the RMI registry). <br/>
+ * fileserver.nio.maxFrameBytes - Largest message accepted from a client, e.g. the contents of a created file (default
+ * 64 MiB).
+ */
+public class NioFileServer {
+    private static final int WORKER_THREADS = Integer.getInteger("fileserver.nio.workerThreads",
+            Runtime.getRuntime().availableProcessors() * 8);
+    private static final String BIND_ADDRESS = System.getProperty("fileserver.nio.bindAddress");
+    private static final int MAX_FRAME_BYTES = Integer.getInteger("fileserver.nio.maxFrameBytes",
+            MessageConnection.DEFAULT_MAX_FRAME_BYTES);
+    private static final Method READ_CHUNK = getReadChunkMethod();
+
+    private final FileServerService service;
+    private final int port;
+    private final ExecutorService workers;
+
+    /**
+     * Instantiates a new NioFileServer. Nothing is accepted until start() is called.
+     *
+     * @param service
+     *            The service which runs the calls, e.g. a FileServer.
+     * @param port
+     *            The port to listen on.
+     */
+    public NioFileServer(final FileServerService service, final int port) {
+        this.service = service;
+        this.port = port;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "nio-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static Method getReadChunkMethod() {
+        try {
+            return FileServerService.class.getMethod("readChunk", long.class, long.class, int.class);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Binds the port and starts the thread which accepts connections. Note: the thread keeps the JVM alive, since
+     * nothing else does once the FileServer is no longer exported to RMI.
+     *
+     * @throws IOException
+     *             If the port could not be bound.
+     */
+    public void start() throws IOException {
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(BIND_ADDRESS != null ? new InetSocketAddress(BIND_ADDRESS, this.port)
+                : new InetSocketAddress(this.port));
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                NioFileServer.this.acceptConnections(serverChannel);
+            }
+        }, "nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Accepts connections until the server socket fails.
+     *
+     * @param serverChannel
+     *            The bound server socket.
+     */
+    private void acceptConnections(final ServerSocketChannel serverChannel) {
+        while (serverChannel.isOpen()) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(true);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                this.newConnection(channel).start();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Creates the connection of an accepted socket, which sends download chunks straight from their files. Callbacks
+     * to the client fail after Client.CALLBACK_TIMEOUT_MILLIS without a reply.
+     *
+     * @param channel
+     *            The accepted socket.
+     * @return The connection, not yet started.
+     */
+    private MessageConnection newConnection(final SocketChannel channel) {
+        final MessageConnection connection = new MessageConnection(channel, FileServerService.class, this.service,
+                ClientCallback.class, this.workers) {
+            @Override
+            protected void dispatch(final long requestId, final Method method, final Object[] args) {
+                if (!READ_CHUNK.equals(method)) {
+                    super.dispatch(requestId, method, args);
+                    return;
+                }
+                NioFileServer.this.workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendChunk(requestId, method, args);
+                    }
+                });
+            }
+
+            /**
+             * Sends a download chunk. If the chunk can not be read, e.g. because the handle is not open, the call
+             * runs as usual, so that the client gets the same exception as with RMI.
+             */
+            private void sendChunk(final long requestId, final Method method, final Object[] args) {
+                final long start = System.nanoTime();
+                final long handleId = (Long) args[0];
+                final long offset = (Long) args[1];
+                final int length;
+                try {
+                    length = TransferManager.getInstance().getChunkLength(handleId, offset, (Integer) args[2]);
+                } catch (final FileException e) {
+                    this.invokeLocal(requestId, method, args);
+                    return;
+                }
+                this.sendBytesReply(requestId, length, new BodyWriter() {
+                    @Override
+                    public void writeTo(final WritableByteChannel target) throws IOException {
+                        try {
+                            TransferManager.getInstance().transferChunk(handleId, offset, length, target);
+                        } catch (final FileException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                });
+                ServerMetrics.getInstance().recordOperation(method.getName(), System.nanoTime() - start, true);
+            }
+        };
+        connection.setCallTimeout(Client.CALLBACK_TIMEOUT_MILLIS);
+        connection.setMaxFrameSize(MAX_FRAME_BYTES);
+        return connection;
+    }
+}
\ No newline at end of file
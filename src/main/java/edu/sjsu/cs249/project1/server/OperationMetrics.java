@@ -0,0 +1,81 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls and failures of one operation and records its latencies, e.g. of one FileServerService method.
+ * Recording takes no lock, so it can be done on every call.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LongAdder errorCount = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Instantiates a new OperationMetrics.
+     *
+     * @param name
+     *            The name of the operation.
+     */
+    public OperationMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a completed call.
+     *
+     * @param nanos
+     *            The duration of the call in nanoseconds.
+     * @param isSucceeded
+     *            False if the call failed.
+     */
+    public void record(final long nanos, final boolean isSucceeded) {
+        this.latencies.record(nanos);
+        if (!isSucceeded) {
+            this.errorCount.increment();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    @Override
+    public long getCallCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return this.errorCount.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return this.latencies.getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return this.latencies.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return this.latencies.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return this.latencies.getValueAtPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return this.latencies.getMaxNanos() / 1e6;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package edu.sjsu.cs249.project1.server;
+
+/**
+ * JMX view of the OperationMetrics of one operation. Latencies are in milliseconds.
+ */
+public interface OperationMetricsMBean {
+    long getCallCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
\ No newline at end of file
@@ -1,30 +1,104 @@
 package edu.sjsu.cs249.project1.server;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.rmi.AlreadyBoundException;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.RMISocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+
+import edu.sjsu.cs249.project1.remote.FileServerService;
 
 /**
  * This class is invoked on startup of the server application. <br/>
- * It is used only to instantiate a FileServer and bind it to the fileService name.
+ * It is used only to instantiate a FileServer and bind it to the fileService name. <br/>
+ * The following system properties can be used to select the transport: <br/>
+ * fileserver.transport - "rmi" to serve clients through Java RMI, or "nio" to serve them over the binary protocol of
+ * NioFileServer (default rmi). <br/>
+ * fileserver.nio.port - Port of the nio transport (default 5100). <br/>
+ * Note: with the rmi transport, the server installs a global RMISocketFactory and sets the sun.rmi.transport.tcp.*
+ * timeouts, see setRmiCallbackTimeout(). Both apply to every RMI connection of the JVM, not just to the callbacks, so
+ * code embedding the server in a process which also makes other RMI calls is affected too.
  */
 public class ServerApplication {
+    private static final String TRANSPORT = System.getProperty("fileserver.transport", "rmi");
+    private static final int NIO_PORT = Integer.getInteger("fileserver.nio.port", 5100);
+
     public static void main(final String[] args) {
         System.out.println("+ Server Started +");
         try {
+            if (!"nio".equals(TRANSPORT)) {
+                setRmiCallbackTimeout();
+            }
+
+            /**
+             * Create a new FileServer, and wrap it so that every call is measured. Clients are served through the
+             * wrapper, so the FileServer itself does not need to stay exported to RMI.
+             */
+            final FileServer fileServer = new FileServer();
+            UnicastRemoteObject.unexportObject(fileServer, true);
+            final FileServerService service = ServerMetrics.getInstance().instrument(fileServer);
+            ServerMetrics.getInstance().export();
+
+            if ("nio".equals(TRANSPORT)) {
+                /**
+                 * Serve the FileServer over the binary protocol only.
+                 */
+                new NioFileServer(service, NIO_PORT).start();
+                System.out.println("Server initialization complete, listening on port " + NIO_PORT + ".");
+                return;
+            }
+
             /**
              * Create registry at 5099.
              */
             final Registry registry = LocateRegistry.createRegistry(5099);
 
             /**
-             * Create a new FileServer and bind it to the name "fileService".
+             * Export the FileServer and bind it to the name "fileService".
              */
-            registry.bind("fileService", new FileServer());
+            registry.bind("fileService", UnicastRemoteObject.exportObject(service, 0));
             System.out.println("Server initialization complete.");
-        } catch (final RemoteException | AlreadyBoundException e) {
+        } catch (final IOException | AlreadyBoundException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Bounds the time the server waits on a client over RMI to Client.CALLBACK_TIMEOUT_MILLIS: for connecting to its
+     * callback, for the handshake of a new connection and for its reply. Without this, a client which crashed or hung
+     * without unregistering would hold the calling thread until TCP gives up. <br/>
+     * Note: the socket factory and the sun.rmi.transport.tcp.* properties are global to the JVM. They bound every
+     * outgoing RMI connection and every reply of the process, including those of the registry, and a response timeout
+     * also cuts off legitimately slow calls. Explicitly set sun.rmi.transport.tcp.* timeouts are kept, so they can be
+     * raised if other RMI traffic shares the process. Must be called before the first remote call, since RMI reads its
+     * timeouts only once.
+     *
+     * @throws IOException
+     *             If another socket factory was already installed.
+     */
+    private static void setRmiCallbackTimeout() throws IOException {
+        for (final String property : new String[] { "sun.rmi.transport.tcp.handshakeTimeout",
+                "sun.rmi.transport.tcp.responseTimeout" }) {
+            if (System.getProperty(property) == null) {
+                System.setProperty(property, String.valueOf(Client.CALLBACK_TIMEOUT_MILLIS));
+            }
+        }
+        RMISocketFactory.setSocketFactory(new RMISocketFactory() {
+            @Override
+            public Socket createSocket(final String host, final int port) throws IOException {
+                final Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), (int) Client.CALLBACK_TIMEOUT_MILLIS);
+                return socket;
+            }
+
+            @Override
+            public ServerSocket createServerSocket(final int port) throws IOException {
+                return new ServerSocket(port);
+            }
+        });
+    }
 }
\ No newline at end of file
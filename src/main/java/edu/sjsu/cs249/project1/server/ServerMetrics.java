@@ -0,0 +1,323 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.sjsu.cs249.project1.remote.FileServerService;
+
+/**
+ * This singleton class collects the metrics of the server: the calls, failures and latencies of every FileServerService
+ * method, the time spent waiting for the locks of file names and delivering invalidations, and gauges of the file
+ * system, the content cache, the registered clients and the invalidation backlog. <br/>
+ * Counters are LongAdders and latencies are recorded into LatencyHistograms, neither of which takes a lock. Gauges are
+ * only computed when they are read. <br/>
+ * All metrics are exported as MBeans under the edu.sjsu.cs249.project1 domain, and optionally in the Prometheus text
+ * format over HTTP at http://localhost:PORT/metrics. The endpoint only listens on the loopback address. <br/>
+ * The following system properties can be used to configure the export: <br/>
+ * fileserver.metrics.jmx - Whether to register the MBeans (default true). <br/>
+ * fileserver.metrics.httpPort - Port of the HTTP endpoint, or 0 to not start it (default 0).
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private static final boolean JMX_ENABLED = Boolean.parseBoolean(System.getProperty("fileserver.metrics.jmx",
+            "true"));
+    private static final int HTTP_PORT = Integer.getInteger("fileserver.metrics.httpPort", 0);
+    private static final String JMX_DOMAIN = "edu.sjsu.cs249.project1";
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    /**
+     * Structure: method name -> metrics. Note: overloads of a method share their metrics.
+     */
+    private final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+
+    /**
+     * Structure: name -> metrics of internal timers, which are not FileServerService methods.
+     */
+    private final Map<String, OperationMetrics> timers = new ConcurrentHashMap<>();
+
+    private final OperationMetrics nameLockWaits = this.getTimer("nameLockWait");
+    private final OperationMetrics invalidationDeliveries = this.getTimer("invalidationDelivery");
+
+    /**
+     * Singleton class, hide constructor by making it private.
+     */
+    private ServerMetrics() {
+
+    }
+
+    /**
+     * Returns the singleton instance of ServerMetrics.
+     *
+     * @return The singleton instance of ServerMetrics.
+     */
+    public static ServerMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private OperationMetrics getTimer(final String name) {
+        final OperationMetrics timer = new OperationMetrics(name);
+        this.timers.put(name, timer);
+        return timer;
+    }
+
+    /**
+     * Returns a FileServerService which records the metrics of every call and passes it on to the given service. <br/>
+     * Note: the returned proxy is what should be exported to the clients, see ServerApplication.
+     *
+     * @param service
+     *            The service to measure, e.g. a FileServer.
+     * @return The measuring service.
+     */
+    public FileServerService instrument(final FileServerService service) {
+        for (final Method method : FileServerService.class.getMethods()) {
+            this.getOperation(method.getName());
+        }
+        return (FileServerService) Proxy.newProxyInstance(FileServerService.class.getClassLoader(),
+                new Class<?>[] { FileServerService.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.invoke(service, args);
+                        }
+                        final long start = System.nanoTime();
+                        boolean isSucceeded = false;
+                        try {
+                            final Object result = method.invoke(service, args);
+                            isSucceeded = true;
+                            return result;
+                        } catch (final InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            ServerMetrics.this.recordOperation(method.getName(), System.nanoTime() - start,
+                                    isSucceeded);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the metrics of an operation, creating them on first use.
+     *
+     * @param name
+     *            The name of the operation.
+     * @return The metrics.
+     */
+    private OperationMetrics getOperation(final String name) {
+        OperationMetrics metrics = this.operations.get(name);
+        if (metrics == null) {
+            final OperationMetrics newMetrics = new OperationMetrics(name);
+            metrics = this.operations.putIfAbsent(name, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Records a call of an operation which is served without going through instrument(), e.g. the download chunks sent
+     * straight from the file by NioFileServer.
+     *
+     * @param name
+     *            The name of the operation.
+     * @param nanos
+     *            The duration of the call in nanoseconds.
+     * @param isSucceeded
+     *            False if the call failed.
+     */
+    public void recordOperation(final String name, final long nanos, final boolean isSucceeded) {
+        this.getOperation(name).record(nanos, isSucceeded);
+    }
+
+    /**
+     * Records the time a file system operation waited for the lock of a file name.
+     *
+     * @param nanos
+     *            The wait in nanoseconds.
+     */
+    public void recordNameLockWait(final long nanos) {
+        this.nameLockWaits.record(nanos, true);
+    }
+
+    /**
+     * Records the time spent delivering a batch of invalidations to a client, including retries.
+     *
+     * @param nanos
+     *            The duration in nanoseconds.
+     * @param isSucceeded
+     *            False if the batch was dropped.
+     */
+    public void recordInvalidationDelivery(final long nanos, final boolean isSucceeded) {
+        this.invalidationDeliveries.record(nanos, isSucceeded);
+    }
+
+    /**
+     * Exports the metrics as configured, i.e. registers the MBeans and starts the HTTP endpoint. <br/>
+     * Note: called once on startup, after instrument().
+     */
+    public void export() {
+        if (JMX_ENABLED) {
+            try {
+                final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=Server"));
+                for (final OperationMetrics operation : this.operations.values()) {
+                    mBeanServer.registerMBean(operation, new ObjectName(JMX_DOMAIN + ":type=Operation,name="
+                            + operation.getName()));
+                }
+                for (final OperationMetrics timer : this.timers.values()) {
+                    mBeanServer.registerMBean(timer, new ObjectName(JMX_DOMAIN + ":type=Timer,name="
+                            + timer.getName()));
+                }
+            } catch (final JMException e) {
+                e.printStackTrace();
+            }
+        }
+        if (HTTP_PORT > 0) {
+            try {
+                final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        HTTP_PORT), 0);
+                server.createContext("/metrics", new HttpHandler() {
+                    @Override
+                    public void handle(final HttpExchange exchange) throws IOException {
+                        final byte[] body = ServerMetrics.this.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                        exchange.sendResponseHeaders(200, body.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            out.write(body);
+                        }
+                    }
+                });
+                server.start();
+                System.out.println("Metrics available at http://localhost:" + HTTP_PORT + "/metrics");
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format.
+     *
+     * @return The metrics.
+     */
+    public String toPrometheusText() {
+        final StringBuilder text = new StringBuilder();
+        text.append("# TYPE fileserver_calls_total counter\n");
+        for (final OperationMetrics operation : this.operations.values()) {
+            appendSample(text, "fileserver_calls_total", "operation", operation.getName(), operation.getCallCount());
+        }
+        text.append("# TYPE fileserver_errors_total counter\n");
+        for (final OperationMetrics operation : this.operations.values()) {
+            appendSample(text, "fileserver_errors_total", "operation", operation.getName(), operation.getErrorCount());
+        }
+        text.append("# TYPE fileserver_call_seconds summary\n");
+        for (final OperationMetrics operation : this.operations.values()) {
+            appendSummary(text, "fileserver_call_seconds", "operation", operation);
+        }
+        text.append("# TYPE fileserver_timer_seconds summary\n");
+        for (final OperationMetrics timer : this.timers.values()) {
+            appendSummary(text, "fileserver_timer_seconds", "timer", timer);
+        }
+        appendGauge(text, "fileserver_files", this.getFileCount());
+        appendGauge(text, "fileserver_cached_bytes", this.getCachedBytes());
+        appendGauge(text, "fileserver_cached_files", this.getCachedFileCount());
+        appendGauge(text, "fileserver_cache_hit_ratio", this.getCacheHitRatio());
+        appendGauge(text, "fileserver_registered_clients", this.getRegisteredClientCount());
+        appendGauge(text, "fileserver_invalidation_queue_depth", this.getInvalidationQueueDepth());
+        text.append("# TYPE fileserver_invalidations_delivered_total counter\n");
+        text.append("fileserver_invalidations_delivered_total ").append(this.getInvalidationsDelivered()).append('\n');
+        text.append("# TYPE fileserver_invalidations_dropped_total counter\n");
+        text.append("fileserver_invalidations_dropped_total ").append(this.getInvalidationsDropped()).append('\n');
+        return text.toString();
+    }
+
+    private static void appendSample(final StringBuilder text, final String metric, final String label,
+            final String value, final long sample) {
+        text.append(metric).append('{').append(label).append("=\"").append(value).append("\"} ").append(sample)
+                .append('\n');
+    }
+
+    private static void appendSummary(final StringBuilder text, final String metric, final String label,
+            final OperationMetrics metrics) {
+        final LatencyHistogram latencies = metrics.getLatencies();
+        for (final double quantile : new double[] { 0.5, 0.99, 0.999 }) {
+            text.append(metric).append('{').append(label).append("=\"").append(metrics.getName())
+                    .append("\",quantile=\"").append(quantile).append("\"} ")
+                    .append(toSeconds(latencies.getValueAtPercentile(quantile * 100))).append('\n');
+        }
+        text.append(metric).append("_sum{").append(label).append("=\"").append(metrics.getName()).append("\"} ")
+                .append(toSeconds(latencies.getTotalNanos())).append('\n');
+        text.append(metric).append("_count{").append(label).append("=\"").append(metrics.getName()).append("\"} ")
+                .append(latencies.getCount()).append('\n');
+    }
+
+    private static void appendGauge(final StringBuilder text, final String metric, final Number value) {
+        text.append("# TYPE ").append(metric).append(" gauge\n").append(metric).append(' ').append(value)
+                .append('\n');
+    }
+
+    private static String toSeconds(final long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    @Override
+    public int getFileCount() {
+        return FileSystem.getInstance().getFileCount();
+    }
+
+    @Override
+    public long getCachedBytes() {
+        return ContentCache.getInstance().getTotalBytes();
+    }
+
+    @Override
+    public int getCachedFileCount() {
+        return ContentCache.getInstance().getEntryCount();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        return ContentCache.getInstance().getHitRatio();
+    }
+
+    @Override
+    public int getRegisteredClientCount() {
+        return ClientCacheManager.getInstance().getRegisteredClientCount();
+    }
+
+    @Override
+    public int getInvalidationQueueDepth() {
+        return InvalidationDispatcher.getInstance().getQueueDepth();
+    }
+
+    @Override
+    public long getInvalidationsDelivered() {
+        return InvalidationDispatcher.getInstance().getDeliveredCount();
+    }
+
+    @Override
+    public long getInvalidationsDropped() {
+        return InvalidationDispatcher.getInstance().getDroppedCount();
+    }
+}
\ No newline at end of file
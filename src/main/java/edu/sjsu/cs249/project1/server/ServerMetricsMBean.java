@@ -0,0 +1,23 @@
+package edu.sjsu.cs249.project1.server;
+
+/**
+ * JMX view of the server-wide gauges of the ServerMetrics. The metrics of each operation are exported separately, see
+ * OperationMetricsMBean.
+ */
+public interface ServerMetricsMBean {
+    int getFileCount();
+
+    long getCachedBytes();
+
+    int getCachedFileCount();
+
+    double getCacheHitRatio();
+
+    int getRegisteredClientCount();
+
+    int getInvalidationQueueDepth();
+
+    long getInvalidationsDelivered();
+
+    long getInvalidationsDropped();
+}
\ No newline at end of file
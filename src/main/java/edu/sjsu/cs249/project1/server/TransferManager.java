@@ -0,0 +1,482 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.sjsu.cs249.project1.remote.FileHandle;
+
+/**
+ * This singleton class manages chunked file transfers. It has two purposes: <br/>
+ * 1. Serves reads of a file snapshot in fixed-size chunks, so that no single reply has to carry the whole file. <br/>
+ * 2. Collects uploaded chunks in a temporary file on disk and atomically moves it into the file system on commit. <br/>
+ * Transfers which are not touched for a while are abandoned by a background sweeper. <br/>
+ * The following system properties can be used to tune the transfers: <br/>
+ * fileserver.transfer.maxChunkSize - Largest chunk returned by a single read (default 4194304). <br/>
+ * fileserver.transfer.idleTimeoutMillis - Time after which an idle transfer is abandoned (default 60000).
+ */
+public class TransferManager {
+    private static final int MAX_CHUNK_SIZE = Integer.getInteger("fileserver.transfer.maxChunkSize", 4 * 1024 * 1024);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("fileserver.transfer.idleTimeoutMillis", 60000L);
+
+    /**
+     * Note: uploads are staged inside the file system directory so that committing is a rename on the same disk.
+     * FileServer skips hidden directories when it loads existing files.
+     */
+    private static final String UPLOAD_PATH_PREFIX = "filesystem/.uploads/";
+
+    private static final TransferManager INSTANCE = new TransferManager();
+
+    private final AtomicLong nextTransferId = new AtomicLong();
+
+    /**
+     * Structure: handle ID -> open read.
+     */
+    private final Map<Long, ReadTransfer> readTransfers = new ConcurrentHashMap<>();
+
+    /**
+     * Structure: upload ID -> open upload.
+     */
+    private final Map<Long, UploadTransfer> uploadTransfers = new ConcurrentHashMap<>();
+
+    /**
+     * A file snapshot which is being read in chunks. Large files which are up to date on disk are read from an open
+     * channel, everything else from a buffer.
+     */
+    private static class ReadTransfer {
+        private final ByteBuffer snapshot;
+        private final FileChannel channel;
+        private final long size;
+        private volatile long lastAccess = System.nanoTime();
+
+        private ReadTransfer(final ByteBuffer snapshot) {
+            this.snapshot = snapshot;
+            this.channel = null;
+            this.size = snapshot.limit();
+        }
+
+        private ReadTransfer(final FileChannel channel, final long size) {
+            this.snapshot = null;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A file which is being uploaded in chunks.
+     */
+    private static class UploadTransfer {
+        private final String fileName;
+        private final Path stagingPath;
+        private final FileChannel channel;
+        private volatile long lastAccess = System.nanoTime();
+
+        private UploadTransfer(final String fileName, final Path stagingPath, final FileChannel channel) {
+            this.fileName = fileName;
+            this.stagingPath = stagingPath;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Singleton class, hide constructor by making it private.
+     */
+    private TransferManager() {
+        /**
+         * Uploads which were never committed before the last shutdown can not be resumed, so remove their leftovers.
+         */
+        final Path uploadPath = Paths.get(UPLOAD_PATH_PREFIX);
+        if (Files.isDirectory(uploadPath)) {
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(uploadPath)) {
+                for (final Path leftover : leftovers) {
+                    Files.deleteIfExists(leftover);
+                }
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "transfer-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                TransferManager.this.sweepIdleTransfers();
+            }
+        }, IDLE_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the singleton instance of TransferManager.
+     *
+     * @return The singleton instance of TransferManager.
+     */
+    public static TransferManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Opens the file with the given name for a chunked read. <br/>
+     * Note: the handle keeps the snapshot returned by File.openChannel() or File.readBuffer(), neither of which is ever
+     * modified in place. The handle therefore keeps serving the contents as of this call, even if the file is modified
+     * while it is being read. Large files are read from an open channel, so only the chunk being read is copied onto
+     * the heap, or none at all with transferChunk().
+     *
+     * @param fileName
+     *            The name of the file to read.
+     * @return A handle to the file snapshot.
+     * @throws FileException
+     *             If the file does not exist, or could not be opened.
+     */
+    public FileHandle openRead(final String fileName) throws FileException {
+        final FileSystem fileSystem = FileSystem.getInstance();
+        final FileChannel channel = fileSystem.openFileChannel(fileName);
+        final ReadTransfer transfer;
+        try {
+            transfer = channel != null ? new ReadTransfer(channel, channel.size())
+                    : new ReadTransfer(fileSystem.readFileBuffer(fileName));
+        } catch (final IOException e) {
+            closeQuietly(channel);
+            throw new FileException(e);
+        }
+        final long id = this.nextTransferId.incrementAndGet();
+        this.readTransfers.put(id, transfer);
+        return new FileHandle(id, transfer.size);
+    }
+
+    /**
+     * Reads a chunk of the file snapshot referred to by the given handle.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read. Replies are capped at the maximum chunk size and at the end of the file.
+     * @return The bytes read, or an empty array if offset is at or beyond the end of the file.
+     * @throws FileException
+     *             If the handle is unknown or the range is invalid.
+     */
+    public byte[] readChunk(final long handleId, final long offset, final int length) throws FileException {
+        final ReadTransfer transfer = this.getReadTransfer(handleId, offset, length);
+        final byte[] chunk = new byte[getChunkLength(transfer, offset, length)];
+        try {
+            this.transfer(transfer, offset, ByteBuffer.wrap(chunk));
+        } catch (final IOException e) {
+            throw new FileException(e);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the number of bytes which a read of the given chunk returns, see readChunk().
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The number of bytes in the chunk.
+     * @throws FileException
+     *             If the handle is unknown or the range is invalid.
+     */
+    public int getChunkLength(final long handleId, final long offset, final int length) throws FileException {
+        return getChunkLength(this.getReadTransfer(handleId, offset, length), offset, length);
+    }
+
+    /**
+     * Writes a chunk of the file snapshot referred to by the given handle straight to a channel, e.g. a socket. Chunks
+     * of large files are sent with FileChannel.transferTo(), so their bytes are never copied into the JVM. <br/>
+     * Note: exactly getChunkLength() bytes are written.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @param target
+     *            The channel to write to.
+     * @throws FileException
+     *             If the handle is unknown or the range is invalid.
+     * @throws IOException
+     *             If the chunk could not be read or written. Part of it may have been written.
+     */
+    public void transferChunk(final long handleId, final long offset, final int length,
+            final WritableByteChannel target) throws FileException, IOException {
+        final ReadTransfer transfer = this.getReadTransfer(handleId, offset, length);
+        final int chunkLength = getChunkLength(transfer, offset, length);
+        if (transfer.channel != null) {
+            long position = offset;
+            while (position < (offset + chunkLength)) {
+                final long transferred = transfer.channel.transferTo(position, (offset + chunkLength) - position,
+                        target);
+                if (transferred <= 0) {
+                    throw new IOException("The file ended before the chunk was sent.");
+                }
+                position += transferred;
+            }
+        } else {
+            final ByteBuffer chunk = (ByteBuffer) transfer.snapshot.duplicate().position((int) offset)
+                    .limit((int) offset + chunkLength);
+            while (chunk.hasRemaining()) {
+                target.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Returns the read transfer with the given ID, after checking the range to read.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The read transfer.
+     * @throws FileException
+     *             If the handle is unknown or the range is invalid.
+     */
+    private ReadTransfer getReadTransfer(final long handleId, final long offset, final int length)
+            throws FileException {
+        final ReadTransfer transfer = this.readTransfers.get(handleId);
+        if (transfer != null) {
+            if ((offset >= 0) && (length >= 0)) {
+                transfer.lastAccess = System.nanoTime();
+                return transfer;
+            } else {
+                throw new FileException("Offset and length must not be negative.");
+            }
+        } else {
+            throw new FileException("Read handle " + handleId + " is not open.");
+        }
+    }
+
+    /**
+     * Returns the number of bytes in a chunk, which is capped at the maximum chunk size and at the end of the file.
+     *
+     * @param transfer
+     *            The read transfer.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param length
+     *            The number of bytes to read.
+     * @return The number of bytes in the chunk, 0 if offset is at or beyond the end of the file.
+     */
+    private static int getChunkLength(final ReadTransfer transfer, final long offset, final int length) {
+        return (int) Math.max(0, Math.min(Math.min(length, MAX_CHUNK_SIZE), transfer.size - offset));
+    }
+
+    /**
+     * Reads a chunk of the file snapshot into the given buffer, until the buffer is full.
+     *
+     * @param transfer
+     *            The read transfer.
+     * @param offset
+     *            The position of the first byte to read.
+     * @param chunk
+     *            The buffer to fill. It must not extend beyond the end of the file.
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    private void transfer(final ReadTransfer transfer, final long offset, final ByteBuffer chunk) throws IOException {
+        if (transfer.channel != null) {
+            while (chunk.hasRemaining()) {
+                if (transfer.channel.read(chunk, offset + chunk.position()) < 0) {
+                    throw new IOException("The file ended before the chunk was read.");
+                }
+            }
+        } else {
+            chunk.put((ByteBuffer) transfer.snapshot.duplicate().position((int) offset).limit((int) offset
+                    + chunk.remaining()));
+        }
+    }
+
+    /**
+     * Closes the given read handle and releases its snapshot.
+     *
+     * @param handleId
+     *            The ID of the read handle.
+     */
+    public void closeRead(final long handleId) {
+        final ReadTransfer transfer = this.readTransfers.remove(handleId);
+        if (transfer != null) {
+            closeQuietly(transfer.channel);
+        }
+    }
+
+    /**
+     * Closes a channel, if there is one, and only reports a failure to close it.
+     *
+     * @param channel
+     *            The channel, or null.
+     */
+    private static void closeQuietly(final FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Starts a chunked upload of the file with the given name.
+     *
+     * @param fileName
+     *            The name of the file to create or replace when the upload is committed.
+     * @return The ID of the upload.
+     * @throws FileException
+     *             If the file name is null or the staging file could not be created.
+     */
+    public long beginUpload(final String fileName) throws FileException {
+        if (fileName != null) {
+            try {
+                final Path uploadPath = Files.createDirectories(Paths.get(UPLOAD_PATH_PREFIX));
+                final Path stagingPath = WriteAheadLog.createTempFile(uploadPath, "upload-", ".part");
+                final FileChannel channel = FileChannel.open(stagingPath, StandardOpenOption.WRITE);
+                final long id = this.nextTransferId.incrementAndGet();
+                this.uploadTransfers.put(id, new UploadTransfer(fileName, stagingPath, channel));
+                return id;
+            } catch (IOException | SecurityException e) {
+                throw new FileException("Error occurred while starting upload.", e);
+            }
+        } else {
+            throw new FileException("A file name is required to upload a file.");
+        }
+    }
+
+    /**
+     * Writes a chunk of an upload at the given offset. <br/>
+     * Note: chunks may arrive in any order and may be written again, e.g. when a client retries a failed call.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @param offset
+     *            The position in the file at which the chunk starts.
+     * @param data
+     *            The contents of the chunk.
+     * @throws FileException
+     *             If the upload is unknown or the chunk could not be written.
+     */
+    public void writeChunk(final long uploadId, final long offset, final byte[] data) throws FileException {
+        final UploadTransfer transfer = this.uploadTransfers.get(uploadId);
+        if (transfer != null) {
+            if ((offset >= 0) && (data != null)) {
+                transfer.lastAccess = System.nanoTime();
+                try {
+                    final ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining()) {
+                        transfer.channel.write(buffer, offset + buffer.position());
+                    }
+                } catch (final IOException e) {
+                    throw new FileException(e);
+                }
+            } else {
+                throw new FileException("A non-negative offset and data are required to upload a chunk.");
+            }
+        } else {
+            throw new FileException("Upload " + uploadId + " is not open.");
+        }
+    }
+
+    /**
+     * Commits an upload. The staged file is flushed to disk and atomically moved into the file system, replacing the
+     * existing file with the same name or creating a new one. Readers never observe a partially uploaded file.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     * @throws FileException
+     *             If the upload is unknown, or the file could not be moved into place.
+     */
+    public void commitUpload(final long uploadId) throws FileException {
+        final UploadTransfer transfer = this.uploadTransfers.remove(uploadId);
+        if (transfer != null) {
+            try {
+                transfer.channel.force(true);
+                transfer.channel.close();
+                FileSystem.getInstance().createOrReplaceFile(transfer.fileName, transfer.stagingPath);
+            } catch (final IOException e) {
+                throw new FileException(e);
+            } finally {
+                this.discard(transfer);
+            }
+        } else {
+            throw new FileException("Upload " + uploadId + " is not open.");
+        }
+    }
+
+    /**
+     * Abandons an upload and removes its staged data.
+     *
+     * @param uploadId
+     *            The ID of the upload.
+     */
+    public void abortUpload(final long uploadId) {
+        final UploadTransfer transfer = this.uploadTransfers.remove(uploadId);
+        if (transfer != null) {
+            this.discard(transfer);
+        }
+    }
+
+    /**
+     * Closes the channel of an upload and deletes its staging file, if it was not moved into the file system.
+     *
+     * @param transfer
+     *            The upload to discard.
+     */
+    private void discard(final UploadTransfer transfer) {
+        try {
+            transfer.channel.close();
+            Files.deleteIfExists(transfer.stagingPath);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Abandons all transfers which have not been touched within the idle timeout.
+     */
+    private void sweepIdleTransfers() {
+        final long now = System.nanoTime();
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS);
+        final Iterator<Map.Entry<Long, ReadTransfer>> reads = this.readTransfers.entrySet().iterator();
+        while (reads.hasNext()) {
+            final Map.Entry<Long, ReadTransfer> read = reads.next();
+            if ((now - read.getValue().lastAccess) > timeout) {
+                this.closeRead(read.getKey());
+            }
+        }
+        final Iterator<Map.Entry<Long, UploadTransfer>> uploads = this.uploadTransfers.entrySet().iterator();
+        while (uploads.hasNext()) {
+            final Map.Entry<Long, UploadTransfer> upload = uploads.next();
+            if ((now - upload.getValue().lastAccess) > timeout) {
+                System.out.println("Abandoning idle upload of \"" + upload.getValue().fileName + "\".");
+                this.abortUpload(upload.getKey());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,977 @@
+package edu.sjsu.cs249.project1.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import edu.sjsu.cs249.project1.remote.ContentVersion;
+import edu.sjsu.cs249.project1.remote.FileEdit;
+
+/**
+ * This singleton class is the write-ahead log of the file system. It has three purposes: <br/>
+ * 1. Records every change of a file (create, modify, patch, replace, delete, rename) before the change is acknowledged,
+ * so that the data files themselves do not have to be written and flushed on every change. <br/>
+ * 2. Commits concurrent changes together: whoever waits for its record to become durable flushes the log for everybody
+ * who appended before it, so a burst of writers costs a single fsync. <br/>
+ * 3. Periodically checkpoints the changed files to disk in the background, after which the log is truncated. <br/>
+ * On startup, recover() replays the records which were not checkpointed before the server went down. <br/>
+ * Every record carries the version (see ContentVersion) of the file it leaves behind. During recovery, a file on disk
+ * is matched against these versions to find the last record it already reflects, so that no record is applied twice.
+ * Since the version of a patched file is derived from the edits rather than hashed from its contents, every write of a
+ * file to disk is preceded by a record carrying the hash of the written contents, see logWrite(). <br/>
+ * The following system properties can be used to tune the log: <br/>
+ * fileserver.wal.checkpointMillis - Interval between two checkpoints (default 1000).
+ */
+public class WriteAheadLog {
+    private static final long CHECKPOINT_MILLIS = Long.getLong("fileserver.wal.checkpointMillis", 1000L);
+
+    /**
+     * Note: the log lives inside the file system directory, so that checkpoints are renames on the same disk.
+     * FileServer skips hidden directories when it loads existing files.
+     */
+    private static final String FILE_PATH_PREFIX = "filesystem/";
+    private static final String LOG_PATH_PREFIX = FILE_PATH_PREFIX + ".wal/";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Version recorded for a file which no longer exists after the record, or whose version is not known.
+     */
+    private static final String ABSENT = "";
+
+    private static final WriteAheadLog INSTANCE = new WriteAheadLog();
+
+    /**
+     * The kinds of records. Note: the ordinal is written to the log, so new kinds must be added at the end.
+     */
+    private enum RecordType {
+        CREATE, MODIFY, PATCH, REPLACE, DELETE, RENAME, WRITE
+    }
+
+    /**
+     * Guards appending to the current segment and switching to a new one.
+     */
+    private final Object appendLock = new Object();
+
+    /**
+     * Guards flushing the current segment. Note: always acquired before appendLock.
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Files which changed since they were last written to disk.
+     */
+    private final Set<File> dirtyFiles = ConcurrentHashMap.newKeySet();
+
+    private volatile FileChannel channel;
+    private long segmentId;
+    private long segmentStartLsn;
+    private volatile long appendedLsn;
+    private volatile long durableLsn;
+
+    /**
+     * A record read back from the log during recovery.
+     */
+    private static class Record {
+        private final RecordType type;
+        private final String fileName;
+        private final String newName;
+        private final String version;
+        private final byte[] data;
+        private final List<FileEdit> edits;
+
+        private Record(final RecordType type, final String fileName, final String newName, final String version,
+                final byte[] data, final List<FileEdit> edits) {
+            this.type = type;
+            this.fileName = fileName;
+            this.newName = newName;
+            this.version = version;
+            this.data = data;
+            this.edits = edits;
+        }
+
+        /**
+         * Returns the names of the files changed by this record.
+         *
+         * @return The file names.
+         */
+        private List<String> getFileNames() {
+            return this.newName != null ? Arrays.asList(this.fileName, this.newName)
+                    : Collections.singletonList(this.fileName);
+        }
+
+        /**
+         * Returns whether the version of this record was computed from the complete contents by ContentVersion.of(),
+         * so that it can be matched against a file on disk. Note: the version of a patch is derived from the edits.
+         *
+         * @return True if the version is a hash of the contents.
+         */
+        private boolean isHashed() {
+            return (this.type == RecordType.CREATE) || (this.type == RecordType.MODIFY)
+                    || (this.type == RecordType.REPLACE) || (this.type == RecordType.WRITE);
+        }
+    }
+
+    /**
+     * A file followed through the recovered records, across its renames.
+     */
+    private static class Lineage {
+        /**
+         * The records of the file, in log order.
+         */
+        private final List<Record> records = new ArrayList<>();
+
+        /**
+         * The name of the file before its last rename, under which it may still be stored on disk, or null if it must
+         * have been moved already.
+         */
+        private String previousName;
+    }
+
+    /**
+     * Singleton class, hide constructor by making it private.
+     */
+    private WriteAheadLog() {
+
+    }
+
+    /**
+     * Returns the singleton instance of WriteAheadLog.
+     *
+     * @return The singleton instance of WriteAheadLog.
+     */
+    public static WriteAheadLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replays the records left in the log by the last run, writes the resulting files to disk, and starts a new log.
+     * <br/>
+     * Note: must be called once, before any file is loaded or changed. A torn record at the end of the log, i.e. a
+     * change which was never acknowledged, is ignored. The new log is started before the files are written, so that a
+     * crash during recovery leaves records behind which let the next recovery recognize the files it already wrote.
+     *
+     * @throws FileException
+     *             If the log could not be read or the recovered files could not be written.
+     */
+    public void recover() throws FileException {
+        synchronized (this.syncLock) {
+            synchronized (this.appendLock) {
+                try {
+                    final Path logPath = Files.createDirectories(Paths.get(LOG_PATH_PREFIX));
+                    final TreeMap<Long, Path> segments = this.listSegments(logPath);
+                    final List<Record> records = new ArrayList<>();
+                    for (final Path segment : segments.values()) {
+                        this.readRecords(segment, records);
+                    }
+                    this.segmentId = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+                    this.openSegment();
+                    if (!records.isEmpty()) {
+                        this.replay(records);
+                    }
+                    for (final Path segment : segments.values()) {
+                        Files.delete(segment);
+                    }
+                } catch (final IOException e) {
+                    throw new FileException("Error occurred while recovering the write-ahead log.", e);
+                }
+            }
+        }
+
+        final ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "wal-checkpointer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        checkpointer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                WriteAheadLog.this.checkpoint();
+            }
+        }, CHECKPOINT_MILLIS, CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks a file as changed, so that the next checkpoint writes it to disk. <br/>
+     * Note: must be called before the record of the change is appended. Otherwise a checkpoint could truncate the
+     * record before the file was written.
+     *
+     * @param file
+     *            The changed file.
+     */
+    public void markDirty(final File file) {
+        this.dirtyFiles.add(file);
+    }
+
+    /**
+     * Logs the creation of a file.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The initial contents.
+     * @param version
+     *            The version of data.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logCreate(final String fileName, final byte[] data, final String version) throws FileException {
+        return this.logData(RecordType.CREATE, fileName, data, version);
+    }
+
+    /**
+     * Logs that the contents of a file were replaced by the given data.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The new contents.
+     * @param version
+     *            The version of data.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logModify(final String fileName, final byte[] data, final String version) throws FileException {
+        return this.logData(RecordType.MODIFY, fileName, data, version);
+    }
+
+    /**
+     * Logs edits applied to a file. Only the edits are written, not the resulting contents.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param edits
+     *            The edits, in the order they were applied.
+     * @param version
+     *            The version of the contents after the edits.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logPatch(final String fileName, final List<FileEdit> edits, final String version)
+            throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream output = this.startRecord(bytes, RecordType.PATCH, fileName, version);
+            output.writeInt(edits.size());
+            for (final FileEdit edit : edits) {
+                output.writeLong(edit.getOffset());
+                output.writeInt(edit.getLength());
+                output.writeInt(edit.getData().length);
+                output.write(edit.getData());
+            }
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Logs that the contents of a file are about to be written to disk, e.g. by a checkpoint. <br/>
+     * Note: the record must be durable before the file is written. Recovery then recognizes the written file by the
+     * version in the record, even if the contents are the result of patches, whose records carry versions derived from
+     * the edits (see ContentVersion.after()).
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param version
+     *            The version of the written contents, as computed by ContentVersion.of().
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logWrite(final String fileName, final String version) throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            this.startRecord(bytes, RecordType.WRITE, fileName, version);
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Logs that a file was moved into place on disk, e.g. by an upload. <br/>
+     * Note: the file must already be durable on disk, since the record does not carry the contents.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param version
+     *            The version of the new contents.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logReplace(final String fileName, final String version) throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            this.startRecord(bytes, RecordType.REPLACE, fileName, version);
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Logs the deletion of a file.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logDelete(final String fileName) throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            this.startRecord(bytes, RecordType.DELETE, fileName, ABSENT);
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Logs the renaming of a file. Only the names are written, not the contents. <br/>
+     * Note: the file must only be moved to its new name once the record is durable, and must not be written to disk in
+     * the meantime. Recovery then finds the file under one of both names, and applies the records logged before the
+     * rename which it does not reflect yet, whichever name they were logged under.
+     *
+     * @param fileName
+     *            The old name of the file.
+     * @param newName
+     *            The new name of the file.
+     * @param version
+     *            The current version of the file, or null if it is not known yet. It is not needed for recovery.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    public long logRename(final String fileName, final String newName, final String version) throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream output = this.startRecord(bytes, RecordType.RENAME, fileName,
+                    version != null ? version : ABSENT);
+            output.writeUTF(newName);
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number is durable. <br/>
+     * Note: the first waiter flushes the log for all records appended so far, while the others wait for it and find
+     * their records already durable. This commits a whole group of concurrent changes with a single fsync.
+     *
+     * @param lsn
+     *            The sequence number of the record.
+     * @throws FileException
+     *             If the log could not be flushed.
+     */
+    public void awaitDurable(final long lsn) throws FileException {
+        if (this.durableLsn >= lsn) {
+            return;
+        }
+        synchronized (this.syncLock) {
+            if (this.durableLsn < lsn) {
+                final long flushedLsn = this.appendedLsn;
+                try {
+                    /**
+                     * Note: force(false) still flushes the file size, which is needed to read the records back.
+                     */
+                    this.channel.force(false);
+                } catch (final IOException e) {
+                    throw new FileException("Error occurred while flushing the write-ahead log.", e);
+                }
+                this.durableLsn = flushedLsn;
+            }
+        }
+    }
+
+    /**
+     * Writes data to a file atomically: the data is written and flushed to a temporary file, which is then moved into
+     * place. A crash leaves either the old or the new contents behind, never a mix of both.
+     *
+     * @param target
+     *            The file to write.
+     * @param data
+     *            The contents to write.
+     * @throws IOException
+     *             If the file could not be written.
+     */
+    public static void writeAtomically(final Path target, final byte[] data) throws IOException {
+        final Path tempPath = createTempFile(Paths.get(LOG_PATH_PREFIX), "checkpoint-", ".tmp");
+        try {
+            try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    tempChannel.write(buffer);
+                }
+                tempChannel.force(true);
+            }
+            Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Creates a new, empty file with a unique name in the given directory. <br/>
+     * Note: unlike Files.createTempFile(), which restricts the file to its owner, the file gets the default permissions
+     * of the process, since it is moved into the file system as a data file.
+     *
+     * @param directory
+     *            The directory to create the file in.
+     * @param prefix
+     *            The start of the name of the file.
+     * @param suffix
+     *            The end of the name of the file.
+     * @return The created file.
+     * @throws IOException
+     *             If the file could not be created.
+     */
+    public static Path createTempFile(final Path directory, final String prefix, final String suffix)
+            throws IOException {
+        while (true) {
+            try {
+                return Files.createFile(directory.resolve(prefix + UUID.randomUUID() + suffix));
+            } catch (final FileAlreadyExistsException e) {
+                /**
+                 * Try another name.
+                 */
+            }
+        }
+    }
+
+    /**
+     * Flushes a directory, so that files which were moved into it or out of it survive a crash. <br/>
+     * Note: not every platform supports opening a directory, in which case this does nothing.
+     *
+     * @param directory
+     *            The directory to flush.
+     */
+    public static void forceDirectory(final Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (final IOException e) {
+            /**
+             * The platform does not allow flushing directories.
+             */
+        }
+    }
+
+    /**
+     * Logs a record carrying the complete contents of a file.
+     *
+     * @param type
+     *            The kind of record.
+     * @param fileName
+     *            The name of the file.
+     * @param data
+     *            The contents of the file.
+     * @param version
+     *            The version of data.
+     * @return The sequence number of the record.
+     * @throws FileException
+     *             If the record could not be written.
+     */
+    private long logData(final RecordType type, final String fileName, final byte[] data, final String version)
+            throws FileException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 128);
+            final DataOutputStream output = this.startRecord(bytes, type, fileName, version);
+            output.writeInt(data.length);
+            output.write(data);
+            return this.append(bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new FileException("Error occurred while logging a change.", e);
+        }
+    }
+
+    /**
+     * Writes the fields shared by all records.
+     *
+     * @param bytes
+     *            The buffer to write the record to.
+     * @param type
+     *            The kind of record.
+     * @param fileName
+     *            The name of the file.
+     * @param version
+     *            The version of the file after the record.
+     * @return A stream for the fields specific to the kind of record.
+     * @throws IOException
+     *             Never, since the stream writes to memory.
+     */
+    private DataOutputStream startRecord(final ByteArrayOutputStream bytes, final RecordType type,
+            final String fileName, final String version) throws IOException {
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(type.ordinal());
+        output.writeUTF(fileName);
+        output.writeUTF(version);
+        return output;
+    }
+
+    /**
+     * Appends a record to the current segment, framed by its length and checksum. The record is not flushed.
+     *
+     * @param payload
+     *            The record.
+     * @return The sequence number of the record.
+     * @throws IOException
+     *             If the record could not be written.
+     */
+    private long append(final byte[] payload) throws IOException {
+        final CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+        synchronized (this.appendLock) {
+            if (this.channel == null) {
+                throw new IOException("The write-ahead log has not been recovered yet.");
+            }
+            final long position = this.channel.position();
+            try {
+                while (buffer.hasRemaining()) {
+                    this.channel.write(buffer);
+                }
+            } catch (final IOException e) {
+                /**
+                 * Cut off the partial record, so that the records appended after it can still be read back.
+                 */
+                this.channel.truncate(position);
+                throw e;
+            }
+            this.appendedLsn++;
+            return this.appendedLsn;
+        }
+    }
+
+    /**
+     * Opens a new, empty segment with the current segment ID. Note: must be called while holding appendLock.
+     *
+     * @throws IOException
+     *             If the segment could not be created.
+     */
+    private void openSegment() throws IOException {
+        this.channel = FileChannel.open(Paths.get(LOG_PATH_PREFIX + SEGMENT_PREFIX + this.segmentId + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.segmentStartLsn = this.appendedLsn;
+        forceDirectory(Paths.get(LOG_PATH_PREFIX));
+    }
+
+    /**
+     * Writes all changed files to disk and removes the segments whose records they reflect. <br/>
+     * Note: changes keep being logged into a fresh segment while the checkpoint runs.
+     */
+    private void checkpoint() {
+        try {
+            final long firstRetainedSegmentId;
+            synchronized (this.syncLock) {
+                synchronized (this.appendLock) {
+                    if ((this.appendedLsn == this.segmentStartLsn) && this.dirtyFiles.isEmpty()) {
+                        return;
+                    }
+                    if (this.appendedLsn != this.segmentStartLsn) {
+                        this.channel.force(false);
+                        this.durableLsn = this.appendedLsn;
+                        this.channel.close();
+                        this.segmentId++;
+                        this.openSegment();
+                    }
+                    firstRetainedSegmentId = this.segmentId;
+                }
+            }
+
+            /**
+             * Every record in the closed segments was applied to its file before the segment was closed, so writing
+             * the current contents of all dirty files covers all of them.
+             */
+            final List<File> deferredFiles = new ArrayList<>();
+            final Iterator<File> iterator = this.dirtyFiles.iterator();
+            while (iterator.hasNext()) {
+                final File file = iterator.next();
+                iterator.remove();
+                try {
+                    if (!file.checkpoint()) {
+                        deferredFiles.add(file);
+                    }
+                } catch (final FileException e) {
+                    e.printStackTrace();
+                    deferredFiles.add(file);
+                }
+            }
+            forceDirectory(Paths.get(FILE_PATH_PREFIX));
+
+            /**
+             * Files which could not be written stay dirty, and the segments are kept until the next checkpoint.
+             */
+            this.dirtyFiles.addAll(deferredFiles);
+            if (deferredFiles.isEmpty()) {
+                for (final Map.Entry<Long, Path> segment : this.listSegments(Paths.get(LOG_PATH_PREFIX)).entrySet()) {
+                    if (segment.getKey() < firstRetainedSegmentId) {
+                        Files.delete(segment.getValue());
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Lists the segments in the log directory and removes leftover temporary files.
+     *
+     * @param logPath
+     *            The log directory.
+     * @return Structure: segment ID -> segment, in ascending order.
+     * @throws IOException
+     *             If the directory could not be read.
+     */
+    private TreeMap<Long, Path> listSegments(final Path logPath) throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(logPath)) {
+            for (final Path path : paths) {
+                final String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } else if (this.channel == null) {
+                    /**
+                     * A checkpoint was interrupted before it could move the file into place.
+                     */
+                    Files.delete(path);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Reads all intact records of a segment. Reading stops at the first torn or corrupt record.
+     *
+     * @param segment
+     *            The segment to read.
+     * @param records
+     *            The list to add the records to.
+     * @throws IOException
+     *             If the segment could not be read.
+     */
+    private void readRecords(final Path segment, final List<Record> records) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        while (buffer.remaining() >= 8) {
+            final int length = buffer.getInt();
+            final int expectedChecksum = buffer.getInt();
+            if ((length < 0) || (length > buffer.remaining())) {
+                break;
+            }
+            final CRC32 checksum = new CRC32();
+            checksum.update(buffer.array(), buffer.position(), length);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                break;
+            }
+            final DataInputStream input = new DataInputStream(
+                    new ByteArrayInputStream(buffer.array(), buffer.position(), length));
+            buffer.position(buffer.position() + length);
+            try {
+                records.add(this.readRecord(input));
+            } catch (final EOFException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                break;
+            }
+        }
+        if (buffer.hasRemaining()) {
+            System.out.println("Ignoring torn record at the end of " + segment.getFileName() + ".");
+        }
+    }
+
+    /**
+     * Decodes a single record.
+     *
+     * @param input
+     *            The record, without its framing.
+     * @return The record.
+     * @throws IOException
+     *             If the record is malformed.
+     */
+    private Record readRecord(final DataInputStream input) throws IOException {
+        final RecordType type = RecordType.values()[input.readUnsignedByte()];
+        final String fileName = input.readUTF();
+        final String version = input.readUTF();
+        switch (type) {
+            case CREATE:
+            case MODIFY:
+                return new Record(type, fileName, null, version, this.readData(input), null);
+            case PATCH: {
+                final int count = input.readInt();
+                final List<FileEdit> edits = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final long offset = input.readLong();
+                    final int length = input.readInt();
+                    edits.add(new FileEdit(offset, length, this.readData(input)));
+                }
+                return new Record(type, fileName, null, version, null, edits);
+            }
+            case RENAME: {
+                final String newName = input.readUTF();
+                return new Record(type, fileName, newName, version, null, null);
+            }
+            default:
+                return new Record(type, fileName, null, version, null, null);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed byte array.
+     *
+     * @param input
+     *            The stream to read.
+     * @return The bytes read.
+     * @throws IOException
+     *             If the stream ends early.
+     */
+    private byte[] readData(final DataInputStream input) throws IOException {
+        final byte[] data = new byte[input.readInt()];
+        input.readFully(data);
+        return data;
+    }
+
+    /**
+     * Applies the recovered records to the files on disk. <br/>
+     * The records are first grouped by the file they belong to, following every file across its renames. A rename only
+     * changes the name in the log, so the file on disk may still be stored under the name it had before, and it may be
+     * older than the records logged before the rename (see recoverContents()). <br/>
+     * Note: every recovered file is logged with a WRITE record before it is written, see recover(). The names which no
+     * longer belong to a file are only removed afterwards, so that a crash can not lose a file which was not moved yet.
+     *
+     * @param records
+     *            The recovered records, in log order.
+     * @throws IOException
+     *             If a file could not be read or written.
+     * @throws FileException
+     *             If a patch does not fit the file it is applied to.
+     */
+    private void replay(final List<Record> records) throws IOException, FileException {
+        final Set<String> fileNames = new LinkedHashSet<>();
+
+        /**
+         * Structure: file name -> the file which has the name after the records grouped so far.
+         */
+        final Map<String, Lineage> lineages = new HashMap<>();
+
+        /**
+         * Structure: previous name -> the renamed file which may still be stored under it on disk.
+         */
+        final Map<String, Lineage> movingLineages = new HashMap<>();
+        for (final Record record : records) {
+            fileNames.addAll(record.getFileNames());
+            Lineage lineage = lineages.get(record.fileName);
+            if (lineage == null) {
+                /**
+                 * Either a new file, or a file which existed before the first record.
+                 */
+                lineage = new Lineage();
+                lineages.put(record.fileName, lineage);
+                releaseName(movingLineages, record.fileName);
+            }
+            lineage.records.add(record);
+            if (record.type == RecordType.DELETE) {
+                lineages.remove(record.fileName);
+            } else if (record.type == RecordType.RENAME) {
+                if (lineage.previousName != null) {
+                    movingLineages.remove(lineage.previousName);
+                }
+                releaseName(movingLineages, record.newName);
+                lineages.remove(record.fileName);
+                lineages.put(record.newName, lineage);
+                lineage.previousName = record.fileName;
+                movingLineages.put(record.fileName, lineage);
+            }
+        }
+
+        /**
+         * Structure: file name -> contents (null if the file does not exist).
+         */
+        final Map<String, byte[]> diskContents = new HashMap<>();
+        final Map<String, String> diskVersions = new HashMap<>();
+        for (final String fileName : fileNames) {
+            final Path path = Paths.get(FILE_PATH_PREFIX + fileName);
+            final byte[] data = Files.exists(path) ? Files.readAllBytes(path) : null;
+            diskContents.put(fileName, data);
+            diskVersions.put(fileName, data != null ? ContentVersion.of(data) : ABSENT);
+        }
+        final Map<String, byte[]> contents = new HashMap<>();
+        for (final Map.Entry<String, Lineage> lineage : lineages.entrySet()) {
+            contents.put(lineage.getKey(),
+                    this.recoverContents(lineage.getKey(), lineage.getValue(), diskContents, diskVersions));
+        }
+
+        int recoveredCount = 0;
+        for (final String fileName : fileNames) {
+            final byte[] data = contents.get(fileName);
+            if (data != null) {
+                final String recoveredVersion = ContentVersion.of(data);
+                if (!recoveredVersion.equals(diskVersions.get(fileName))) {
+                    this.awaitDurable(this.logWrite(fileName, recoveredVersion));
+                    writeAtomically(Paths.get(FILE_PATH_PREFIX + fileName), data);
+                    recoveredCount++;
+                }
+            }
+        }
+        for (final String fileName : fileNames) {
+            if ((contents.get(fileName) == null) && (diskContents.get(fileName) != null)) {
+                Files.deleteIfExists(Paths.get(FILE_PATH_PREFIX + fileName));
+                recoveredCount++;
+            }
+        }
+        forceDirectory(Paths.get(FILE_PATH_PREFIX));
+        System.out.println("Replayed " + records.size() + " log records, recovering " + recoveredCount + " files.");
+    }
+
+    /**
+     * Records that a name was taken by a file. A renamed file can only have given up the name once it was moved away
+     * from it on disk, so it is no longer looked for under that name.
+     *
+     * @param movingLineages
+     *            Structure: previous name -> the renamed file which may still be stored under it on disk.
+     * @param fileName
+     *            The name which was taken.
+     */
+    private static void releaseName(final Map<String, Lineage> movingLineages, final String fileName) {
+        final Lineage movedLineage = movingLineages.remove(fileName);
+        if (movedLineage != null) {
+            movedLineage.previousName = null;
+        }
+    }
+
+    /**
+     * Recovers the contents of a file from its records. <br/>
+     * The last record whose version matches the file on disk is the point up to which the file was already
+     * checkpointed; only the records after it are applied. Records before it can not be applied a second time this
+     * way, which matters for patches. A patched file written to disk is matched by the WRITE record logged before the
+     * write. The file is looked for under its name, and under the name it had before its last rename, since it may not
+     * have been moved yet. Without a match, the records are applied from the last one carrying the complete contents,
+     * or else from the file on disk, which then predates all records of the file.
+     *
+     * @param fileName
+     *            The name of the file after all records.
+     * @param lineage
+     *            The records of the file.
+     * @param diskContents
+     *            Structure: file name -> contents on disk (null if the file does not exist).
+     * @param diskVersions
+     *            Structure: file name -> version of the contents on disk (ABSENT if the file does not exist).
+     * @return The recovered contents, or null if the file does not exist.
+     * @throws FileException
+     *             If a patch does not fit the file.
+     */
+    private byte[] recoverContents(final String fileName, final Lineage lineage, final Map<String, byte[]> diskContents,
+            final Map<String, String> diskVersions) throws FileException {
+        final List<String> diskNames = lineage.previousName != null ? Arrays.asList(lineage.previousName, fileName)
+                : Collections.singletonList(fileName);
+        final List<Record> records = lineage.records;
+        int checkpointedUpTo = -1;
+        byte[] data = null;
+        for (int i = records.size() - 1; (i >= 0) && (checkpointedUpTo < 0); i--) {
+            if (records.get(i).isHashed()) {
+                for (final String diskName : diskNames) {
+                    if (records.get(i).version.equals(diskVersions.get(diskName))) {
+                        checkpointedUpTo = i;
+                        data = diskContents.get(diskName);
+                    }
+                }
+            }
+        }
+        for (int i = records.size() - 1; (i >= 0) && (checkpointedUpTo < 0); i--) {
+            if (records.get(i).data != null) {
+                checkpointedUpTo = i;
+                data = records.get(i).data;
+            }
+        }
+        if (checkpointedUpTo < 0) {
+            /**
+             * Note: a file which was not moved yet is still stored under its previous name.
+             */
+            for (final String diskName : diskNames) {
+                if (data == null) {
+                    data = diskContents.get(diskName);
+                }
+            }
+        }
+
+        for (int i = checkpointedUpTo + 1; i < records.size(); i++) {
+            data = this.apply(records.get(i), data);
+        }
+        return data;
+    }
+
+    /**
+     * Applies a single record to the contents of the file it changes.
+     *
+     * @param record
+     *            The record.
+     * @param data
+     *            The contents before the record (null if the file does not exist).
+     * @return The contents after the record.
+     * @throws FileException
+     *             If a patch does not fit the file.
+     */
+    private byte[] apply(final Record record, final byte[] data) throws FileException {
+        switch (record.type) {
+            case CREATE:
+            case MODIFY:
+                return record.data;
+            case PATCH:
+                if (data == null) {
+                    throw new FileException("Can not replay a patch of missing file \"" + record.fileName + "\".");
+                }
+                return File.applyEdits(data, record.edits);
+            case REPLACE:
+                /**
+                 * The new contents were on disk before the record was written, so the file can not be older than it.
+                 */
+                System.out.println("File \"" + record.fileName + "\" is older than its last upload.");
+                return data;
+            default:
+                /**
+                 * A rename only changes the name, which the lineage already follows, and a write only changes the file
+                 * on disk.
+                 */
+                return data;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,234 @@
+package edu.sjsu.cs249.project1.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the encoding of the values passed through a MessageConnection. <br/>
+ * Note: remote objects need a connection, see MessageConnectionTest, so all other values are encoded without one.
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void simpleValuesRoundTrip() throws IOException {
+        assertNull(roundTrip(null));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertEquals(-7, roundTrip(-7));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals("", roundTrip(""));
+        assertEquals("n\u00e4me \u2603", roundTrip("n\u00e4me \u2603"));
+        assertArrayEquals(bytes("contents"), (byte[]) roundTrip(bytes("contents")));
+        assertArrayEquals(new byte[0], (byte[]) roundTrip(new byte[0]));
+    }
+
+    @Test
+    public void collectionsRoundTrip() throws IOException {
+        final List<Object> list = Arrays.<Object>asList("a", null, 3, Arrays.asList(4L, "b"));
+        assertEquals(list, roundTrip(list));
+        assertEquals(new HashSet<>(Arrays.asList("x", "y")), roundTrip(new HashSet<>(Arrays.asList("x", "y"))));
+
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("first", 1);
+        map.put("second", Collections.singletonList("nested"));
+        map.put(3L, null);
+        assertEquals(map, roundTrip(map));
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(((Map<?, ?>) roundTrip(map)).keySet()));
+    }
+
+    @Test
+    public void fileEditRoundTrips() throws IOException {
+        final FileEdit edit = (FileEdit) roundTrip(new FileEdit(5, 2, bytes("XY")));
+        assertEquals(5, edit.getOffset());
+        assertEquals(2, edit.getLength());
+        assertArrayEquals(bytes("XY"), edit.getData());
+
+        final FileEdit append = (FileEdit) roundTrip(FileEdit.append(bytes("!")));
+        assertEquals(FileEdit.append(bytes("!")).getOffset(), append.getOffset());
+        assertArrayEquals(bytes("!"), append.getData());
+    }
+
+    @Test
+    public void openResultRoundTrips() throws IOException {
+        final OpenResult modified = (OpenResult) roundTrip(OpenResult.modified(bytes("data"), "v2"));
+        assertTrue(modified.isModified());
+        assertArrayEquals(bytes("data"), modified.getData());
+        assertEquals("v2", modified.getVersion());
+
+        final OpenResult notModified = (OpenResult) roundTrip(OpenResult.notModified("v1"));
+        assertFalse(notModified.isModified());
+        assertNull(notModified.getData());
+        assertEquals("v1", notModified.getVersion());
+    }
+
+    @Test
+    public void fileHandleRoundTrips() throws IOException {
+        final FileHandle handle = (FileHandle) roundTrip(new FileHandle(42, 1L << 33));
+        assertEquals(42, handle.getId());
+        assertEquals(1L << 33, handle.getSize());
+    }
+
+    @Test
+    public void listPageRoundTrips() throws IOException {
+        final ListPage page = (ListPage) roundTrip(new ListPage(Arrays.asList("a", "b"), "b"));
+        assertEquals(Arrays.asList("a", "b"), page.getFileNames());
+        assertEquals("b", page.getNextCursor());
+
+        final ListPage lastPage = (ListPage) roundTrip(new ListPage(Collections.<String>emptyList(), null));
+        assertEquals(Collections.<String>emptyList(), lastPage.getFileNames());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    public void batchResultRoundTrips() throws IOException {
+        final BatchResult<Object> result = new BatchResult<>();
+        result.addValue("opened", OpenResult.notModified("v1"));
+        result.addFailure("missing", "File does not exist.");
+        result.addValue("deleted", null);
+
+        final BatchResult<?> decoded = (BatchResult<?>) roundTrip(result);
+        assertEquals(Arrays.asList("opened", "deleted"), new ArrayList<>(decoded.getValues().keySet()));
+        assertEquals("v1", ((OpenResult) decoded.getValue("opened")).getVersion());
+        assertTrue(decoded.isSucceeded("deleted"));
+        assertNull(decoded.getValue("deleted"));
+        assertFalse(decoded.isSucceeded("missing"));
+        assertEquals("File does not exist.", decoded.getFailure("missing"));
+    }
+
+    @Test
+    public void errorRoundTrips() throws IOException {
+        final Throwable error = BinaryCodec.readError(toFrame(new FileNotFoundException("gone")), null);
+        assertTrue(error instanceof FileNotFoundException);
+        assertEquals("gone", error.getMessage());
+    }
+
+    @Test
+    public void serializedValueIsOnlyAcceptedAsAnError() throws IOException {
+        assertRejected(toFrame(new FileNotFoundException("gone")));
+
+        /**
+         * Note: an exception nested in a list is not the error itself either.
+         */
+        assertRejected(toFrame(Collections.singletonList(new FileNotFoundException("gone"))));
+    }
+
+    @Test
+    public void errorMustBeAnException() throws IOException {
+        try {
+            BinaryCodec.readError(toFrame("not an exception"), null);
+            fail("A string was accepted as the error of a call.");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("must be an exception"));
+        }
+    }
+
+    @Test
+    public void errorMayNotCarryOtherClasses() throws IOException {
+        try {
+            BinaryCodec.readError(toFrame(new CarryingException(new Payload())), null);
+            fail("A class which is not an exception was deserialized.");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(Payload.class.getName()));
+        }
+    }
+
+    @Test
+    public void negativeLengthIsRejected() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinaryCodec.writeBytesHeader(out, -1);
+        assertRejected(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void lengthLargerThanTheFrameIsRejected() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinaryCodec.writeBytesHeader(out, Integer.MAX_VALUE);
+        out.write(bytes("short"));
+        assertRejected(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        /**
+         * A list claiming more elements than bytes left must be rejected before the list is allocated.
+         */
+        final byte[] list = toBytes(Arrays.asList(1, 2, 3));
+        list[1] = 0x7f;
+        assertRejected(new DataInputStream(new ByteArrayInputStream(list)));
+    }
+
+    @Test
+    public void unknownTagIsRejected() {
+        assertRejected(new DataInputStream(new ByteArrayInputStream(new byte[] { 99 })));
+    }
+
+    /**
+     * An exception with a field whose class is neither an exception nor part of Throwable.
+     */
+    private static class CarryingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unused")
+        private final Payload payload;
+
+        private CarryingException(final Payload payload) {
+            this.payload = payload;
+        }
+    }
+
+    private static class Payload implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static Object roundTrip(final Object value) throws IOException {
+        final DataInputStream in = toFrame(value);
+        final Object decoded = BinaryCodec.read(in, null);
+        assertEquals("The whole value must be read.", 0, in.available());
+        return decoded;
+    }
+
+    private static DataInputStream toFrame(final Object value) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(toBytes(value)));
+    }
+
+    private static byte[] toBytes(final Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryCodec.write(new DataOutputStream(bytes), value, null);
+        return bytes.toByteArray();
+    }
+
+    private static void assertRejected(final DataInputStream in) {
+        try {
+            BinaryCodec.read(in, null);
+            fail("A malformed value was accepted.");
+        } catch (final IOException e) {
+            /**
+             * Expected.
+             */
+        }
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
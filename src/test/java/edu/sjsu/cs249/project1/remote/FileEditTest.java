@@ -0,0 +1,91 @@
+package edu.sjsu.cs249.project1.remote;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests FileEdit.between(), which clients use to send a change as a patch instead of the whole contents.
+ */
+public class FileEditTest {
+
+    @Test
+    public void betweenEqualContentsIsNull() {
+        assertNull(FileEdit.between(bytes("same"), bytes("same")));
+        assertNull(FileEdit.between(new byte[0], new byte[0]));
+    }
+
+    @Test
+    public void betweenCoversOnlyTheChangedMiddle() {
+        final FileEdit edit = FileEdit.between(bytes("hello world"), bytes("hello there world"));
+        assertEquals(6, edit.getOffset());
+        assertEquals(0, edit.getLength());
+        assertArrayEquals(bytes("there "), edit.getData());
+    }
+
+    @Test
+    public void betweenOverwrite() {
+        final FileEdit edit = FileEdit.between(bytes("abcdef"), bytes("abXYef"));
+        assertEquals(2, edit.getOffset());
+        assertEquals(2, edit.getLength());
+        assertArrayEquals(bytes("XY"), edit.getData());
+    }
+
+    @Test
+    public void betweenDeletion() {
+        final FileEdit edit = FileEdit.between(bytes("abcdef"), bytes("af"));
+        assertEquals(1, edit.getOffset());
+        assertEquals(4, edit.getLength());
+        assertArrayEquals(new byte[0], edit.getData());
+    }
+
+    @Test
+    public void betweenAppendAndTruncate() {
+        final FileEdit append = FileEdit.between(bytes("abc"), bytes("abcdef"));
+        assertEquals(3, append.getOffset());
+        assertEquals(0, append.getLength());
+        assertArrayEquals(bytes("def"), append.getData());
+
+        final FileEdit truncate = FileEdit.between(bytes("abcdef"), bytes("abc"));
+        assertEquals(3, truncate.getOffset());
+        assertEquals(3, truncate.getLength());
+        assertArrayEquals(new byte[0], truncate.getData());
+    }
+
+    @Test
+    public void betweenDoesNotLetPrefixAndSuffixOverlap() {
+        /**
+         * Note: "aaa" is both a prefix and a suffix of "aaaa", but the edit must still insert exactly one byte.
+         */
+        final FileEdit grow = FileEdit.between(bytes("aaa"), bytes("aaaa"));
+        assertEquals(3, grow.getOffset());
+        assertEquals(0, grow.getLength());
+        assertArrayEquals(bytes("a"), grow.getData());
+
+        final FileEdit shrink = FileEdit.between(bytes("abab"), bytes("ab"));
+        assertEquals(2, shrink.getOffset());
+        assertEquals(2, shrink.getLength());
+        assertArrayEquals(new byte[0], shrink.getData());
+    }
+
+    @Test
+    public void betweenFromAndToEmpty() {
+        final FileEdit fill = FileEdit.between(new byte[0], bytes("new"));
+        assertEquals(0, fill.getOffset());
+        assertEquals(0, fill.getLength());
+        assertArrayEquals(bytes("new"), fill.getData());
+
+        final FileEdit clear = FileEdit.between(bytes("old"), new byte[0]);
+        assertEquals(0, clear.getOffset());
+        assertEquals(3, clear.getLength());
+        assertArrayEquals(new byte[0], clear.getData());
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
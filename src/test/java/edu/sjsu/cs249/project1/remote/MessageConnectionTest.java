@@ -0,0 +1,190 @@
+package edu.sjsu.cs249.project1.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests calls through a pair of MessageConnections over a loopback socket, and the rejection of malformed frames.
+ */
+public class MessageConnectionTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ServerSocketChannel serverChannel;
+    private SocketChannel serverSide;
+    private SocketChannel clientSide;
+
+    /**
+     * The interface exported by the server side of the test connection.
+     */
+    public interface Echo extends Remote {
+        Object echo(Object value) throws RemoteException;
+
+        void fail(String message) throws RemoteException, FileNotFoundException;
+    }
+
+    /**
+     * The interface exported by the client side of the test connection, which the test never calls.
+     */
+    public interface Nothing extends Remote {
+
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.clientSide = SocketChannel.open(this.serverChannel.getLocalAddress());
+        this.serverSide = this.serverChannel.accept();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.clientSide.close();
+        this.serverSide.close();
+        this.serverChannel.close();
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void callReturnsTheValue() throws Throwable {
+        this.startServer();
+        final Echo echo = this.startClient();
+
+        final BatchResult<Object> result = new BatchResult<>();
+        result.addValue("listed", new ListPage(Arrays.asList("a", "b"), "b"));
+        result.addFailure("missing", "File does not exist.");
+        final BatchResult<?> decoded = (BatchResult<?>) echo.echo(result);
+        assertEquals(Arrays.asList("a", "b"), ((ListPage) decoded.getValue("listed")).getFileNames());
+        assertEquals("File does not exist.", decoded.getFailure("missing"));
+        assertEquals("unchanged", echo.echo("unchanged"));
+    }
+
+    @Test
+    public void callThrowsTheException() throws Throwable {
+        this.startServer();
+        final Echo echo = this.startClient();
+        try {
+            echo.fail("gone");
+            fail("The exception of the call was not thrown.");
+        } catch (final FileNotFoundException e) {
+            assertEquals("gone", e.getMessage());
+        }
+    }
+
+    @Test
+    public void remoteExceptionIsWrappedLikeWithRmi() throws Throwable {
+        this.startServer();
+        final Echo echo = this.startClient();
+        try {
+            echo.fail(null);
+            fail("The exception of the call was not thrown.");
+        } catch (final ServerException e) {
+            assertTrue(e.getCause() instanceof RemoteException);
+        }
+    }
+
+    @Test
+    public void frameLongerThanTheMaximumClosesTheConnection() throws Exception {
+        final MessageConnection server = this.startServer();
+        server.setMaxFrameSize(1024);
+        this.writeFrameLength(1025);
+        this.assertClosed(server);
+    }
+
+    @Test
+    public void negativeFrameLengthClosesTheConnection() throws Exception {
+        final MessageConnection server = this.startServer();
+        this.writeFrameLength(-1);
+        this.assertClosed(server);
+    }
+
+    @Test
+    public void frameShorterThanTheHeaderClosesTheConnection() throws Exception {
+        final MessageConnection server = this.startServer();
+        this.writeFrameLength(2);
+        this.clientSide.write(ByteBuffer.wrap(new byte[2]));
+        this.assertClosed(server);
+    }
+
+    @Test
+    public void callsFailWhenTheConnectionCloses() throws Exception {
+        this.startServer();
+        final MessageConnection client = new MessageConnection(this.clientSide, Nothing.class, null, Echo.class,
+                this.executor);
+        client.start();
+        client.close();
+        try {
+            ((Echo) client.getRemoteProxy()).echo("late");
+            fail("A call on a closed connection succeeded.");
+        } catch (final RemoteException e) {
+            assertFalse(client.isOpen());
+        }
+    }
+
+    private MessageConnection startServer() {
+        final MessageConnection connection = new MessageConnection(this.serverSide, Echo.class, new Echo() {
+            @Override
+            public Object echo(final Object value) {
+                return value;
+            }
+
+            @Override
+            public void fail(final String message) throws RemoteException, FileNotFoundException {
+                if (message == null) {
+                    throw new RemoteException("No message.");
+                }
+                throw new FileNotFoundException(message);
+            }
+        }, Nothing.class, this.executor);
+        connection.start();
+        return connection;
+    }
+
+    private Echo startClient() {
+        final MessageConnection connection = new MessageConnection(this.clientSide, Nothing.class, null, Echo.class,
+                this.executor);
+        connection.setCallTimeout(TIMEOUT_MILLIS);
+        connection.start();
+        return (Echo) connection.getRemoteProxy();
+    }
+
+    private void writeFrameLength(final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4).putInt(length);
+        buffer.flip();
+        this.clientSide.write(buffer);
+    }
+
+    /**
+     * Waits until the connection closed, and checks that it closed its socket.
+     */
+    private void assertClosed(final MessageConnection connection) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (connection.isOpen() && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertFalse("The connection is still open.", connection.isOpen());
+        assertFalse("The socket is still open.", this.serverSide.isOpen());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
+import edu.sjsu.cs249.project1.server.CircuitBreaker.State;
+
+/**
+ * Tests the state transitions of the CircuitBreaker, and that the InvalidationDispatcher reports every call the
+ * breaker permitted.
+ */
+public class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 50;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        assertEquals(State.CLOSED, this.circuitBreaker.getState());
+        this.circuitBreaker.recordFailure();
+        this.circuitBreaker.recordFailure();
+        this.circuitBreaker.recordSuccess();
+        this.circuitBreaker.recordFailure();
+        this.circuitBreaker.recordFailure();
+        assertEquals("A success resets the failures.", State.CLOSED, this.circuitBreaker.getState());
+        assertTrue(this.circuitBreaker.tryAcquire());
+
+        this.circuitBreaker.recordFailure();
+        assertEquals(State.OPEN, this.circuitBreaker.getState());
+        assertFalse(this.circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void trialCallClosesTheBreaker() throws InterruptedException {
+        this.open();
+        Thread.sleep(OPEN_MILLIS);
+        assertTrue(this.circuitBreaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, this.circuitBreaker.getState());
+        assertFalse("Only one trial call may be in flight.", this.circuitBreaker.tryAcquire());
+
+        this.circuitBreaker.recordSuccess();
+        assertEquals(State.CLOSED, this.circuitBreaker.getState());
+        assertTrue(this.circuitBreaker.tryAcquire());
+        assertEquals(0, this.circuitBreaker.getFailingMillis());
+    }
+
+    @Test
+    public void failedTrialCallReopensTheBreaker() throws InterruptedException {
+        this.open();
+        Thread.sleep(OPEN_MILLIS);
+        assertTrue(this.circuitBreaker.tryAcquire());
+
+        this.circuitBreaker.recordFailure();
+        assertEquals(State.OPEN, this.circuitBreaker.getState());
+        assertFalse("The open period starts over.", this.circuitBreaker.tryAcquire());
+        Thread.sleep(OPEN_MILLIS);
+        assertTrue(this.circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void tracksHowLongTheClientIsFailing() throws InterruptedException {
+        assertEquals(0, this.circuitBreaker.getFailingMillis());
+        this.circuitBreaker.recordFailure();
+        Thread.sleep(OPEN_MILLIS);
+        this.circuitBreaker.recordFailure();
+        assertTrue(this.circuitBreaker.getFailingMillis() >= OPEN_MILLIS);
+        assertTrue(this.circuitBreaker.getMillisSinceLastSuccess() >= OPEN_MILLIS);
+
+        this.circuitBreaker.recordSuccess();
+        assertEquals(0, this.circuitBreaker.getFailingMillis());
+    }
+
+    @Test
+    public void dispatcherReportsCallsWhichFailUnchecked() throws InterruptedException {
+        final AtomicInteger callCount = new AtomicInteger();
+        final Client client = new Client("unchecked", new ClientCallback() {
+            @Override
+            public void invalidateCache(final String file) {
+                this.invalidateCaches(null);
+            }
+
+            @Override
+            public void invalidateCaches(final Collection<String> fileNames) {
+                callCount.incrementAndGet();
+                throw new IllegalStateException("Test failure.");
+            }
+
+            @Override
+            public String getId() throws RemoteException {
+                return "unchecked";
+            }
+        });
+
+        /**
+         * Note: every delivery fails without a retry, so the breaker opens after as many deliveries as its threshold,
+         * if each of them was reported. Each file is only queued after the previous one was delivered, so that they
+         * are not merged into one delivery.
+         */
+        final int failureThreshold = Integer.getInteger("fileserver.client.failureThreshold", 5);
+        for (int i = 0; i < failureThreshold; i++) {
+            InvalidationDispatcher.getInstance().dispatch(client, "file-" + i);
+            awaitCount(callCount, i + 1);
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while ((client.getCircuitBreaker().getState() != State.OPEN) && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(State.OPEN, client.getCircuitBreaker().getState());
+
+        InvalidationDispatcher.getInstance().dispatch(client, "refused");
+        Thread.sleep(OPEN_MILLIS * 4);
+        assertEquals("The open breaker must refuse the call.", failureThreshold, callCount.get());
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            this.circuitBreaker.recordFailure();
+        }
+        assertEquals(State.OPEN, this.circuitBreaker.getState());
+    }
+
+    private static void awaitCount(final AtomicInteger count, final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while ((count.get() < expected) && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.get());
+    }
+}
\ No newline at end of file
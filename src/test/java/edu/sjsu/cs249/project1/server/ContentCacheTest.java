@@ -0,0 +1,114 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests the eviction of the ContentCache. <br/>
+ * Note: the files are only used as keys, so they are never read from disk.
+ */
+public class ContentCacheTest {
+    private final ContentCache cache = new ContentCache(10);
+    private final File first = File.load("first");
+    private final File second = File.load("second");
+    private final File third = File.load("third");
+    private final File fourth = File.load("fourth");
+    private final File fifth = File.load("fifth");
+
+    @Test
+    public void evictsTheOldestContentsWhenFull() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.second, new byte[4]);
+        this.cache.put(this.third, new byte[4]);
+
+        assertNull(this.cache.get(this.first));
+        assertNotNull(this.cache.get(this.second));
+        assertNotNull(this.cache.get(this.third));
+        assertEquals(8, this.cache.getTotalBytes());
+        assertEquals(2, this.cache.getEntryCount());
+        assertEquals(1, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void usedContentsGetASecondChance() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.second, new byte[4]);
+        this.cache.get(this.first);
+        this.cache.put(this.third, new byte[4]);
+
+        assertNotNull(this.cache.get(this.first));
+        assertNull(this.cache.get(this.second));
+        assertNotNull(this.cache.get(this.third));
+    }
+
+    @Test
+    public void secondChanceIsUsedUpByEviction() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.second, new byte[4]);
+        this.cache.get(this.first);
+        this.cache.put(this.third, new byte[4]);
+
+        /**
+         * The first contents were passed over once and not used since, so they go before the newer contents.
+         */
+        this.cache.put(this.fourth, new byte[4]);
+        this.cache.put(this.fifth, new byte[4]);
+        assertNull(this.cache.get(this.first));
+        assertNotNull(this.cache.get(this.fourth));
+        assertNotNull(this.cache.get(this.fifth));
+        assertEquals(3, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void contentsLargerThanTheCacheAreNotCached() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.second, new byte[11]);
+
+        assertNull(this.cache.get(this.second));
+        assertNotNull(this.cache.get(this.first));
+        assertEquals(4, this.cache.getTotalBytes());
+        assertEquals(0, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void putReplacesTheContentsOfAFile() {
+        final byte[] newData = new byte[6];
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.first, newData);
+
+        assertSame(newData, this.cache.get(this.first));
+        assertEquals(6, this.cache.getTotalBytes());
+        assertEquals(1, this.cache.getEntryCount());
+    }
+
+    @Test
+    public void removeFreesTheBytes() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.put(this.second, new byte[4]);
+        this.cache.remove(this.first);
+        this.cache.put(this.third, new byte[6]);
+
+        assertNull(this.cache.get(this.first));
+        assertNotNull(this.cache.get(this.second));
+        assertNotNull(this.cache.get(this.third));
+        assertEquals(10, this.cache.getTotalBytes());
+        assertEquals(0, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        this.cache.put(this.first, new byte[4]);
+        this.cache.get(this.first);
+        this.cache.get(this.first);
+        this.cache.get(this.second);
+        this.cache.recordMiss();
+
+        assertEquals(2, this.cache.getHitCount());
+        assertEquals(1, this.cache.getMissCount());
+        assertEquals(2.0 / 3, this.cache.getHitRatio(), 1e-9);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.remote.ListPage;
+
+/**
+ * Tests paging through the names of the FileSystem with listFileNames(). <br/>
+ * Note: the files are only loaded, i.e. never read from disk, and every test uses its own prefix, since the file
+ * system is a singleton.
+ */
+public class FileSystemTest {
+
+    @Test
+    public void pagesThroughAllNamesInOrder() {
+        final List<String> names = loadFiles("pages-", 25);
+        loadFiles(Arrays.asList("pages", "pages.", "pagea-00"));
+
+        final List<String> listedNames = new ArrayList<>();
+        String cursor = null;
+        int pageCount = 0;
+        do {
+            final ListPage page = FileSystem.getInstance().listFileNames("pages-", cursor, 10);
+            listedNames.addAll(page.getFileNames());
+            cursor = page.getNextCursor();
+            pageCount++;
+        } while (cursor != null);
+
+        assertEquals(names, listedNames);
+        assertEquals(3, pageCount);
+    }
+
+    @Test
+    public void lastFullPageHasNoCursor() {
+        final List<String> names = loadFiles("full-", 20);
+
+        final ListPage firstPage = FileSystem.getInstance().listFileNames("full-", null, 10);
+        assertEquals(names.subList(0, 10), firstPage.getFileNames());
+        assertEquals(names.get(9), firstPage.getNextCursor());
+
+        final ListPage lastPage = FileSystem.getInstance().listFileNames("full-", firstPage.getNextCursor(), 10);
+        assertEquals(names.subList(10, 20), lastPage.getFileNames());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    public void cursorNeedNotBeAName() {
+        /**
+         * Note: the cursor is the last name of the previous page, which may have been deleted since.
+         */
+        final List<String> names = loadFiles("gone-", 10);
+        final ListPage page = FileSystem.getInstance().listFileNames("gone-", "gone-0004x", 3);
+        assertEquals(names.subList(5, 8), page.getFileNames());
+        assertEquals(names.get(7), page.getNextCursor());
+    }
+
+    @Test
+    public void cursorBeforeThePrefixStartsAtThePrefix() {
+        final List<String> names = loadFiles("late-", 5);
+        final ListPage page = FileSystem.getInstance().listFileNames("late-", "a", 10);
+        assertEquals(names, page.getFileNames());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void unknownPrefixListsNothing() {
+        final ListPage page = FileSystem.getInstance().listFileNames("missing-", null, 10);
+        assertEquals(Collections.<String>emptyList(), page.getFileNames());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void limitIsCappedAtTheMaximumPageSize() {
+        final List<String> names = loadFiles("many-", 1001);
+        for (final int limit : new int[] { 0, -1, 5000 }) {
+            final ListPage page = FileSystem.getInstance().listFileNames("many-", null, limit);
+            assertEquals(names.subList(0, 1000), page.getFileNames());
+            assertNotNull(page.getNextCursor());
+        }
+    }
+
+    /**
+     * Loads count files named prefix followed by a zero padded number, in random order.
+     *
+     * @return The names in sorted order.
+     */
+    private static List<String> loadFiles(final String prefix, final int count) {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(String.format("%s%04d", prefix, i));
+        }
+        final List<String> shuffledNames = new ArrayList<>(names);
+        Collections.shuffle(shuffledNames, new Random(count));
+        loadFiles(shuffledNames);
+        return names;
+    }
+
+    private static void loadFiles(final List<String> names) {
+        for (final String name : names) {
+            FileSystem.getInstance().loadFile(name);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.remote.FileEdit;
+
+/**
+ * Tests File.applyEdits(), which applies patches to the contents of a file.
+ */
+public class FileTest {
+
+    @Test
+    public void overwriteCopiesTheData() throws FileException {
+        final byte[] oldData = bytes("abcdef");
+        final byte[] newData = File.applyEdits(oldData, edits(new FileEdit(2, 2, bytes("XY"))));
+        assertArrayEquals(bytes("abXYef"), newData);
+        assertArrayEquals(bytes("abcdef"), oldData);
+    }
+
+    @Test
+    public void unchangedDataIsReturnedAsIs() throws FileException {
+        final byte[] oldData = bytes("abcdef");
+        assertSame(oldData, File.applyEdits(oldData, edits(new FileEdit(2, 2, bytes("cd")))));
+        assertSame(oldData, File.applyEdits(oldData, edits(new FileEdit(6, 0, new byte[0]))));
+        assertSame(oldData, File.applyEdits(oldData, Collections.<FileEdit>emptyList()));
+    }
+
+    @Test
+    public void insertionShiftsTheRest() throws FileException {
+        final byte[] newData = File.applyEdits(bytes("abef"), edits(new FileEdit(2, 0, bytes("cd"))));
+        assertArrayEquals(bytes("abcdef"), newData);
+    }
+
+    @Test
+    public void deletionShiftsTheRest() throws FileException {
+        final byte[] newData = File.applyEdits(bytes("abcdef"), edits(new FileEdit(1, 3, new byte[0])));
+        assertArrayEquals(bytes("aef"), newData);
+    }
+
+    @Test
+    public void appendGoesToTheCurrentEnd() throws FileException {
+        final byte[] newData = File.applyEdits(bytes("abc"),
+                edits(FileEdit.append(bytes("de")), FileEdit.append(bytes("f"))));
+        assertArrayEquals(bytes("abcdef"), newData);
+    }
+
+    @Test
+    public void offsetsReferToThePrecedingEdits() throws FileException {
+        /**
+         * Note: the second edit only fits because the first one made the data longer.
+         */
+        final byte[] newData = File.applyEdits(bytes("ad"),
+                edits(new FileEdit(1, 0, bytes("bc")), new FileEdit(3, 1, bytes("DE"))));
+        assertArrayEquals(bytes("abcDE"), newData);
+    }
+
+    @Test
+    public void editsUpToTheEndAreAccepted() throws FileException {
+        assertArrayEquals(bytes("abcXY"), File.applyEdits(bytes("abcde"), edits(new FileEdit(3, 2, bytes("XY")))));
+        assertArrayEquals(bytes("abcdeXY"), File.applyEdits(bytes("abcde"), edits(new FileEdit(5, 0, bytes("XY")))));
+    }
+
+    @Test(expected = FileException.class)
+    public void editPastTheEndIsRejected() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(4, 2, bytes("XY"))));
+    }
+
+    @Test(expected = FileException.class)
+    public void offsetPastTheEndIsRejected() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(6, 0, bytes("X"))));
+    }
+
+    @Test(expected = FileException.class)
+    public void negativeOffsetIsRejected() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(-2, 0, bytes("X"))));
+    }
+
+    @Test(expected = FileException.class)
+    public void negativeLengthIsRejected() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(1, -1, bytes("X"))));
+    }
+
+    @Test(expected = FileException.class)
+    public void missingDataIsRejected() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(1, 1, null)));
+    }
+
+    @Test(expected = FileException.class)
+    public void laterEditIsCheckedAgainstTheEditedData() throws FileException {
+        File.applyEdits(bytes("abcde"), edits(new FileEdit(0, 3, new byte[0]), new FileEdit(3, 0, bytes("X"))));
+    }
+
+    @Test
+    public void rejectedEditLeavesTheDataUnchanged() {
+        final byte[] oldData = bytes("abcde");
+        try {
+            File.applyEdits(oldData, edits(new FileEdit(0, 1, bytes("X")), new FileEdit(9, 0, bytes("Y"))));
+            fail("The edit past the end was accepted.");
+        } catch (final FileException e) {
+            assertArrayEquals(bytes("abcde"), oldData);
+        }
+    }
+
+    @Test
+    public void editBetweenContentsProducesTheNewContents() throws FileException {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final byte[] oldData = randomBytes(random);
+            final byte[] newData = randomBytes(random);
+            final FileEdit edit = FileEdit.between(oldData, newData);
+            if (edit == null) {
+                assertArrayEquals(oldData, newData);
+            } else {
+                final byte[] patchedData = File.applyEdits(oldData, edits(edit));
+                assertArrayEquals(newData, patchedData);
+                assertNotSame(oldData, patchedData);
+            }
+        }
+    }
+
+    private static List<FileEdit> edits(final FileEdit... edits) {
+        return Arrays.asList(edits);
+    }
+
+    /**
+     * Returns a short array over a small alphabet, so that common prefixes and suffixes are frequent.
+     */
+    private static byte[] randomBytes(final Random random) {
+        final byte[] data = new byte[random.nextInt(8)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(3));
+        }
+        return data;
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.remote.ClientCallback;
+
+/**
+ * Tests the retries of the InvalidationDispatcher. <br/>
+ * Note: the dispatcher is a singleton, so every test uses its own clients.
+ */
+public class InvalidationDispatcherTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * A client which fails a given number of calls with a RemoteException, and records every batch it was sent.
+     */
+    private static class FlakyCallback implements ClientCallback {
+        private final List<List<String>> batches = new ArrayList<>();
+        private int failureCount;
+
+        private FlakyCallback(final int failureCount) {
+            this.failureCount = failureCount;
+        }
+
+        @Override
+        public void invalidateCache(final String file) throws RemoteException {
+            this.invalidateCaches(Collections.singletonList(file));
+        }
+
+        @Override
+        public synchronized void invalidateCaches(final Collection<String> fileNames) throws RemoteException {
+            this.batches.add(new ArrayList<>(fileNames));
+            this.notifyAll();
+            if (this.failureCount > 0) {
+                this.failureCount--;
+                throw new RemoteException("Test failure.");
+            }
+        }
+
+        @Override
+        public String getId() {
+            return "flaky";
+        }
+
+        /**
+         * Waits until the given number of batches were sent, and returns them.
+         */
+        private synchronized List<List<String>> awaitBatches(final int count) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+            while ((this.batches.size() < count) && (System.nanoTime() < deadline)) {
+                this.wait(10);
+            }
+            return new ArrayList<>(this.batches);
+        }
+    }
+
+    @Test
+    public void failedDeliveryIsRetried() throws InterruptedException {
+        final FlakyCallback callback = new FlakyCallback(2);
+        final Client client = new Client("retried", callback);
+        InvalidationDispatcher.getInstance().dispatch(client, "a");
+
+        final List<String> batch = Collections.singletonList("a");
+        assertEquals(Arrays.asList(batch, batch, batch), callback.awaitBatches(3));
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void invalidationsQueuedDuringTheBackoffFollowTheRetry() throws InterruptedException {
+        final FlakyCallback callback = new FlakyCallback(1);
+        final Client client = new Client("backoff", callback);
+        InvalidationDispatcher.getInstance().dispatch(client, "a");
+        callback.awaitBatches(1);
+
+        /**
+         * Note: the first delivery is still waiting for its retry, so these are merged into the next delivery.
+         */
+        InvalidationDispatcher.getInstance().dispatch(client, "b");
+        InvalidationDispatcher.getInstance().dispatch(client, "c");
+        assertEquals(Arrays.asList(Collections.singletonList("a"), Collections.singletonList("a"), Arrays.asList("b",
+                "c")), callback.awaitBatches(3));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.server.InvalidationQueue.OfferResult;
+
+/**
+ * Tests the merging of invalidations in the InvalidationQueue of a client, and the scheduling of its deliveries.
+ */
+public class InvalidationQueueTest {
+    private final InvalidationQueue queue = new InvalidationQueue();
+
+    @Test
+    public void pendingFileNamesAreMerged() {
+        assertEquals(OfferResult.QUEUED, this.queue.offer("a", 10));
+        assertEquals(OfferResult.QUEUED, this.queue.offer("b", 10));
+        assertEquals(OfferResult.MERGED, this.queue.offer("a", 10));
+        assertEquals(2, this.queue.size());
+
+        assertEquals(Arrays.asList("a", "b"), this.queue.drain());
+        assertEquals(0, this.queue.size());
+        assertEquals(Collections.<String>emptyList(), this.queue.drain());
+    }
+
+    @Test
+    public void drainedFileNamesAreQueuedAgain() {
+        this.queue.offer("a", 10);
+        this.queue.drain();
+        assertEquals(OfferResult.QUEUED, this.queue.offer("a", 10));
+        assertEquals(Collections.singletonList("a"), this.queue.drain());
+    }
+
+    @Test
+    public void fullQueueStillMerges() {
+        assertEquals(OfferResult.QUEUED, this.queue.offer("a", 2));
+        assertEquals(OfferResult.QUEUED, this.queue.offer("b", 2));
+        assertEquals(OfferResult.REJECTED, this.queue.offer("c", 2));
+        assertEquals(OfferResult.MERGED, this.queue.offer("b", 2));
+        assertEquals(Arrays.asList("a", "b"), this.queue.drain());
+    }
+
+    @Test
+    public void oneDeliveryIsScheduledAtATime() {
+        assertFalse("Nothing is pending.", this.queue.markDeliveryScheduled());
+        this.queue.offer("a", 10);
+        assertTrue(this.queue.markDeliveryScheduled());
+        this.queue.offer("b", 10);
+        assertFalse("A delivery is already scheduled.", this.queue.markDeliveryScheduled());
+
+        assertEquals(Arrays.asList("a", "b"), this.queue.drain());
+        assertFalse(this.queue.finishDelivery());
+        assertFalse(this.queue.markDeliveryScheduled());
+    }
+
+    @Test
+    public void fileNamesQueuedDuringADeliveryNeedAnotherDelivery() {
+        this.queue.offer("a", 10);
+        this.queue.markDeliveryScheduled();
+        this.queue.drain();
+        this.queue.offer("a", 10);
+        assertFalse(this.queue.markDeliveryScheduled());
+
+        assertTrue(this.queue.finishDelivery());
+        assertTrue(this.queue.markDeliveryScheduled());
+        assertEquals(Collections.singletonList("a"), this.queue.drain());
+    }
+}
\ No newline at end of file
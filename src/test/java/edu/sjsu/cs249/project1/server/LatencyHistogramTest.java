@@ -0,0 +1,94 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the percentiles of the LatencyHistogram against the exact percentiles of the recorded values.
+ */
+public class LatencyHistogramTest {
+    /**
+     * The relative error allowed by the bucket width, see LatencyHistogram.
+     */
+    private static final double PRECISION = 1.0 / 64;
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(1, histogram.getValueAtPercentile(1));
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMeanNanos(), 1e-9);
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision() {
+        final Random random = new Random(7);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            /**
+             * Note: spread over many powers of two, from microseconds to seconds.
+             */
+            values[i] = (long) Math.pow(10, 3 + (6 * random.nextDouble()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (final double percentile : new double[] { 1, 10, 50, 90, 99, 99.9, 99.99 }) {
+            final long exact = values[(int) Math.ceil((percentile / 100) * values.length) - 1];
+            final long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile + " reported " + reported + " instead of " + exact,
+                    (reported >= exact) && (reported <= (exact * (1 + PRECISION))));
+        }
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMaximum() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(TimeUnit.HOURS.toNanos(2) + 1);
+        final long median = histogram.getValueAtPercentile(50);
+        assertTrue("p50 reported " + median, (median >= 1000) && (median <= (1000 * (1 + PRECISION))));
+        assertEquals(TimeUnit.HOURS.toNanos(2) + 1, histogram.getValueAtPercentile(99));
+        assertEquals(TimeUnit.HOURS.toNanos(2) + 1, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(10);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getTotalNanos());
+    }
+
+    @Test
+    public void largestValuesDoNotOverflow() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(50));
+    }
+}
\ No newline at end of file
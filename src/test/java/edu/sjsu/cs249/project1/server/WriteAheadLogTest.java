@@ -0,0 +1,259 @@
+package edu.sjsu.cs249.project1.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.sjsu.cs249.project1.remote.FileEdit;
+
+/**
+ * Tests the recovery of the write-ahead log. <br/>
+ * Every run of the server gets its own JVM, started in a temporary working directory, since the log is a singleton
+ * which recovers only once and keeps its files relative to the working directory. The server is halted without a
+ * checkpoint, so that only the log holds its changes, as after a crash.
+ */
+public class WriteAheadLogTest {
+    private static final String CHANGE = "change";
+    private static final String RECOVER = "recover";
+    private static final String RENAME = "rename";
+    private static final String DELETE_DURING_RENAME = "deleteDuringRename";
+    private static final long SERVER_TIMEOUT_SECONDS = 60;
+
+    private Path workingDirectory;
+
+    /**
+     * A server run: recovers the log, optionally changes some files, and halts without a checkpoint.
+     */
+    public static class Server {
+        public static void main(final String[] args) {
+            try {
+                WriteAheadLog.getInstance().recover();
+                if (CHANGE.equals(args[0])) {
+                    final FileSystem fileSystem = FileSystem.getInstance();
+                    fileSystem.createFile("modified", bytes("first"));
+                    fileSystem.modifyFile("modified", bytes("second"));
+                    fileSystem.createFile("patched", bytes("hello world"));
+                    fileSystem.patchFile("patched",
+                            Arrays.asList(new FileEdit(0, 5, bytes("HELLO")), FileEdit.append(bytes("!"))));
+                    fileSystem.patchFile("patched", Collections.singletonList(new FileEdit(5, 0, bytes(","))));
+                    fileSystem.createFile("renamed", bytes("moved"));
+                    fileSystem.renameFile("renamed", "moved");
+                    fileSystem.patchFile("moved", Collections.singletonList(FileEdit.append(bytes(" and patched"))));
+                    fileSystem.createFile("returned", bytes("returned"));
+                    fileSystem.renameFile("returned", "away");
+                    fileSystem.renameFile("away", "returned");
+                    fileSystem.patchFile("returned", Collections.singletonList(FileEdit.append(bytes("!"))));
+                    fileSystem.createFile("deleted", bytes("gone"));
+                    fileSystem.deleteFile("deleted");
+                } else if (RENAME.equals(args[0])) {
+                    /**
+                     * The file on disk is moved without the pending patch, which is only logged under the old name.
+                     */
+                    final FileSystem fileSystem = FileSystem.getInstance();
+                    fileSystem.loadFile("patched");
+                    fileSystem.patchFile("patched", Collections.singletonList(FileEdit.append(bytes("?"))));
+                    fileSystem.renameFile("patched", "repatched");
+                    fileSystem.patchFile("repatched", Collections.singletonList(FileEdit.append(bytes("!"))));
+                } else if (DELETE_DURING_RENAME.equals(args[0])) {
+                    /**
+                     * The deleted file was never moved, so it is still stored under its old name, which is taken by
+                     * a new file before the deletion removes the deleted file from disk.
+                     */
+                    final FileSystem fileSystem = FileSystem.getInstance();
+                    fileSystem.createOrReplaceFile("origin", upload("renamed away"));
+                    final File renamedFile = fileSystem.beginRename("origin", "target");
+                    final File deletedFile = fileSystem.beginDelete("target");
+                    fileSystem.completeRename("origin", "target", renamedFile);
+                    fileSystem.createOrReplaceFile("origin", upload("new file"));
+                    fileSystem.completeDelete("target", deletedFile);
+                }
+                Runtime.getRuntime().halt(0);
+            } catch (final Throwable e) {
+                e.printStackTrace();
+                Runtime.getRuntime().halt(1);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.workingDirectory = Files.createTempDirectory("wal-test-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.walkFileTree(this.workingDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path directory, final IOException e) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void recoversChangesWhichWereNotCheckpointed() throws Exception {
+        this.runServer(CHANGE);
+        this.runServer(RECOVER);
+        assertEquals(expectedFiles(), this.readFiles());
+        assertEquals("Replayed segments must be deleted.", 1, this.listSegments().size());
+    }
+
+    @Test
+    public void ignoresTornRecordAtTheEnd() throws Exception {
+        this.runServer(CHANGE);
+
+        /**
+         * Append the start of a record which claims to be longer than what follows, as left by a crash while
+         * appending.
+         */
+        final Path lastSegment = this.listSegments().lastEntry().getValue();
+        final ByteBuffer tornRecord = ByteBuffer.allocate(18).putInt(64).putInt(0x12345678);
+        Files.write(lastSegment, tornRecord.array(), StandardOpenOption.APPEND);
+
+        this.runServer(RECOVER);
+        assertEquals(expectedFiles(), this.readFiles());
+    }
+
+    @Test
+    public void replayingTwiceAppliesEveryRecordOnce() throws Exception {
+        this.runServer(CHANGE);
+        final Map<Path, byte[]> oldSegments = new TreeMap<>();
+        for (final Path segment : this.listSegments().values()) {
+            oldSegments.put(segment, Files.readAllBytes(segment));
+        }
+        this.runServer(RECOVER);
+        assertEquals(expectedFiles(), this.readFiles());
+
+        /**
+         * Put the replayed segments back, as if the server crashed after recovery wrote the files, but before it
+         * deleted the segments. The patches must not be applied to the already patched files again.
+         */
+        for (final Map.Entry<Path, byte[]> oldSegment : oldSegments.entrySet()) {
+            Files.write(oldSegment.getKey(), oldSegment.getValue());
+        }
+        this.runServer(RECOVER);
+        assertEquals(expectedFiles(), this.readFiles());
+    }
+
+    @Test
+    public void recoversChangesLoggedBeforeARename() throws Exception {
+        this.runServer(CHANGE);
+        this.runServer(RECOVER);
+        this.runServer(RENAME);
+        this.runServer(RECOVER);
+
+        final Map<String, String> files = expectedFiles();
+        files.remove("patched");
+        files.put("repatched", "HELLO, world!?!");
+        assertEquals(files, this.readFiles());
+    }
+
+    @Test
+    public void deletionDuringARenameKeepsTheNewFileUnderTheOldName() throws Exception {
+        this.runServer(DELETE_DURING_RENAME);
+        final Map<String, String> files = Collections.singletonMap("origin", "new file");
+        assertEquals(files, this.readFiles());
+        this.runServer(RECOVER);
+        assertEquals(files, this.readFiles());
+    }
+
+    /**
+     * Returns the files which Server leaves behind. Structure: file name -> contents.
+     */
+    private static Map<String, String> expectedFiles() {
+        final Map<String, String> files = new TreeMap<>();
+        files.put("modified", "second");
+        files.put("patched", "HELLO, world!");
+        files.put("moved", "moved and patched");
+        files.put("returned", "returned!");
+        return files;
+    }
+
+    /**
+     * Runs Server in its own JVM and waits until it halted.
+     */
+    private void runServer(final String mode) throws IOException, InterruptedException {
+        final Path output = this.workingDirectory.resolve("server-" + mode + ".out");
+        final Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString(), "-cp", System.getProperty("java.class.path"), "-Dfileserver.wal.checkpointMillis=3600000",
+                Server.class.getName(), mode).directory(this.workingDirectory.toFile()).redirectErrorStream(true)
+                        .redirectOutput(output.toFile()).start();
+        if (!process.waitFor(SERVER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+        final String log = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+        Files.delete(output);
+        assertTrue("Server failed in mode " + mode + ":\n" + log, !process.isAlive() && (process.exitValue() == 0));
+    }
+
+    /**
+     * Returns the files of the file system. Structure: file name -> contents.
+     */
+    private Map<String, String> readFiles() throws IOException {
+        final Map<String, String> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.workingDirectory.resolve("filesystem"))) {
+            for (final Path file : stream) {
+                if (!file.getFileName().toString().startsWith(".")) {
+                    files.put(file.getFileName().toString(),
+                            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the segments of the log. Structure: segment ID -> segment.
+     */
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.workingDirectory.resolve("filesystem/.wal"),
+                "segment-*.log")) {
+            for (final Path segment : stream) {
+                final String name = segment.getFileName().toString();
+                segments.put(Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length())),
+                        segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Writes a file to upload into the file system, next to it on the same disk.
+     */
+    private static Path upload(final String text) throws IOException {
+        return Files.write(Paths.get("upload-" + text.hashCode() + ".tmp"), bytes(text));
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file